@@ -0,0 +1,88 @@
+package com.tao.chatmemory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对话记忆 Kryo 序列化与 FileBasedChatMemory 整文件读写基准，按会话长度分档
+ * encode / decode 只测 CPU；save / load 含文件读写（落在 OS 页缓存上）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatMemoryKryoBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int messages;
+
+    private List<Message> conversation;
+
+    private byte[] encoded;
+
+    private Path dir;
+
+    private FileBasedChatMemory memory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        conversation = new ArrayList<>(messages);
+        for (int i = 0; i < messages; i++) {
+            conversation.add(i % 2 == 0
+                    ? new UserMessage("第 " + i + " 轮：这个套餐一个月多少钱，合约期是多久，中途能不能退订？")
+                    : new AssistantMessage("第 " + i + " 轮：该套餐每月 39 元，合约期 12 个月，到期前可以在营业厅或 App 办理退订。"));
+        }
+        encoded = ChatMessageKryo.encode(conversation);
+        dir = Files.createTempDirectory("chat-memory-bench");
+        memory = new FileBasedChatMemory(dir.toString());
+        memory.saveAll("bench", conversation);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return ChatMessageKryo.encode(conversation);
+    }
+
+    @Benchmark
+    public List<Message> decode() {
+        return ChatMessageKryo.decode(encoded);
+    }
+
+    @Benchmark
+    public void save() {
+        memory.saveAll("bench", conversation);
+    }
+
+    @Benchmark
+    public List<Message> load() {
+        return memory.findByConversationId("bench");
+    }
+}
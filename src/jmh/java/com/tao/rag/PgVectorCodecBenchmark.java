@@ -0,0 +1,57 @@
+package com.tao.rag;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * pgvector 文本字面量编解码基准
+ * 导入时每行一次 toPgVectorLiteral，内存索引刷新时每行一次 parsePgVectorLiteral
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PgVectorCodecBenchmark {
+
+    // 1024：常见 embedding 维度；4096：Qwen3-Embedding-8B
+    @Param({"1024", "4096"})
+    int dim;
+
+    private float[] vector;
+
+    private String literal;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        vector = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        literal = PgVectorCodec.toPgVectorLiteral(vector);
+    }
+
+    @Benchmark
+    public String toLiteral() {
+        return PgVectorCodec.toPgVectorLiteral(vector);
+    }
+
+    @Benchmark
+    public float[] parseLiteral() {
+        return PgVectorCodec.parsePgVectorLiteral(literal);
+    }
+}
@@ -0,0 +1,46 @@
+package com.tao.tools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分类 CSV 行解析基准（两个导入器共用 CategoryCsvImportPipeline.parseCsv）
+ * 文件内容预先读进内存，只测解析，不测 IO
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CategoryCsvParseBenchmark {
+
+    @Param({"document/CustomerObjectionClassification/Classification-01.csv", "document/failCategory/failReason.csv"})
+    String file;
+
+    private ByteArrayResource resource;
+
+    @Setup
+    public void setUp() throws Exception {
+        resource = new ByteArrayResource(new ClassPathResource(file).getContentAsByteArray());
+    }
+
+    @Benchmark
+    public List<CategoryCsvImportPipeline.CategoryRow> parseCsv() throws Exception {
+        return CategoryCsvImportPipeline.parseCsv(resource, file);
+    }
+}
@@ -0,0 +1,97 @@
+package com.tao.tools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模型输出清洗与 Jackson 解析基准：
+ * ProblemClassifyTool.cleanResult / toPrettyOrNull（每个问题一次），ObjectionExtractTool.parseProblems（每通录音一次）
+ * 输入是 qwen3 的典型输出：带 <think> 块和 ```json 包裹
+ * 对照组 bind*：结构化输出模式下的纯 JSON，直接反序列化为记录类
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonCleanupBenchmark {
+
+    private static final String THINK = "<think>\n" + "用户询问的是套餐资费问题，需要在知识库中找到对应的分类。".repeat(8) + "\n</think>\n\n";
+
+    private static final String CLASSIFY_RAW = THINK + """
+            ```json
+            [
+              {
+                "针对的问题": "询问套餐资费",
+                "问题大类编号": "01",
+                "问题大类名称": "其他异议",
+                "问题小类编号": "002",
+                "问题小类名称": "套餐基础疑问类：针对套餐本身的存在、价格、状态等基础问题提出疑问",
+                "客服回答": "这个套餐每月 39 元，包含 30G 通用流量和 500 分钟通话",
+                "原文摘要": "客户：这个套餐一个月多少钱啊",
+                "解释": "客户询问套餐价格"
+              }
+            ]
+            ```""";
+
+    private static final String EXTRACT_RAW = THINK + """
+            ```json
+            {
+              "异议列表": [
+                {"问题": "询问套餐资费", "原文摘要": "客户：这个套餐一个月多少钱啊", "解释": "客户询问套餐价格"},
+                {"问题": "担心合约期限制", "原文摘要": "客户：是不是要签两年啊，中途不能退", "解释": "客户担心合约期"},
+                {"问题": "已有宽带无需办理", "原文摘要": "客户：我家里已经有宽带了", "解释": "客户表示已有同类业务"}
+              ]
+            }
+            ```""";
+
+    private static final String CLASSIFY_STRUCTURED = ProblemClassifyTool.cleanResult(CLASSIFY_RAW);
+
+    private static final String EXTRACT_STRUCTURED = ProblemClassifyTool.cleanResult(EXTRACT_RAW);
+
+    private final ProblemClassifyTool classifyTool = new ProblemClassifyTool(false, 1, 1);
+
+    private final ProblemClassifyTool structuredClassifyTool = new ProblemClassifyTool(false, 1, 1, true);
+
+    private final String cleanedClassify = ProblemClassifyTool.cleanResult(CLASSIFY_RAW);
+
+    @Benchmark
+    public String cleanResult() {
+        return ProblemClassifyTool.cleanResult(CLASSIFY_RAW);
+    }
+
+    @Benchmark
+    public String toPrettyOrNull() {
+        return classifyTool.toPrettyOrNull(cleanedClassify);
+    }
+
+    @Benchmark
+    public String cleanAndPretty() {
+        return classifyTool.toPrettyOrNull(ProblemClassifyTool.cleanResult(CLASSIFY_RAW));
+    }
+
+    @Benchmark
+    public String parseExtractedProblems() {
+        return ObjectionExtractTool.parseProblems(EXTRACT_RAW);
+    }
+
+    @Benchmark
+    public Object bindClassification() {
+        return structuredClassifyTool.parseOne("", CLASSIFY_STRUCTURED);
+    }
+
+    @Benchmark
+    public Object bindExtractedProblems() {
+        return ObjectionExtractTool.bindProblems(EXTRACT_STRUCTURED);
+    }
+}
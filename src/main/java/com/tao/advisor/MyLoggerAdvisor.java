@@ -1,5 +1,7 @@
 package com.tao.advisor;
 
+import com.tao.metrics.PipelineMetrics;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClientMessageAggregator;
 import org.springframework.ai.chat.client.ChatClientRequest;
@@ -13,6 +15,7 @@ import reactor.core.publisher.Flux;
 /**
  * 自定义日志 Advisor
  * 打印 info 级别日志、只输出单次用户提示词和 AI 回复的文本
+ * 同时记录对话耗时与 token 用量指标（阶段 {@link PipelineMetrics#CHAT}）
  */
 
 @Slf4j
@@ -35,6 +38,7 @@ public class MyLoggerAdvisor implements CallAdvisor, StreamAdvisor {
     }
 
     private void observeAfter(ChatClientResponse chatClientResponse) {
+        PipelineMetrics.recordTokens(PipelineMetrics.CHAT, chatClientResponse.chatResponse());
         // 暂时先把日志打印给关掉,不然日志里面的信息有太多重复的了
 //        log.info("AI Response: {}", chatClientResponse.chatResponse().getResult().getOutput().getText());
     }
@@ -42,7 +46,8 @@ public class MyLoggerAdvisor implements CallAdvisor, StreamAdvisor {
     @Override
     public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain chain) {
         chatClientRequest = before(chatClientRequest);
-        ChatClientResponse chatClientResponse = chain.nextCall(chatClientRequest);
+        ChatClientRequest request = chatClientRequest;
+        ChatClientResponse chatClientResponse = PipelineMetrics.record(PipelineMetrics.CHAT, () -> chain.nextCall(request));
         observeAfter(chatClientResponse);
         return chatClientResponse;
     }
@@ -50,7 +55,9 @@ public class MyLoggerAdvisor implements CallAdvisor, StreamAdvisor {
     @Override
     public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain chain) {
         chatClientRequest = before(chatClientRequest);
-        Flux<ChatClientResponse> chatClientResponseFlux = chain.nextStream(chatClientRequest);
+        Timer.Sample sample = Timer.start();
+        Flux<ChatClientResponse> chatClientResponseFlux = chain.nextStream(chatClientRequest)
+                .doFinally(signal -> sample.stop(PipelineMetrics.timer(PipelineMetrics.CHAT)));
         return (new ChatClientMessageAggregator()).aggregateChatClientResponse(chatClientResponseFlux, this::observeAfter);
     }
 }
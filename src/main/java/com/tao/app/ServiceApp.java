@@ -1,11 +1,27 @@
 package com.tao.app;
 
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tao.advisor.MyLoggerAdvisor;
-import com.tao.chatmemory.FileBasedChatMemory;
+import com.tao.failreason.FailReasonClassifyTool;
+import com.tao.generation.JsonGeneration;
+import com.tao.metrics.PipelineMetrics;
+import com.tao.rag.CategoryDictionary;
+import com.tao.rag.ProblemRetrievalQueryTransformer;
 import com.tao.rag.ServiceAppRagCustomAdvisorFactory;
+import com.tao.tools.ClassificationHydrator;
+import com.tao.tools.ClassificationResult;
+import com.tao.tools.CompactClassification;
 import com.tao.tools.ObjectionExtractTool;
+import com.tao.tools.ObjectionItem;
 import com.tao.tools.ProblemClassifyTool;
+import com.tao.transcript.AnswerLocator;
+import com.tao.transcript.TranscriptCompactor;
+import com.tao.transcript.TranscriptParser;
+import com.tao.transcript.TranscriptWindow;
+import com.tao.transcript.Turn;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 
@@ -16,10 +32,18 @@ import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import org.springframework.ai.ollama.api.OllamaOptions;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 
 @Component
 @Slf4j
@@ -36,12 +60,67 @@ public class ServiceApp {
     @Resource
     private VectorStore serviceAppVectorStore;
 
+    /**
+     * 失败原因分类向量库（fail_category 表）
+     */
+    @Resource
+    private VectorStore failReasonVectorStore;
+
     @Resource
     private ObjectionExtractTool objectionExtractTool;
 
+    @Resource
+    private FailReasonClassifyTool failReasonClassifyTool;
+
     @Resource
     private ProblemClassifyTool problemClassifyTool;
 
+    /**
+     * 分类类调用的生成控制：关闭思考、num_predict 上限、JSON 闭合即停止
+     */
+    @Resource
+    private JsonGeneration jsonGeneration;
+
+    /**
+     * 对话文本进入提示词前的压缩（去附和、合并轮次、token 预算）
+     */
+    @Resource
+    private TranscriptCompactor transcriptCompactor;
+
+    /**
+     * 单问题分类时，检索 query 只用该问题的“问题/原文摘要/解释”，而不是整段提示词
+     */
+    @Value("${app.rag.problem-scoped-query:true}")
+    private boolean problemScopedQuery;
+
+    /**
+     * 单问题分类输出：compact 时模型只输出分类编号，大类/小类名称由分类字典回填、客服回答由 AnswerLocator 在对话中定位；
+     * full 时模型输出完整 JSON
+     */
+    @Value("${app.classify.output:compact}")
+    private String classifyOutput;
+
+    /**
+     * 单问题分类只发送原文摘要附近的对话（前 before 轮、后 after 轮），而不是整段对话
+     */
+    @Value("${app.classify.window.enabled:true}")
+    private boolean windowEnabled;
+
+    @Value("${app.classify.window.before:2}")
+    private int windowBefore;
+
+    @Value("${app.classify.window.after:2}")
+    private int windowAfter;
+
+    /**
+     * 紧凑输出模式下按编号回填分类名称
+     */
+    @Resource
+    private CategoryDictionary objectionCategoryDictionary;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
     private static final String SYSTEM_PROMPT = "你是一个客服分析智能体";
 
     // 公用一个确定性配置
@@ -50,10 +129,10 @@ public class ServiceApp {
             .topP(1.0)        // 只取最高概率
             .build();
 
-    public ServiceApp(@Qualifier("ollamaChatModel") ChatModel chatModel)  {
-        // 初始化基于文件的对话记忆
-        String fileDir = System.getProperty("user.dir") + "/tmp/chat-memory";
-        ChatMemory chatMemory = new FileBasedChatMemory(fileDir);
+    /**
+     * @param chatMemory 对话记忆，见 ChatMemoryConfig（文件存储 + 内存写回缓存）
+     */
+    public ServiceApp(@Qualifier("ollamaChatModel") ChatModel chatModel, ChatMemory chatMemory)  {
         chatClient = ChatClient.builder(chatModel)
                 .defaultSystem(SYSTEM_PROMPT)
                 //新增关闭随机性25.12.3
@@ -177,10 +256,11 @@ public class ServiceApp {
     /**
      * AI RAG 检索增强对话, 输入端只有 info，调用工具提取出 problem
      * 使用向量数据库 (VectorStore) 进行知识召回
-     * @param info     客服与客户对话文本
+     * @param rawInfo  客服与客户对话文本（压缩后再使用）
      * @return 模型输出（包含分类编号与名称）
      */
-    public String doChatWithRag(String info) {
+    public String doChatWithRag(String rawInfo) {
+        String info = transcriptCompactor.compact(rawInfo);
         // 1. 用工具类从对话文本中抽取客户异议 problem（JSON 数组字符串）
         String problem = objectionExtractTool.extractProblems(info);
         log.info("自动抽取到的 problem: {}", problem);
@@ -195,16 +275,28 @@ public class ServiceApp {
      * 1）从 info 中自动抽取 problem 列表；
      * 2）逐个问题调用 classifySingleProblemWithRag 做 RAG 归类；
      * 3）ProblemClassifyTool 负责循环 & 合并 JSON。
+     * 对话先经 TranscriptCompactor 压缩，抽取和每个问题的分类都使用压缩后的文本。
      */
     public String doClassifyWithRag(String info) {
-        String problemsJson = objectionExtractTool.extractProblems(info);
-        log.info("自动抽取到的 problem: {}", problemsJson);
-
-        return problemClassifyTool.doClassify(
-                info,
-                problemsJson,
-                this::classifySingleProblemWithRag
-        );
+        return classifyObjectionsWithRag(transcriptCompactor.compact(info));
+    }
+
+    /**
+     * @param info 已压缩的对话文本
+     */
+    private String classifyObjectionsWithRag(String info) {
+        return PipelineMetrics.record(PipelineMetrics.CLASSIFY_TOTAL, () -> {
+            List<ObjectionItem> problems = objectionExtractTool.extractItems(info);
+            log.info("自动抽取到的 problem: {}", problems);
+
+            // 对话只切分一次，所有问题共用同一份轮次
+            List<Turn> turns = TranscriptParser.parse(info);
+            return problemClassifyTool.doClassify(
+                    info,
+                    problems,
+                    (text, oneProblemJson) -> classifySingleProblemWithRag(turns, text, oneProblemJson)
+            );
+        });
     }
 
 
@@ -212,65 +304,262 @@ public class ServiceApp {
      * 【核心】对“单个问题”调用一次 RAG 分类。
      * 这里只在 ServiceApp 中调用大模型。
      *
+     * @param turns          对话轮次，由调用方对 info 切分一次后传入
      * @param info           对话全文
      * @param oneProblemJson 单个问题 JSON：
      *                       {"问题": "...", "原文摘要": "...", "解释": "..."}
      * @return JSON 数组字符串（通常长度为 0 或 1）
      */
-    private String classifySingleProblemWithRag(String info, String oneProblemJson) {
-        String prompt = String.format("""
+    private String classifySingleProblemWithRag(List<Turn> turns, String info, String oneProblemJson) {
+        boolean compact = "compact".equalsIgnoreCase(classifyOutput);
+        // 原文摘要只定位一次，窗口截取和紧凑模式的客服回答共用
+        int customerTurn = windowEnabled || compact ? locateExcerpt(turns, oneProblemJson) : -1;
+        String context = problemContext(turns, info, customerTurn);
+        if (compact) {
+            return classifySingleProblemCompact(turns, customerTurn, context, oneProblemJson);
+        }
+        String prompt = classifyPrompt(
+                "对该问题进行精准归类，精准输出每个问题对应的大类和小类编号与名称并从 <info> 中寻找与该问题对应的客服回答。",
+                context, oneProblemJson, """
+                输出要求：
+                1）输出格式必须是一个 JSON 数组，例如：
+                [
+                  {
+                    "针对的问题": "",
+                    "问题大类编号": "",
+                    "问题大类名称": "",
+                    "问题小类编号": "",
+                    "问题小类名称": "",
+                    "客服回答": "",  // 从 <info> 中找到对该问题的客服回复，找不到就留空
+                    "原文摘要": "",
+                    "解释": ""
+                  }
+                ]
+
+                输出规则：
+                1. “针对的问题”需与输入问题完全一致；
+                2. 大类/小类编号与名称必须和知识库保持一致，直接复制知识库里的原文，不能截断或改写，尤其不要省略冒号后的说明；
+                3. 若无异议则输出空数组 [];
+                4. 若无匹配项则输出大类编号 "00"、大类名称 "新分类"；
+                5. 严禁输出任何多余文字或解释、严禁输出思考/推理过程或 <think> 等标签，只能输出纯 JSON。
+                6. 从 <info> 中寻找与该问题对应的客服回复，尽量原样复制；找不到则填空字符串，严禁编造；
+                """);
+        String content = generateWithRag(prompt, oneProblemJson, ProblemClassifyTool.RESULT_SCHEMA);
+        log.info("单问题 RAG 分类输出: {}", content);
+        return content;
+    }
+
+    /**
+     * 单问题分类提示词：两种输出模式共用的角色说明、<info>、<problem>，后接各自的输出要求
+     *
+     * @param task         “你的主要任务是：……”之后的任务描述
+     * @param requirements 输出要求与规则
+     */
+    private static String classifyPrompt(String task, String context, String oneProblemJson, String requirements) {
+        return String.format("""
             你是一个电信公司的客服总管，你将对一段客服与客户对话录音进行分析。
-            你的主要任务是：根据对话内容，以及已经分析好的客户在对话中提出的问题，使用你掌握的“客户异议分类”知识，对该问题进行精准归类，精准输出每个问题对应的大类和小类编号与名称并从 <info> 中寻找与该问题对应的客服回答。
-            
+            你的主要任务是：根据对话内容，以及已经分析好的客户在对话中提出的问题，使用你掌握的“客户异议分类”知识，%s
+
             其中：
             - 对话文本放在 <info></info> 标签中；
             - 客户已分析好的问题放在 <problem></problem> 标签中；
             - 客户异议分类知识会通过 RAG 检索注入到对话中。
-        
+
             <info>
             %s
             </info>
-        
+
             <problem>
             %s
             </problem>
-        
+
+            %s""", task, context, oneProblemJson, requirements);
+    }
+
+    /**
+     * 单问题分类的模型调用：检索只用问题本身，召回结果仍注入完整 prompt；解析不出问题字段时回退为整段 prompt 检索
+     * 耗时包含 RAG 检索（检索本身另有 query_embed / vector_search 指标）
+     *
+     * @param schema 结构化输出的 JSON Schema
+     */
+    private String generateWithRag(String prompt, String oneProblemJson, Map<String, Object> schema) {
+        String retrievalQuery = problemScopedQuery
+                ? ProblemRetrievalQueryTransformer.buildRetrievalQuery(oneProblemJson)
+                : null;
+        var ragAdvisor = retrievalQuery != null
+                ? ServiceAppRagCustomAdvisorFactory.createProblemScopedRagAdvisor(serviceAppVectorStore)
+                : ServiceAppRagCustomAdvisorFactory.createLoveAppRagCustomAdvisor(serviceAppVectorStore, "active");
+
+        return PipelineMetrics.record(PipelineMetrics.CLASSIFY_SINGLE, () -> jsonGeneration.generate(classifyChatClient
+                .prompt()
+                .options(jsonGeneration.options(DETERMINISTIC_OPTIONS, jsonGeneration.classifyNumPredict(), schema))
+                .advisors(spec -> {
+                    spec.advisors(ragAdvisor);
+                    if (retrievalQuery != null) {
+                        spec.param(ProblemRetrievalQueryTransformer.RETRIEVAL_QUERY, retrievalQuery);
+                    }
+                })
+                .user(jsonGeneration.userPrompt(prompt)), PipelineMetrics.CLASSIFY_SINGLE));
+    }
+
+    /**
+     * 按单问题 JSON 中的原文摘要定位客户轮次
+     * @return 轮次下标，JSON 解析失败或定位不到返回 -1
+     */
+    private static int locateExcerpt(List<Turn> turns, String oneProblemJson) {
+        String excerpt;
+        try {
+            excerpt = OBJECT_MAPPER.readTree(oneProblemJson).path("原文摘要").asText("");
+        } catch (JsonProcessingException e) {
+            return -1;
+        }
+        int customerTurn = AnswerLocator.findCustomerTurn(turns, excerpt);
+        if (customerTurn < 0) {
+            log.debug("原文摘要在对话中定位不到: {}", excerpt);
+        }
+        return customerTurn;
+    }
+
+    /**
+     * 分类提示词中的 <info>：开启窗口时只取原文摘要附近的若干轮对话，定位不到时仍用完整对话
+     */
+    private String problemContext(List<Turn> turns, String info, int customerTurn) {
+        if (!windowEnabled || customerTurn < 0) {
+            return info;
+        }
+        return TranscriptWindow.around(turns, customerTurn, windowBefore, windowAfter);
+    }
+
+    /**
+     * 紧凑输出模式的单问题分类：模型只输出 {"编号": "..."}，分类名称从分类字典回填，
+     * 客服回答取已定位客户轮次之后的客服发言（AnswerLocator），针对的问题/原文摘要/解释沿用抽取结果，生成的 token 数少好几倍
+     *
+     * @param customerTurn 原文摘要对应的客户轮次，-1 表示定位不到
+     * @return 与完整模式相同结构的 JSON 数组字符串（长度 0 或 1）
+     */
+    private String classifySingleProblemCompact(List<Turn> turns, int customerTurn, String context, String oneProblemJson) {
+        ObjectionItem problem;
+        try {
+            problem = OBJECT_MAPPER.readValue(oneProblemJson, ObjectionItem.class);
+        } catch (JsonProcessingException e) {
+            log.warn("单问题 JSON 不是预期结构，跳过: {}", oneProblemJson);
+            return "[]";
+        }
+        String prompt = classifyPrompt(
+                "为该问题选出最匹配的一个分类编号（每条知识的 code 就是分类编号）。",
+                context, oneProblemJson, """
+                输出要求：
+                输出格式必须是一个 JSON 对象，例如：
+                {"编号": "01002"}
+
+                输出规则：
+                1. “编号”必须是知识库中某条知识的 code，原样复制；若无匹配项则输出 "00"；
+                2. 严禁输出任何多余文字或解释、严禁输出思考/推理过程或 <think> 等标签，只能输出纯 JSON。
+                """);
+        String content = generateWithRag(prompt, oneProblemJson, CompactClassification.SCHEMA);
+        log.info("单问题 RAG 分类紧凑输出: {}", content);
+
+        CompactClassification compact = ClassificationHydrator.parse(content);
+        if (compact == null) {
+            return "[]";
+        }
+        String agentAnswer = AnswerLocator.locateAnswer(turns, customerTurn);
+        ClassificationResult result = ClassificationHydrator.hydrate(problem, compact, objectionCategoryDictionary, agentAnswer);
+        try {
+            return OBJECT_MAPPER.writeValueAsString(List.of(result));
+        } catch (JsonProcessingException e) {
+            log.warn("序列化分类结果失败", e);
+            return "[]";
+        }
+    }
+
+    /**
+     * 整通录音分析入口：异议分类与失败原因分类并发执行，结果合并为
+     * {"异议分类": [...], "失败原因": [...]}
+     * 两路互不依赖，总耗时约等于较慢的一路；任一路失败只影响自己那一部分（返回空数组）。
+     *
+     * @param rawInfo 客服与客户对话文本（压缩一次，两路共用）
+     * @return 合并后的 JSON 对象字符串
+     */
+    public String doAnalyzeWithRag(String rawInfo) {
+        String info = transcriptCompactor.compact(rawInfo);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<String> objections = executor.submit(() -> classifyObjectionsWithRag(info));
+            Future<String> failReasons = executor.submit(() -> classifyFailReasonWithRag(info));
+            return failReasonClassifyTool.mergeAnalysis(
+                    awaitQuietly(objections, "异议分类"),
+                    failReasonClassifyTool.parseResult(awaitQuietly(failReasons, "失败原因分类")));
+        }
+    }
+
+    private static String awaitQuietly(Future<String> future, String name) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("{} 被中断", name);
+            return null;
+        } catch (ExecutionException e) {
+            log.error("{} 失败", name, e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * 对整通录音做一次失败原因 RAG 分类（每通录音只调用一次大模型）
+     * 检索 query 只用客户发言，召回 fail_category 中的失败原因知识
+     *
+     * @param info 对话全文
+     * @return JSON 数组字符串（通常长度为 0 或 1）
+     */
+    private String classifyFailReasonWithRag(String info) {
+        String prompt = String.format("""
+            你是一个电信公司的外呼质检员，你将对一段客服与客户对话录音进行分析。
+            你的主要任务是：根据对话内容，使用你掌握的“外呼失败原因分类”知识，判断本次外呼营销没有成功的原因，精准输出对应的大类和小类编号与名称。
+
+            其中：
+            - 对话文本放在 <info></info> 标签中；
+            - 外呼失败原因分类知识会通过 RAG 检索注入到对话中。
+
+            <info>
+            %s
+            </info>
+
             输出要求：
             1）输出格式必须是一个 JSON 数组，例如：
             [
               {
-                "针对的问题": "",
-                "问题大类编号": "",
-                "问题大类名称": "",
-                "问题小类编号": "",
-                "问题小类名称": "",
-                "客服回答": "",  // 从 <info> 中找到对该问题的客服回复，找不到就留空
+                "失败原因大类编号": "",
+                "失败原因大类名称": "",
+                "失败原因小类编号": "",
+                "失败原因小类名称": "",
                 "原文摘要": "",
                 "解释": ""
               }
             ]
-           
+
             输出规则：
-            1. “针对的问题”需与输入问题完全一致；
-            2. 大类/小类编号与名称必须和知识库保持一致，直接复制知识库里的原文，不能截断或改写，尤其不要省略冒号后的说明；
-            3. 若无异议则输出空数组 [];
-            4. 若无匹配项则输出大类编号 "00"、大类名称 "新分类"；
-            5. 严禁输出任何多余文字或解释、严禁输出思考/推理过程或 <think> 等标签，只能输出纯 JSON。  
-            6. 从 <info> 中寻找与该问题对应的客服回复，尽量原样复制；找不到则填空字符串，严禁编造；
-            """, info, oneProblemJson);
+            1. 大类/小类编号与名称必须和知识库保持一致，直接复制知识库里的原文，不能截断或改写；
+            2. 一般只输出最主要的一个失败原因；若客户已同意办理（营销成功），输出空数组 [];
+            3. 若无匹配项则输出大类编号 "00"、大类名称 "新分类"；
+            4. “原文摘要”从 <info> 中原样摘取能体现失败原因的客户原话，严禁编造；
+            5. 严禁输出任何多余文字或解释、严禁输出思考/推理过程或 <think> 等标签，只能输出纯 JSON。
+            """, info);
 
-        var ragAdvisor = ServiceAppRagCustomAdvisorFactory
-                .createLoveAppRagCustomAdvisor(serviceAppVectorStore, "active");
+        String retrievalQuery = failReasonClassifyTool.buildRetrievalQuery(info);
+        var ragAdvisor = ServiceAppRagCustomAdvisorFactory.createProblemScopedRagAdvisor(failReasonVectorStore);
 
-        ChatResponse response = classifyChatClient
+        String content = PipelineMetrics.record(PipelineMetrics.CLASSIFY_FAIL_REASON, () -> jsonGeneration.generate(classifyChatClient
                 .prompt()
-                .advisors(ragAdvisor)
-                .user(prompt)
-                .call()
-                .chatResponse();
-
-        String content = response.getResult().getOutput().getText();
-        log.info("单问题 RAG 分类输出: {}", content);
+                .options(jsonGeneration.options(DETERMINISTIC_OPTIONS, jsonGeneration.failReasonNumPredict()))
+                .advisors(spec -> {
+                    spec.advisors(ragAdvisor);
+                    if (retrievalQuery != null) {
+                        spec.param(ProblemRetrievalQueryTransformer.RETRIEVAL_QUERY, retrievalQuery);
+                    }
+                })
+                .user(jsonGeneration.userPrompt(prompt)), PipelineMetrics.CLASSIFY_FAIL_REASON));
+        log.info("失败原因 RAG 分类输出: {}", content);
         return content;
     }
 }
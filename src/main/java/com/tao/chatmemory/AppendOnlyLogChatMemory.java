@@ -0,0 +1,302 @@
+package com.tao.chatmemory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * 追加日志格式的对话记忆
+ * FileBasedChatMemory 每次 add 都整文件读出、追加、再整文件写回；这里每个会话一个 .log 文件，add 只在文件末尾追加一条记录：
+ *
+ * 文件头：魔数 "CMLG" + 版本号（5 字节）
+ * 记录：  [int 长度][int CRC32C][byte 标志][负载]
+ *        - 长度 = CRC 之后的字节数（标志 + 负载）；CRC 覆盖标志 + 负载；
+ *        - 标志 bit0 表示负载经过 LZ4 块压缩，此时负载为 [int 原始长度][压缩数据]；
+ *        - 负载为一批消息的 Kryo 编码（见 {@link ChatMessageKryo}）。
+ *
+ * 断电/进程被杀导致尾部记录写了一半时，读取时按长度和 CRC 校验，遇到第一条残缺记录即停止，并把文件截断到最后一条完整记录；
+ * 记录条数超过阈值时在读取时顺便压实：所有消息合并成一条记录，写临时文件后原子替换。
+ * 文件按会话 id 哈希分片存放，见 {@link ChatMemoryFileLayout}
+ */
+@Slf4j
+public class AppendOnlyLogChatMemory implements ChatMemory, AppendableChatMemoryRepository {
+
+    private static final byte[] FILE_MAGIC = {'C', 'M', 'L', 'G', 0x01};
+
+    private static final String SUFFIX = ".log";
+
+    // 记录头：长度 + CRC + 标志
+    private static final int RECORD_HEADER_BYTES = 4 + 4 + 1;
+
+    private static final byte FLAG_LZ4 = 0x01;
+
+    // 太小的负载压缩收益不大，直接写原文
+    private static final int MIN_COMPRESS_BYTES = 256;
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final ChatMemoryFileLayout layout;
+
+    private final boolean compress;
+
+    // 记录条数超过该值时压实
+    private final int compactRecords;
+
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+
+    // 本进程内已经校验过尾部完整性的会话，追加前未校验过的先做一次恢复
+    private final Cache<String, Boolean> verified = Caffeine.newBuilder().maximumSize(100_000).build();
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    /**
+     * @param dir            文件目录
+     * @param compress       是否对记录做 LZ4 块压缩
+     * @param compactRecords 单个会话记录条数超过该值时压实
+     */
+    public AppendOnlyLogChatMemory(String dir, boolean compress, int compactRecords) {
+        this.layout = new ChatMemoryFileLayout(Path.of(dir), SUFFIX);
+        this.compress = compress;
+        this.compactRecords = Math.max(2, compactRecords);
+    }
+
+    ChatMemoryFileLayout layout() {
+        return layout;
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        append(conversationId, messages);
+    }
+
+    @Override
+    public void append(String conversationId, List<Message> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            Path file = layout.path(conversationId, true);
+            if (verified.getIfPresent(conversationId) == null && Files.exists(file)) {
+                // 上次进程可能在写入中途退出，先截掉残缺尾部，否则新记录会接在坏数据后面读不出来
+                readAndRepair(conversationId, file);
+            }
+            byte[] record = encodeRecord(messages);
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                if (channel.size() == 0) {
+                    writeFully(channel, ByteBuffer.wrap(FILE_MAGIC));
+                }
+                writeRecord(channel, record);
+            }
+            verified.put(conversationId, Boolean.TRUE);
+        } catch (IOException e) {
+            // 写入可能停在记录中间：下次追加前重新校验并截掉残缺尾部，否则之后的记录都接在坏数据后面
+            verified.invalidate(conversationId);
+            // 抛给调用方：WriteBackChatMemory 据此保留脏标记下一轮重试，而不是当作已写入
+            throw new UncheckedIOException("追加会话日志失败: " + conversationId, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            Path file = layout.path(conversationId, false);
+            if (!Files.exists(file)) {
+                return new ArrayList<>();
+            }
+            List<Message> messages = readAndRepair(conversationId, file);
+            ChatMemoryFileLayout.touch(file);
+            return messages;
+        } catch (Exception e) {
+            log.error("读取会话日志失败: {}", conversationId, e);
+            return new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            Files.deleteIfExists(layout.path(conversationId, false));
+            verified.invalidate(conversationId);
+        } catch (IOException e) {
+            log.error("删除会话日志失败: {}", conversationId, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        return layout.conversationIds();
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        return get(conversationId);
+    }
+
+    /**
+     * 整会话覆盖：写成只有一条记录的新文件后原子替换
+     */
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            rewrite(conversationId, layout.path(conversationId, true), messages);
+        } catch (IOException e) {
+            throw new UncheckedIOException("覆盖会话日志失败: " + conversationId, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        clear(conversationId);
+    }
+
+    /**
+     * 解析整个日志（调用方持有该会话的锁），有残缺尾部则截断，记录过多则压实
+     */
+    private List<Message> readAndRepair(String conversationId, Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        List<Message> messages = new ArrayList<>();
+        if (bytes.length < FILE_MAGIC.length || !Arrays.equals(bytes, 0, FILE_MAGIC.length, FILE_MAGIC, 0, FILE_MAGIC.length)) {
+            log.warn("会话日志文件头不正确，按空会话处理并重写: {}", file);
+            rewrite(conversationId, file, messages);
+            return messages;
+        }
+
+        int pos = FILE_MAGIC.length;
+        int records = 0;
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (pos + RECORD_HEADER_BYTES <= bytes.length) {
+            int length = buffer.getInt(pos);
+            int crc = buffer.getInt(pos + 4);
+            int bodyStart = pos + 8;
+            if (length < 1 || length > bytes.length - bodyStart || crc != crc32c(bytes, bodyStart, length)) {
+                break;
+            }
+            messages.addAll(decodeBody(bytes, bodyStart, length));
+            records++;
+            pos = bodyStart + length;
+        }
+
+        if (pos < bytes.length) {
+            log.warn("会话日志 {} 尾部有 {} 字节残缺记录，截断到最后一条完整记录", file, bytes.length - pos);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(pos);
+            }
+        }
+        if (records > compactRecords) {
+            rewrite(conversationId, file, messages);
+            log.debug("会话日志 {} 已压实：{} 条记录合并为 1 条", file, records);
+        }
+        verified.put(conversationId, Boolean.TRUE);
+        return messages;
+    }
+
+    private void rewrite(String conversationId, Path file, List<Message> messages) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, ByteBuffer.wrap(FILE_MAGIC));
+            if (!messages.isEmpty()) {
+                writeFully(channel, ByteBuffer.wrap(encodeRecord(messages)));
+            }
+            channel.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        verified.put(conversationId, Boolean.TRUE);
+    }
+
+    private byte[] encodeRecord(List<Message> messages) {
+        byte[] raw = ChatMessageKryo.encodeRecord(messages);
+        byte flags = 0;
+        byte[] payload = raw;
+        int payloadLength = raw.length;
+        if (compress && raw.length >= MIN_COMPRESS_BYTES) {
+            byte[] compressed = new byte[4 + compressor.maxCompressedLength(raw.length)];
+            ByteBuffer.wrap(compressed).putInt(raw.length);
+            int compressedLength = compressor.compress(raw, 0, raw.length, compressed, 4);
+            // 压缩后不变小就不压缩
+            if (4 + compressedLength < raw.length) {
+                flags = FLAG_LZ4;
+                payload = compressed;
+                payloadLength = 4 + compressedLength;
+            }
+        }
+
+        int length = 1 + payloadLength;
+        ByteBuffer record = ByteBuffer.allocate(8 + length);
+        record.putInt(length);
+        record.putInt(0);
+        record.put(flags);
+        record.put(payload, 0, payloadLength);
+        byte[] bytes = record.array();
+        record.putInt(4, crc32c(bytes, 8, length));
+        return bytes;
+    }
+
+    private List<Message> decodeBody(byte[] bytes, int offset, int length) {
+        byte flags = bytes[offset];
+        if ((flags & FLAG_LZ4) == 0) {
+            return ChatMessageKryo.decodeRecord(bytes, offset + 1, length - 1);
+        }
+        int rawLength = ByteBuffer.wrap(bytes, offset + 1, 4).getInt();
+        byte[] raw = new byte[rawLength];
+        decompressor.decompress(bytes, offset + 5, raw, 0, rawLength);
+        return ChatMessageKryo.decodeRecord(raw, 0, rawLength);
+    }
+
+    private static int crc32c(byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 在文件末尾写一条记录
+     */
+    void writeRecord(FileChannel channel, byte[] record) throws IOException {
+        writeFully(channel, ByteBuffer.wrap(record));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.tao.chatmemory;
+
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 支持只追加新消息的会话存储
+ * {@link WriteBackChatMemory} 写回时若存储实现了该接口，只写上次写回之后新增的消息，而不是整会话覆盖
+ */
+public interface AppendableChatMemoryRepository extends ChatMemoryRepository {
+
+    /**
+     * 在会话末尾追加消息；写入失败时抛出异常（如 UncheckedIOException），调用方据此保留未写入的消息重试
+     */
+    void append(String conversationId, List<Message> messages);
+}
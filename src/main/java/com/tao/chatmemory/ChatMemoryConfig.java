@@ -0,0 +1,113 @@
+package com.tao.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 对话记忆配置
+ * 存储：file（FileBasedChatMemory，整文件读写）、log（AppendOnlyLogChatMemory，追加日志）
+ *      或 jdbc（JdbcChatMemory，Postgres，多实例共享）
+ * 文件类存储前面默认加一层 WriteBackChatMemory 内存写回缓存，并有后台过期/容量清理；jdbc 自带批量写入和本地缓存
+ * 最外层可选 SummarizingWindowChatMemory：只把 token 预算内的最近消息 + 滚动摘要交给模型
+ */
+@Slf4j
+@Configuration
+public class ChatMemoryConfig {
+
+    /**
+     * 会话存储（同时替换 Spring AI 默认的内存版 ChatMemoryRepository）
+     */
+    @Bean
+    public ChatMemoryRepository chatMemoryRepository(@Value("${app.chat-memory.dir:${user.dir}/tmp/chat-memory}") String dir,
+                                                     @Value("${app.chat-memory.store:file}") String store,
+                                                     @Value("${app.chat-memory.log.compression:lz4}") String compression,
+                                                     @Value("${app.chat-memory.log.compact-records:32}") int compactRecords,
+                                                     ObjectProvider<JdbcTemplate> jdbcTemplate,
+                                                     @Value("${app.chat-memory.jdbc.table:chat_memory_message}") String table,
+                                                     @Value("${app.chat-memory.jdbc.batch-size:64}") int batchSize,
+                                                     @Value("${app.chat-memory.jdbc.flush-interval:200ms}") Duration jdbcFlushInterval,
+                                                     @Value("${app.chat-memory.jdbc.read-window:50}") int readWindow,
+                                                     @Value("${app.chat-memory.jdbc.max-cached-conversations:10000}") long maxCached) {
+        if ("jdbc".equalsIgnoreCase(store)) {
+            log.info("对话记忆：Postgres 存储表 {}，每批 {} 条 / {} 写入，本地缓存最近 {} 条", table, batchSize, jdbcFlushInterval, readWindow);
+            JdbcChatMemory jdbcMemory = new JdbcChatMemory(jdbcTemplate.getObject(), table, batchSize,
+                    jdbcFlushInterval, readWindow, maxCached);
+            jdbcMemory.start();
+            return jdbcMemory;
+        }
+        if ("log".equalsIgnoreCase(store)) {
+            log.info("对话记忆：追加日志存储 {}，压缩 {}，超过 {} 条记录压实", dir, compression, compactRecords);
+            return new AppendOnlyLogChatMemory(dir, "lz4".equalsIgnoreCase(compression), compactRecords);
+        }
+        log.info("对话记忆：文件存储 {}", dir);
+        return new FileBasedChatMemory(dir);
+    }
+
+    /**
+     * 关闭时 Spring 会调用最外层的 close，逐层关闭，WriteBackChatMemory 把脏会话写回磁盘
+     */
+    @Bean
+    public ChatMemory chatMemory(ChatMemoryRepository chatMemoryRepository,
+                                 @Qualifier("ollamaChatModel") ChatModel chatModel,
+                                 @Value("${app.chat-memory.window.enabled:true}") boolean window,
+                                 @Value("${app.chat-memory.window.max-tokens:2048}") int windowMaxTokens,
+                                 @Value("${app.chat-memory.window.max-messages:20}") int windowMaxMessages,
+                                 @Value("${app.chat-memory.window.summarize-batch:6}") int summarizeBatch,
+                                 @Value("${app.chat-memory.window.summary-max-chars:300}") int summaryMaxChars,
+                                 @Value("${app.chat-memory.window.summary-concurrency:1}") int summaryConcurrency,
+                                 @Value("${app.chat-memory.write-back.enabled:true}") boolean writeBack,
+                                 @Value("${app.chat-memory.write-back.max-conversations:10000}") long maxConversations,
+                                 @Value("${app.chat-memory.write-back.idle-timeout:30m}") Duration idleTimeout,
+                                 @Value("${app.chat-memory.write-back.flush-interval:5s}") Duration flushInterval) {
+        ChatMemory memory = (ChatMemory) chatMemoryRepository;
+        // jdbc 存储自带异步批量写入与本地缓存，不再叠加写回缓存
+        if (writeBack && !(chatMemoryRepository instanceof JdbcChatMemory)) {
+            log.info("对话记忆启用内存写回缓存（最多 {} 个会话，空闲 {} 淘汰，每 {} 写回）",
+                    maxConversations, idleTimeout, flushInterval);
+            memory = new WriteBackChatMemory(chatMemoryRepository, maxConversations, idleTimeout, flushInterval);
+        }
+        if (window) {
+            log.info("对话记忆启用滑动窗口（{} tokens / {} 条）+ 滚动摘要（窗口外累积 {} 条触发）",
+                    windowMaxTokens, windowMaxMessages, summarizeBatch);
+            memory = new SummarizingWindowChatMemory(memory, chatModel, new JTokkitTokenCountEstimator(),
+                    windowMaxTokens, windowMaxMessages, summarizeBatch, summaryMaxChars, summaryConcurrency);
+        }
+        return memory;
+    }
+
+    /**
+     * 会话文件过期与容量清理，仅文件类存储需要；返回 null 时 Spring 不注册该 bean
+     * 删除经过 chatMemory（写回缓存在其中），不直接删存储，避免缓存与文件不一致
+     */
+    @Bean
+    ChatMemoryFileSweeper chatMemoryFileSweeper(ChatMemoryRepository chatMemoryRepository,
+                                                ChatMemory chatMemory,
+                                                @Value("${app.chat-memory.retention.ttl:7d}") Duration ttl,
+                                                @Value("${app.chat-memory.retention.max-size:10GB}") DataSize maxSize,
+                                                @Value("${app.chat-memory.retention.sweep-interval:10m}") Duration sweepInterval) {
+        ChatMemoryFileLayout layout;
+        if (chatMemoryRepository instanceof FileBasedChatMemory fileMemory) {
+            layout = fileMemory.layout();
+        } else if (chatMemoryRepository instanceof AppendOnlyLogChatMemory logMemory) {
+            layout = logMemory.layout();
+        } else {
+            return null;
+        }
+        log.info("会话文件清理：TTL {}，容量上限 {}，每 {} 执行一次", ttl, maxSize, sweepInterval);
+        ChatMemoryFileSweeper sweeper = new ChatMemoryFileSweeper(layout, chatMemory, ttl, maxSize.toBytes());
+        sweeper.start(sweepInterval);
+        return sweeper;
+    }
+}
@@ -0,0 +1,128 @@
+package com.tao.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 会话文件的目录布局：按会话 id 的哈希分两级子目录
+ * base/ab/cd/<conversationId><suffix>，256 x 256 个子目录，百万级会话时每个目录只有十几个文件，
+ * 单目录查找、备份、遍历的开销不随会话数线性增长。
+ * 旧版本平铺在 base 下的文件在首次访问时移动到分片目录。
+ */
+@Slf4j
+final class ChatMemoryFileLayout {
+
+    // 分片目录 + 文件名的最大深度
+    static final int MAX_DEPTH = 3;
+
+    private final Path baseDir;
+
+    private final String suffix;
+
+    ChatMemoryFileLayout(Path baseDir, String suffix) {
+        this.baseDir = baseDir;
+        this.suffix = suffix;
+        try {
+            Files.createDirectories(baseDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建会话目录失败: " + baseDir, e);
+        }
+    }
+
+    Path baseDir() {
+        return baseDir;
+    }
+
+    String suffix() {
+        return suffix;
+    }
+
+    /**
+     * 会话文件路径（调用方持有该会话的锁）
+     * @param createParent 写入前传 true，确保分片目录存在
+     */
+    Path path(String conversationId, boolean createParent) throws IOException {
+        Path sharded = shardedPath(conversationId);
+        if (!Files.exists(sharded)) {
+            Path legacy = baseDir.resolve(conversationId + suffix);
+            if (Files.exists(legacy)) {
+                Files.createDirectories(sharded.getParent());
+                Files.move(legacy, sharded, StandardCopyOption.ATOMIC_MOVE);
+                log.debug("会话文件迁移到分片目录: {} -> {}", legacy, sharded);
+                return sharded;
+            }
+        }
+        if (createParent) {
+            Files.createDirectories(sharded.getParent());
+        }
+        return sharded;
+    }
+
+    /**
+     * 读取时刷新修改时间，作为最近访问时间供过期清理使用
+     */
+    static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // 只影响过期判断，不影响读写
+            log.debug("刷新会话文件访问时间失败: {}", file, e);
+        }
+    }
+
+    /**
+     * 遍历所有会话文件（含尚未迁移的平铺文件）
+     */
+    Stream<Path> files() throws IOException {
+        return Files.walk(baseDir, MAX_DEPTH)
+                .filter(p -> p.getFileName().toString().endsWith(suffix) && Files.isRegularFile(p));
+    }
+
+    String conversationId(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.length() - suffix.length());
+    }
+
+    List<String> conversationIds() {
+        List<String> ids = new ArrayList<>();
+        try (Stream<Path> files = files()) {
+            files.forEach(p -> ids.add(conversationId(p)));
+        } catch (IOException e) {
+            log.error("遍历会话目录失败: {}", baseDir, e);
+        }
+        return ids;
+    }
+
+    private Path shardedPath(String conversationId) {
+        int h = mix(conversationId.hashCode());
+        return baseDir
+                .resolve(hex(h >>> 24))
+                .resolve(hex((h >>> 16) & 0xFF))
+                .resolve(conversationId + suffix);
+    }
+
+    /**
+     * murmur3 的 fmix32，String.hashCode 本身是规范定义的，跨进程稳定
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static String hex(int b) {
+        return b < 0x10 ? "0" + Integer.toHexString(b) : Integer.toHexString(b);
+    }
+}
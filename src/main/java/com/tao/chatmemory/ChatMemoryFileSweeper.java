@@ -0,0 +1,138 @@
+package com.tao.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 会话文件后台清理
+ * 1. 过期：文件修改时间即最近访问时间（读取时会刷新），超过 TTL 未访问的会话删除；
+ * 2. 容量：清理过期后总大小仍超过上限时，按最近访问时间从旧到新删除，直到降到上限的 90%。
+ * 删除走最外层 ChatMemory 的 clear：经过 WriteBackChatMemory 时同时移出内存缓存并丢弃未写回的消息，
+ * 不会出现文件已删而缓存里的会话仍可读、之后又被写回复活的情况；经过 SummarizingWindowChatMemory 时连同摘要一起删除。
+ */
+@Slf4j
+class ChatMemoryFileSweeper implements AutoCloseable {
+
+    // 超出容量上限时清理到上限的这个比例，避免每轮都在边界上反复删除
+    private static final double LOW_WATERMARK = 0.9;
+
+    private final ChatMemoryFileLayout layout;
+
+    private final ChatMemory memory;
+
+    private final Duration ttl;
+
+    private final long maxBytes;
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param memory   删除会话用的对话记忆，传最外层（带缓存的那一层）
+     * @param ttl      未访问多久后过期，<= 0 表示不过期
+     * @param maxBytes 会话文件总大小上限，<= 0 表示不限制
+     */
+    ChatMemoryFileSweeper(ChatMemoryFileLayout layout, ChatMemory memory, Duration ttl, long maxBytes) {
+        this.layout = layout;
+        this.memory = memory;
+        this.ttl = ttl;
+        this.maxBytes = maxBytes;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chat-memory-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 本轮清理结果
+     */
+    record SweepStats(int scanned, int expired, int evicted, long remainingBytes) {
+    }
+
+    void start(Duration interval) {
+        long millis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::sweepQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    SweepStats sweep() throws IOException {
+        long expireBefore = ttl == null || ttl.isZero() || ttl.isNegative()
+                ? Long.MIN_VALUE
+                : System.currentTimeMillis() - ttl.toMillis();
+        List<Entry> alive = new ArrayList<>();
+        int scanned = 0;
+        int expired = 0;
+        long totalBytes = 0;
+        try (Stream<Path> files = layout.files()) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                long lastAccess;
+                long size;
+                try {
+                    lastAccess = Files.getLastModifiedTime(file).toMillis();
+                    size = Files.size(file);
+                } catch (IOException e) {
+                    // 遍历期间被并发删除
+                    continue;
+                }
+                scanned++;
+                if (lastAccess < expireBefore) {
+                    memory.clear(layout.conversationId(file));
+                    expired++;
+                } else {
+                    totalBytes += size;
+                    if (maxBytes > 0) {
+                        alive.add(new Entry(layout.conversationId(file), lastAccess, size));
+                    }
+                }
+            }
+        }
+
+        int evicted = 0;
+        if (maxBytes > 0 && totalBytes > maxBytes) {
+            long target = (long) (maxBytes * LOW_WATERMARK);
+            alive.sort(Comparator.comparingLong(Entry::lastAccess));
+            for (Entry entry : alive) {
+                if (totalBytes <= target) {
+                    break;
+                }
+                memory.clear(entry.conversationId());
+                totalBytes -= entry.size();
+                evicted++;
+            }
+        }
+        return new SweepStats(scanned, expired, evicted, totalBytes);
+    }
+
+    private void sweepQuietly() {
+        try {
+            long start = System.nanoTime();
+            SweepStats stats = sweep();
+            if (stats.expired() > 0 || stats.evicted() > 0) {
+                log.info("会话文件清理：扫描 {}，过期删除 {}，超容量删除 {}，剩余 {} 字节，耗时 {} ms",
+                        stats.scanned(), stats.expired(), stats.evicted(), stats.remainingBytes(),
+                        (System.nanoTime() - start) / 1_000_000);
+            }
+        } catch (Exception e) {
+            log.warn("会话文件清理失败", e);
+        }
+    }
+
+    private record Entry(String conversationId, long lastAccess, long size) {
+    }
+}
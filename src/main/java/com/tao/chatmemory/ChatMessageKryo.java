@@ -0,0 +1,180 @@
+package com.tao.chatmemory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.ImmutableCollectionsSerializers;
+import com.esotericsoftware.kryo.serializers.JavaSerializer;
+import com.esotericsoftware.kryo.util.Pool;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.content.Media;
+import org.springframework.util.MimeType;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URL;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * 对话消息的 Kryo 编解码（线程安全）
+ * - Kryo 实例本身不是线程安全的，这里用 Kryo 自带的 Pool 池化，每次编解码借一个、用完归还；
+ * - 消息类及其字段类型全部显式注册，写入的是变长整数编号而不是完整类名，体积更小、解析更快；
+ *   注册编号一旦写入文件就不能再改，新增类型只能在末尾追加新编号；
+ * - 新格式以 4 字节魔数开头。旧文件（未注册、类名编码）没有魔数，读取时自动走兼容解析，下次写入即转换为新格式。
+ */
+final class ChatMessageKryo {
+
+    /**
+     * 新格式魔数：首字节 0 对旧格式而言只能是空列表（整个文件只有 1 字节），因此不会与旧文件混淆
+     */
+    private static final byte[] MAGIC = {0x00, 'K', 'M', 0x01};
+
+    private static final int POOL_SIZE = 64;
+
+    private static final Pool<Kryo> POOL = new Pool<>(true, false, POOL_SIZE) {
+        @Override
+        protected Kryo create() {
+            return newKryo();
+        }
+    };
+
+    private static final Pool<Kryo> LEGACY_POOL = new Pool<>(true, false, POOL_SIZE) {
+        @Override
+        protected Kryo create() {
+            Kryo kryo = new Kryo();
+            kryo.setRegistrationRequired(false);
+            kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+            return kryo;
+        }
+    };
+
+    private ChatMessageKryo() {
+    }
+
+    /**
+     * 编码消息列表（带魔数）
+     */
+    static byte[] encode(List<Message> messages) {
+        Kryo kryo = POOL.obtain();
+        try (Output output = new Output(256, -1)) {
+            output.writeBytes(MAGIC);
+            kryo.writeObject(output, messages instanceof ArrayList ? messages : new ArrayList<>(messages));
+            return output.toBytes();
+        } finally {
+            POOL.free(kryo);
+        }
+    }
+
+    /**
+     * 解码消息列表，兼容旧格式
+     */
+    @SuppressWarnings("unchecked")
+    static List<Message> decode(byte[] bytes) {
+        if (bytes.length == 0) {
+            return new ArrayList<>();
+        }
+        boolean current = hasMagic(bytes);
+        Pool<Kryo> pool = current ? POOL : LEGACY_POOL;
+        Kryo kryo = pool.obtain();
+        try (Input input = new Input(bytes)) {
+            if (current) {
+                input.skip(MAGIC.length);
+            }
+            return kryo.readObject(input, ArrayList.class);
+        } finally {
+            pool.free(kryo);
+        }
+    }
+
+    /**
+     * 编码消息列表（不带魔数），供追加日志中的单条记录使用
+     */
+    static byte[] encodeRecord(List<Message> messages) {
+        Kryo kryo = POOL.obtain();
+        try (Output output = new Output(256, -1)) {
+            kryo.writeObject(output, messages instanceof ArrayList ? messages : new ArrayList<>(messages));
+            return output.toBytes();
+        } finally {
+            POOL.free(kryo);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<Message> decodeRecord(byte[] bytes, int offset, int length) {
+        Kryo kryo = POOL.obtain();
+        try (Input input = new Input(bytes, offset, length)) {
+            return kryo.readObject(input, ArrayList.class);
+        } finally {
+            POOL.free(kryo);
+        }
+    }
+
+    private static boolean hasMagic(byte[] bytes) {
+        if (bytes.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Kryo newKryo() {
+        Kryo kryo = new Kryo();
+        kryo.setRegistrationRequired(true);
+        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+
+        // 编号只能追加，不能修改或复用
+        // 集合
+        kryo.register(ArrayList.class, 100);
+        kryo.register(LinkedList.class, 101);
+        kryo.register(HashMap.class, 102);
+        kryo.register(LinkedHashMap.class, 103);
+        kryo.register(Collections.emptyList().getClass(), 104);
+        kryo.register(Collections.emptyMap().getClass(), 105);
+        kryo.register(Collections.unmodifiableList(new ArrayList<>()).getClass(), 106);
+        kryo.register(Collections.unmodifiableMap(new HashMap<>()).getClass(), 107);
+        kryo.register(Object[].class, 108);
+        kryo.register(byte[].class, 109);
+
+        // 消息
+        kryo.register(MessageType.class, 120);
+        kryo.register(UserMessage.class, 121);
+        kryo.register(AssistantMessage.class, 122);
+        kryo.register(SystemMessage.class, 123);
+        kryo.register(ToolResponseMessage.class, 124);
+        kryo.register(AssistantMessage.ToolCall.class, 125);
+        kryo.register(ToolResponseMessage.ToolResponse.class, 126);
+        kryo.register(Media.class, 127);
+        // MimeType 内部含 Charset 等不便直接反射的字段，走 JDK 序列化
+        kryo.register(MimeType.class, new JavaSerializer(), 128);
+
+        // metadata 中常见的值类型（String / 基本类型包装类 Kryo 已默认注册）
+        kryo.register(Instant.class, 140);
+        kryo.register(Date.class, 141);
+        kryo.register(BigDecimal.class, 142);
+        kryo.register(BigInteger.class, 143);
+        kryo.register(URI.class, new JavaSerializer(), 144);
+        kryo.register(URL.class, 145);
+
+        // List.of / Map.of 等 JDK 不可变集合（在上面固定编号之后按固定顺序注册）
+        ImmutableCollectionsSerializers.registerSerializers(kryo);
+        return kryo;
+    }
+}
@@ -1,103 +1,143 @@
 package com.tao.chatmemory;
 
-import cn.hutool.json.ObjectMapper;
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.Output;
-import org.objenesis.strategy.StdInstantiatorStrategy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
 import org.springframework.ai.chat.messages.Message;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 基于文件持久化的对话记忆
+ * 同时实现 ChatMemoryRepository（整表读写语义），供 {@link WriteBackChatMemory} 作为落盘存储使用
+ * 线程安全：Kryo 编解码走池化实例（见 {@link ChatMessageKryo}），同一会话的读写由分段锁串行化
+ * 文件按会话 id 哈希分片存放，见 {@link ChatMemoryFileLayout}
  */
-public class FileBasedChatMemory implements ChatMemory {
+@Slf4j
+public class FileBasedChatMemory implements ChatMemory, ChatMemoryRepository {
 
-    private final String BASE_DIR;
-    private static final Kryo kryo = new Kryo();
+    private static final int LOCK_STRIPES = 64;
 
+    private static final String SUFFIX = ".kryo";
 
-    static {
-        kryo.setRegistrationRequired(false);
-        // 设置实例化策略
-        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
-    }
+    private final ChatMemoryFileLayout layout;
+
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
 
     // 构造对象时，指定文件保存目录
     public FileBasedChatMemory(String dir) {
-        this.BASE_DIR = dir;
-        File baseDir = new File(dir);
-        if (!baseDir.exists()) {
-            baseDir.mkdirs();
-        }
+        this.layout = new ChatMemoryFileLayout(Path.of(dir), SUFFIX);
+    }
+
+    ChatMemoryFileLayout layout() {
+        return layout;
     }
 
     @Override
     public void add(String conversationId, List<Message> messages) {
-        List<Message> conversationMessages = getOrCreateConversation(conversationId);
-        conversationMessages.addAll(messages);
-        saveConversation(conversationId, conversationMessages);
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            List<Message> conversationMessages = getOrCreateConversation(conversationId);
+            conversationMessages.addAll(messages);
+            saveConversation(conversationId, conversationMessages);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public List<Message> get(String conversationId) {
-        return getOrCreateConversation(conversationId);
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            return getOrCreateConversation(conversationId);
+        } finally {
+            lock.unlock();
+        }
     }
 
 
     @Override
     public void clear(String conversationId) {
-        File file = getConversationFile(conversationId);
-        if (file.exists()) {
-            file.delete();
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            Files.deleteIfExists(layout.path(conversationId, false));
+        } catch (IOException e) {
+            log.error("删除会话文件失败: {}", conversationId, e);
+        } finally {
+            lock.unlock();
         }
     }
 
+    @Override
+    public List<String> findConversationIds() {
+        return layout.conversationIds();
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        return get(conversationId);
+    }
+
     /**
-     * 获取或创建会话消息的列表
+     * 用 messages 整体覆盖会话文件
+     */
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            saveConversation(conversationId, messages);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        clear(conversationId);
+    }
+
+    /**
+     * 获取或创建会话消息的列表（调用方持有该会话的锁）
      * @param conversationId
      * @return
      */
     private List<Message> getOrCreateConversation(String conversationId) {
-        File file = getConversationFile(conversationId);
-        List<Message> messages = new ArrayList<>();
-        if (file.exists()) {
-            try (Input input = new Input(new FileInputStream(file))) {
-                messages = kryo.readObject(input, ArrayList.class);
-            } catch (IOException e) {
-                e.printStackTrace();
+        try {
+            Path file = layout.path(conversationId, false);
+            if (Files.exists(file)) {
+                List<Message> messages = ChatMessageKryo.decode(Files.readAllBytes(file));
+                ChatMemoryFileLayout.touch(file);
+                return messages;
             }
+        } catch (Exception e) {
+            log.error("读取会话文件失败: {}", conversationId, e);
         }
-        return messages;
+        return new ArrayList<>();
     }
 
     /**
-     * 保存会话消息
+     * 保存会话消息（调用方持有该会话的锁）
+     * 失败时抛出异常，由调用方决定重试（如 WriteBackChatMemory 保留脏标记），不静默丢消息；
+     * 编码失败（如 metadata 中出现未注册的类型）的 RuntimeException 原样抛出
      * @param conversationId
      * @param messages
      */
     private void saveConversation(String conversationId, List<Message> messages) {
-        File file = getConversationFile(conversationId);
-        try (Output output = new Output(new FileOutputStream(file))) {
-            kryo.writeObject(output, messages);
+        byte[] encoded = ChatMessageKryo.encode(messages);
+        try {
+            Files.write(layout.path(conversationId, true), encoded);
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException("保存会话文件失败: " + conversationId, e);
         }
     }
-
-    /**
-     * 每个会话文件单独保存
-     * @param conversationId
-     * @return
-     */
-    private File getConversationFile(String conversationId) {
-        return new File(BASE_DIR, conversationId + ".kryo");
-    }
 }
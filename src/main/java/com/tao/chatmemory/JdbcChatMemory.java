@@ -0,0 +1,597 @@
+package com.tao.chatmemory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于 Postgres 的对话记忆，会话不再绑定在某一台机器的本地磁盘上，多实例可以挂在负载均衡后面
+ *
+ * 【存储】每条消息一行：seq（全局自增）+ conversation_id + Kryo 编码的消息，主键 (conversation_id, seq) 即按会话有序的索引。
+ * 【写入】add 只放入本地待写队列，后台线程按批（batch-size 条或 flush-interval 到期）用一次 JDBC batch 写入；
+ *        写入前的消息对本机的读取立即可见（读取时与待写队列合并）。
+ * 【读取】支持区间读取（{@link WindowedChatMemory}），本地缓存每个会话的总条数和最近 read-window 条消息，
+ *        更早的区间才查库。
+ * 【失效】写入/清空后 NOTIFY 通知其他实例，各实例 LISTEN 到后丢弃该会话的本地缓存；监听连接断开期间可能漏通知，重连后清空全部缓存。
+ *        缓存加载期间收到失效通知时，加载结果不再留在缓存里，避免把旧数据重新缓存。
+ * 【失败】批量写入失败时按会话逐个重试，写不进去的会话不阻塞其他会话；同一会话连续 MAX_WRITE_ATTEMPTS 次
+ *        写入失败（数据本身有问题，而不是连不上库）就丢弃它的待写消息。
+ *
+ * 同一会话的读、写入提交、清空由分段锁串行化。
+ */
+@Slf4j
+public class JdbcChatMemory implements WindowedChatMemory, AppendableChatMemoryRepository, AutoCloseable {
+
+    private static final String CHANNEL = "chat_memory_changed";
+
+    private static final int LOCK_STRIPES = 64;
+
+    // LISTEN 连接每次等待通知的最长时间
+    private static final int LISTEN_POLL_MILLIS = 1000;
+
+    // 同一会话连续写入失败多少次后丢弃其待写消息
+    static final int MAX_WRITE_ATTEMPTS = 5;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final DataSource dataSource;
+
+    private final String table;
+
+    private final int batchSize;
+
+    private final Duration flushInterval;
+
+    // 本地缓存每个会话最近多少条
+    private final int readWindow;
+
+    // 本实例标识，收到自己发出的通知时忽略
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+
+    // 已提交到数据库的状态：总条数 + 最近 readWindow 条
+    private final Cache<String, Persisted> cache;
+
+    // 尚未写入数据库的消息，按会话保存顺序
+    private final Map<String, List<Message>> pending = new ConcurrentHashMap<>();
+
+    // 各会话连续写入失败的次数，只在 flush 中读写
+    private final Map<String, Integer> writeFailures = new ConcurrentHashMap<>();
+
+    // 收到失效通知的次数，缓存加载前后比较，判断加载期间是否被失效
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final Condition flushSignal = flushLock.newCondition();
+
+    private volatile int pendingCount;
+
+    private volatile boolean running = true;
+
+    private Thread writer;
+
+    private Thread listener;
+
+    public JdbcChatMemory(JdbcTemplate jdbcTemplate,
+                          String table,
+                          int batchSize,
+                          Duration flushInterval,
+                          int readWindow,
+                          long maxCachedConversations) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = jdbcTemplate.getDataSource();
+        this.table = table;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushInterval = flushInterval;
+        this.readWindow = Math.max(1, readWindow);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxCachedConversations)
+                .build();
+    }
+
+    /**
+     * 建表并启动后台写入与通知监听
+     */
+    public void start() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    seq             bigserial,
+                    conversation_id varchar(255) NOT NULL,
+                    message_type    varchar(16)  NOT NULL,
+                    payload         bytea        NOT NULL,
+                    created_at      timestamptz  NOT NULL DEFAULT now(),
+                    PRIMARY KEY (conversation_id, seq)
+                )""".formatted(table));
+        writer = Thread.ofPlatform().daemon().name("chat-memory-jdbc-writer").start(this::writeLoop);
+        listener = Thread.ofPlatform().daemon().name("chat-memory-jdbc-listener").start(this::listenLoop);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        append(conversationId, messages);
+    }
+
+    @Override
+    public void append(String conversationId, List<Message> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            pending.computeIfAbsent(conversationId, id -> new ArrayList<>()).addAll(messages);
+        } finally {
+            lock.unlock();
+        }
+        int count;
+        flushLock.lock();
+        try {
+            count = pendingCount += messages.size();
+            if (count >= batchSize) {
+                flushSignal.signal();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            return getRange(conversationId, 0, Integer.MAX_VALUE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int count(String conversationId) {
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            return persisted(conversationId).count() + pendingOf(conversationId).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getRange(String conversationId, int from, int to) {
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            Persisted persisted = persisted(conversationId);
+            List<Message> unsaved = pendingOf(conversationId);
+            int total = persisted.count() + unsaved.size();
+            to = Math.min(to, total);
+            if (from >= to) {
+                return new ArrayList<>();
+            }
+
+            List<Message> result = new ArrayList<>(to - from);
+            int persistedTo = Math.min(to, persisted.count());
+            if (from < persistedTo) {
+                int tailStart = persisted.count() - persisted.tail().size();
+                if (from >= tailStart) {
+                    result.addAll(persisted.tail().subList(from - tailStart, persistedTo - tailStart));
+                } else {
+                    // 缓存的最近一段不够，更早的部分查库
+                    result.addAll(queryRange(conversationId, from, persistedTo - from));
+                }
+            }
+            for (int i = Math.max(from, persisted.count()); i < to; i++) {
+                result.add(unsaved.get(i - persisted.count()));
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            List<Message> dropped = pending.remove(conversationId);
+            if (dropped != null) {
+                adjustPendingCount(-dropped.size());
+            }
+            writeFailures.remove(conversationId);
+            jdbcTemplate.update("DELETE FROM " + table + " WHERE conversation_id = ?", conversationId);
+            cache.invalidate(conversationId);
+            notifyChanged(List.of(conversationId));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        flush();
+        return jdbcTemplate.queryForList("SELECT DISTINCT conversation_id FROM " + table, String.class);
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        return get(conversationId);
+    }
+
+    /**
+     * 整会话覆盖：清空后重新写入
+     */
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        ReentrantLock lock = locks.get(conversationId);
+        lock.lock();
+        try {
+            clear(conversationId);
+            append(conversationId, messages);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        clear(conversationId);
+    }
+
+    /**
+     * 立即把待写消息全部写入数据库
+     * @return 写入的消息条数
+     */
+    public synchronized int flush() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        // 只有这里会同时持有多把分段锁，方法本身串行执行，不会与自己交叉加锁
+        List<ReentrantLock> acquired = new ArrayList<>();
+        try {
+            for (String id : pending.keySet()) {
+                ReentrantLock lock = locks.get(id);
+                if (!lock.isHeldByCurrentThread()) {
+                    lock.lock();
+                    acquired.add(lock);
+                }
+            }
+            // 持有锁之后再取快照；加锁期间新出现的会话留到下一轮
+            Map<String, List<Row>> byConversation = new LinkedHashMap<>();
+            List<Row> rows = new ArrayList<>();
+            for (Map.Entry<String, List<Message>> entry : pending.entrySet()) {
+                if (!locks.get(entry.getKey()).isHeldByCurrentThread()) {
+                    continue;
+                }
+                List<Row> conversationRows = new ArrayList<>(entry.getValue().size());
+                for (Message message : entry.getValue()) {
+                    conversationRows.add(new Row(entry.getKey(), message));
+                }
+                byConversation.put(entry.getKey(), conversationRows);
+                rows.addAll(conversationRows);
+            }
+            if (rows.isEmpty()) {
+                return 0;
+            }
+
+            List<String> ids;
+            try {
+                insert(rows);
+                ids = new ArrayList<>(byConversation.keySet());
+            } catch (RuntimeException e) {
+                if (isUnavailable(e)) {
+                    throw e;
+                }
+                if (byConversation.size() == 1) {
+                    countFailure(byConversation.keySet().iterator().next(), e);
+                    return 0;
+                }
+                log.warn("对话消息批量写入失败，按会话逐个重试", e);
+                ids = insertEach(byConversation);
+            }
+
+            int written = 0;
+            for (String id : ids) {
+                List<Message> saved = pending.remove(id);
+                written += saved.size();
+                writeFailures.remove(id);
+                Persisted persisted = cache.getIfPresent(id);
+                if (persisted != null) {
+                    cache.put(id, persisted.append(saved, readWindow));
+                }
+            }
+            adjustPendingCount(-written);
+            notifyChanged(ids);
+            return written;
+        } finally {
+            for (ReentrantLock lock : acquired) {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        flushLock.lock();
+        try {
+            flushSignal.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
+        joinQuietly(writer);
+        if (listener != null) {
+            listener.interrupt();
+            joinQuietly(listener);
+        }
+        int flushed = flushQuietly();
+        log.info("JDBC 对话记忆关闭，写入剩余 {} 条消息", flushed);
+    }
+
+    private void writeLoop() {
+        while (running) {
+            flushLock.lock();
+            try {
+                if (pendingCount < batchSize) {
+                    flushSignal.await(flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                flushLock.unlock();
+            }
+            flushQuietly();
+        }
+    }
+
+    private int flushQuietly() {
+        try {
+            return flush();
+        } catch (Exception e) {
+            // 数据库不可用时消息仍留在待写队列，下一轮重试
+            log.warn("对话消息写入数据库失败", e);
+            return 0;
+        }
+    }
+
+    /**
+     * 监听其他实例的变更通知，丢弃对应会话的本地缓存
+     */
+    private void listenLoop() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("LISTEN " + CHANNEL);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                // 连接断开期间的通知已经丢失，重新监听后整体失效一次
+                invalidateAll();
+                while (running && !Thread.currentThread().isInterrupted()) {
+                    PGNotification[] notifications = pgConnection.getNotifications(LISTEN_POLL_MILLIS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        onNotification(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("对话记忆 LISTEN 连接异常，稍后重连", e);
+                invalidateAll();
+                try {
+                    Thread.sleep(flushInterval.toMillis() + LISTEN_POLL_MILLIS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    void onNotification(String payload) {
+        int sep = payload.indexOf('|');
+        if (sep < 0 || payload.startsWith(nodeId + "|")) {
+            return;
+        }
+        invalidate(payload.substring(sep + 1));
+    }
+
+    /**
+     * 先计数再失效：加载方在计数变化后丢弃加载结果，计数变化前放入的旧数据会被这里的失效清除
+     */
+    private void invalidate(String conversationId) {
+        invalidations.incrementAndGet();
+        cache.invalidate(conversationId);
+    }
+
+    private void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    private void notifyChanged(List<String> conversationIds) {
+        try {
+            for (String id : conversationIds) {
+                jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class, CHANNEL, nodeId + "|" + id);
+            }
+        } catch (Exception e) {
+            // 通知失败只影响其他实例的缓存新鲜度
+            log.warn("对话记忆变更通知发送失败", e);
+        }
+    }
+
+    /**
+     * 逐个会话写入，返回写入成功的会话；数据库不可用时停止，已写入的会话照常返回
+     */
+    private List<String> insertEach(Map<String, List<Row>> byConversation) {
+        List<String> saved = new ArrayList<>();
+        for (Map.Entry<String, List<Row>> entry : byConversation.entrySet()) {
+            try {
+                insert(entry.getValue());
+                saved.add(entry.getKey());
+            } catch (RuntimeException e) {
+                if (isUnavailable(e)) {
+                    log.warn("对话消息写入失败，数据库不可用", e);
+                    break;
+                }
+                countFailure(entry.getKey(), e);
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * 记一次写入失败，达到上限时丢弃该会话的待写消息
+     */
+    private void countFailure(String conversationId, RuntimeException e) {
+        int attempts = writeFailures.merge(conversationId, 1, Integer::sum);
+        if (attempts < MAX_WRITE_ATTEMPTS) {
+            log.warn("会话 {} 的消息第 {} 次写入失败", conversationId, attempts, e);
+            return;
+        }
+        List<Message> dropped = pending.remove(conversationId);
+        writeFailures.remove(conversationId);
+        if (dropped != null) {
+            adjustPendingCount(-dropped.size());
+            log.error("会话 {} 的消息连续 {} 次写入失败，丢弃 {} 条待写消息", conversationId, attempts, dropped.size(), e);
+        }
+    }
+
+    /**
+     * 连接失败、超时等与数据无关的错误，整批留到下一轮重试，不计入会话的失败次数
+     */
+    private static boolean isUnavailable(RuntimeException e) {
+        return e instanceof DataAccessResourceFailureException || e instanceof TransientDataAccessException;
+    }
+
+    private void insert(List<Row> rows) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO " + table + " (conversation_id, message_type, payload) VALUES (?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Row row = rows.get(i);
+                        ps.setString(1, row.conversationId());
+                        ps.setString(2, row.message().getMessageType().getValue());
+                        ps.setBytes(3, ChatMessageKryo.encodeRecord(List.of(row.message())));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return rows.size();
+                    }
+                });
+    }
+
+    /**
+     * 已提交状态（调用方持有该会话的锁）：缓存未命中时查总条数和最近 readWindow 条
+     * 两者在同一条语句里查询，共用一个快照，条数和最近一段不会错开
+     */
+    private Persisted persisted(String conversationId) {
+        Persisted cached = cache.getIfPresent(conversationId);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = invalidations.get();
+        List<TailRow> rows = jdbcTemplate.query(
+                "SELECT (SELECT count(*) FROM " + table + " WHERE conversation_id = ?) AS total, payload FROM " + table
+                        + " WHERE conversation_id = ? ORDER BY seq DESC LIMIT ?",
+                (rs, rowNum) -> new TailRow(rs.getInt("total"), decode(rs.getBytes("payload"))),
+                conversationId, conversationId, readWindow);
+        List<Message> tail = new ArrayList<>(rows.size());
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            tail.add(rows.get(i).message());
+        }
+        Persisted loaded = new Persisted(rows.isEmpty() ? 0 : rows.get(0).total(), tail);
+        cache.put(conversationId, loaded);
+        if (invalidations.get() != generation) {
+            // 加载期间收到过失效通知，查到的可能已经过时，本次使用但不留在缓存里
+            cache.invalidate(conversationId);
+        }
+        return loaded;
+    }
+
+    private List<Message> queryRange(String conversationId, int offset, int limit) {
+        return jdbcTemplate.query(
+                "SELECT payload FROM " + table + " WHERE conversation_id = ? ORDER BY seq OFFSET ? LIMIT ?",
+                (rs, rowNum) -> decode(rs.getBytes("payload")),
+                conversationId, offset, limit);
+    }
+
+    private List<Message> pendingOf(String conversationId) {
+        List<Message> messages = pending.get(conversationId);
+        return messages == null ? List.of() : messages;
+    }
+
+    private void adjustPendingCount(int delta) {
+        flushLock.lock();
+        try {
+            pendingCount = Math.max(0, pendingCount + delta);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private static Message decode(byte[] payload) {
+        return ChatMessageKryo.decodeRecord(payload, 0, payload.length).get(0);
+    }
+
+    private static void joinQuietly(Thread thread) {
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(Duration.ofSeconds(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Row(String conversationId, Message message) {
+    }
+
+    private record TailRow(int total, Message message) {
+    }
+
+    /**
+     * 会话已提交到数据库的状态，不可变，整体替换
+     */
+    private record Persisted(int count, List<Message> tail) {
+
+        Persisted append(List<Message> saved, int window) {
+            List<Message> merged = new ArrayList<>(tail);
+            merged.addAll(saved);
+            int drop = Math.max(0, merged.size() - window);
+            return new Persisted(count + saved.size(), List.copyOf(merged.subList(drop, merged.size())));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.tao.chatmemory;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按会话 id 分段的锁
+ * 同一会话的读-改-写必须串行，否则两个并发请求各自读旧列表、追加、写回，会丢掉其中一方的消息；
+ * 不同会话大概率落在不同分段上互不阻塞，锁的数量固定，不随会话数增长。
+ */
+final class StripedLocks {
+
+    private final ReentrantLock[] locks;
+
+    private final int mask;
+
+    /**
+     * @param stripes 分段数，向上取整为 2 的幂
+     */
+    StripedLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    ReentrantLock get(String key) {
+        int h = key.hashCode();
+        // 打散高位，避免相近 id 落在同一分段
+        h ^= (h >>> 16);
+        return locks[h & mask];
+    }
+}
@@ -0,0 +1,329 @@
+package com.tao.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 滑动窗口 + 滚动摘要的对话记忆
+ * MessageChatMemoryAdvisor 会把 get 返回的全部消息拼进提示词，会话越长 prompt 越大、Ollama 预填充越慢。这里：
+ * 1. get 只返回最近的消息：从最新往前累加，不超过 token 预算和最大条数；
+ * 2. 窗口之外、尚未进入摘要的旧消息累积到一定条数后，后台线程调用模型把它们并入滚动摘要，不占用请求线程；
+ *    并入摘要之前这些消息仍随窗口发给模型（不超过 maxMessages 条、maxTokens 预算，超出则立即触发摘要）；
+ * 3. 摘要作为一条 SystemMessage 放在窗口前面，单独保存在 "<conversationId>.summary" 会话下，
+ *    metadata 中记录摘要已覆盖到第几条消息；
+ * 4. 完整历史仍由底层存储保存，只是不再全部发给模型；底层支持区间读取（{@link WindowedChatMemory}）时，
+ *    每轮只读最近 maxMessages 条，不再读全部历史。
+ * 每轮的 prompt 大小因此有上界，与会话长度无关。
+ */
+@Slf4j
+public class SummarizingWindowChatMemory implements ChatMemory, AutoCloseable {
+
+    static final String SUMMARY_SUFFIX = ".summary";
+
+    static final String SUMMARIZED_COUNT = "summarized_count";
+
+    private static final String SUMMARY_PREFIX = "以下是本次会话更早部分的摘要：\n";
+
+    // 每条消息的格式开销（角色标记等）估算
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private static final String SUMMARY_PROMPT = """
+            你是一个对话摘要助手。下面 <summary> 中是之前对话的摘要（可能为空），<dialog> 中是之后新增的对话。
+            请把新增对话的要点合并进摘要，输出更新后的完整摘要：
+            - 保留用户的诉求、已确认的事实、助手给出的结论和承诺；
+            - 不超过 %d 字，只输出摘要正文，不要输出任何解释、思考过程或 <think> 标签。
+
+            <summary>
+            %s
+            </summary>
+
+            <dialog>
+            %s
+            </dialog>
+            """;
+
+    private final ChatMemory delegate;
+
+    private final ChatModel chatModel;
+
+    private final TokenCountEstimator tokenEstimator;
+
+    // 窗口内消息的 token 上限
+    private final int maxTokens;
+
+    // 窗口内消息的最大条数
+    private final int maxMessages;
+
+    // 窗口外未摘要的消息达到该条数才触发摘要，避免每轮都调模型
+    private final int summarizeBatch;
+
+    // 摘要的最大字数
+    private final int summaryMaxChars;
+
+    private final ExecutorService summarizer;
+
+    // 正在排队或执行摘要的会话，同一会话同时只有一个摘要任务
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    public SummarizingWindowChatMemory(ChatMemory delegate,
+                                       ChatModel chatModel,
+                                       TokenCountEstimator tokenEstimator,
+                                       int maxTokens,
+                                       int maxMessages,
+                                       int summarizeBatch,
+                                       int summaryMaxChars,
+                                       int concurrency) {
+        this.delegate = delegate;
+        this.chatModel = chatModel;
+        this.tokenEstimator = tokenEstimator;
+        this.maxTokens = maxTokens;
+        this.maxMessages = Math.max(2, maxMessages);
+        this.summarizeBatch = Math.max(1, summarizeBatch);
+        this.summaryMaxChars = summaryMaxChars;
+        this.summarizer = Executors.newFixedThreadPool(Math.max(1, concurrency), r -> {
+            Thread t = new Thread(r, "chat-memory-summarizer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        delegate.add(conversationId, messages);
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        Tail tail = readTail(conversationId);
+        SystemMessage summary = loadSummary(conversationId);
+        int summarized = summarizedCount(summary, tail.total());
+        int windowStart = tail.offset() + windowStart(tail.messages());
+
+        // [已摘要位置, 窗口起点) 之间的消息还没并入摘要，要放在窗口前一起发给模型，否则摘要和窗口里都没有它们；
+        // 这部分最多再占 maxMessages 条、maxTokens 预算，超出时立即触发摘要，不再等攒够一批
+        List<Message> gap = unsummarized(conversationId, tail, summarized, windowStart);
+        if (windowStart - summarized >= summarizeBatch || gap.size() < windowStart - summarized) {
+            scheduleSummary(conversationId);
+        }
+
+        List<Message> result = new ArrayList<>(gap.size() + tail.total() - windowStart + 1);
+        if (summary != null) {
+            result.add(summary);
+        }
+        result.addAll(gap);
+        result.addAll(tail.messages().subList(windowStart - tail.offset(), tail.messages().size()));
+        return result;
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        delegate.clear(conversationId);
+        delegate.clear(conversationId + SUMMARY_SUFFIX);
+    }
+
+    /**
+     * 等待进行中的摘要写完，再关闭底层记忆（写回缓存在这里落盘）
+     */
+    @Override
+    public void close() throws Exception {
+        summarizer.shutdown();
+        try {
+            summarizer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    /**
+     * 窗口起点：从最新消息往前累加，超出 token 预算或条数上限即停止；
+     * 窗口不以助手/工具消息开头，避免模型看到没有提问的回答
+     */
+    int windowStart(List<Message> all) {
+        int tokens = 0;
+        int start = all.size();
+        while (start > 0 && all.size() - start < maxMessages) {
+            int cost = estimate(all.get(start - 1));
+            // 至少保留最新一条，哪怕它本身就超预算
+            if (start < all.size() && tokens + cost > maxTokens) {
+                break;
+            }
+            tokens += cost;
+            start--;
+        }
+        while (start < all.size() - 1 && all.get(start).getMessageType() != MessageType.USER) {
+            start++;
+        }
+        return start;
+    }
+
+    private int estimate(Message message) {
+        String text = message.getText();
+        return MESSAGE_OVERHEAD_TOKENS + (text == null ? 0 : tokenEstimator.estimate(text));
+    }
+
+    private void scheduleSummary(String conversationId) {
+        if (!inFlight.add(conversationId)) {
+            return;
+        }
+        try {
+            summarizer.execute(() -> {
+                try {
+                    summarize(conversationId);
+                } catch (Exception e) {
+                    // 摘要失败不影响对话，下一轮 get 会再次触发
+                    log.warn("会话 {} 生成摘要失败", conversationId, e);
+                } finally {
+                    inFlight.remove(conversationId);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(conversationId);
+            log.warn("会话 {} 摘要任务提交失败", conversationId, e);
+        }
+    }
+
+    /**
+     * 把 [已摘要位置, 窗口起点) 之间的消息并入摘要
+     */
+    void summarize(String conversationId) {
+        Tail tail = readTail(conversationId);
+        SystemMessage summary = loadSummary(conversationId);
+        int summarized = summarizedCount(summary, tail.total());
+        int windowStart = tail.offset() + windowStart(tail.messages());
+        if (windowStart <= summarized) {
+            return;
+        }
+
+        List<Message> toFold = range(conversationId, summarized, windowStart);
+        StringBuilder dialog = new StringBuilder();
+        for (Message message : toFold) {
+            dialog.append(roleOf(message)).append('：').append(message.getText()).append('\n');
+        }
+        String previous = summary == null ? "" : stripPrefix(summary.getText());
+        long start = System.nanoTime();
+        String text = chatModel.call(new Prompt(String.format(SUMMARY_PROMPT, summaryMaxChars, previous, dialog)))
+                .getResult().getOutput().getText();
+        text = cleanSummary(text);
+        if (text.isEmpty()) {
+            log.warn("会话 {} 摘要为空，保留旧摘要", conversationId);
+            return;
+        }
+
+        SystemMessage updated = SystemMessage.builder()
+                .text(SUMMARY_PREFIX + text)
+                .metadata(Map.of(SUMMARIZED_COUNT, windowStart))
+                .build();
+        String summaryId = conversationId + SUMMARY_SUFFIX;
+        delegate.clear(summaryId);
+        delegate.add(summaryId, List.of(updated));
+        log.debug("会话 {} 摘要已更新：覆盖前 {} 条消息，耗时 {} ms",
+                conversationId, windowStart, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * 读取最近 maxMessages 条消息（窗口最多这么多条），offset 为其中第一条在整个会话中的下标
+     */
+    private Tail readTail(String conversationId) {
+        if (delegate instanceof WindowedChatMemory windowed) {
+            int total = windowed.count(conversationId);
+            int from = Math.max(0, total - maxMessages);
+            List<Message> messages = windowed.getRange(conversationId, from, total);
+            // 读取期间可能有新消息写入，以实际读到的条数为准
+            return new Tail(from, from + messages.size(), messages);
+        }
+        List<Message> all = delegate.get(conversationId);
+        int from = Math.max(0, all.size() - maxMessages);
+        return new Tail(from, all.size(), all.subList(from, all.size()));
+    }
+
+    /**
+     * 尚未并入摘要的窗口外消息；超出条数或 token 上限时返回空列表
+     */
+    private List<Message> unsummarized(String conversationId, Tail tail, int summarized, int windowStart) {
+        int count = windowStart - summarized;
+        if (count <= 0 || count > maxMessages) {
+            return List.of();
+        }
+        List<Message> gap = new ArrayList<>(count);
+        if (summarized < tail.offset()) {
+            gap.addAll(range(conversationId, summarized, tail.offset()));
+        }
+        gap.addAll(tail.messages().subList(Math.max(summarized, tail.offset()) - tail.offset(), windowStart - tail.offset()));
+        int tokens = 0;
+        for (Message message : gap) {
+            tokens += estimate(message);
+        }
+        return tokens <= maxTokens ? gap : List.of();
+    }
+
+    /**
+     * 读取 [from, to) 区间的消息，底层支持区间读取时不读全部历史
+     */
+    private List<Message> range(String conversationId, int from, int to) {
+        return delegate instanceof WindowedChatMemory windowed
+                ? windowed.getRange(conversationId, from, to)
+                : delegate.get(conversationId).subList(from, to);
+    }
+
+    private record Tail(int offset, int total, List<Message> messages) {
+    }
+
+    private SystemMessage loadSummary(String conversationId) {
+        List<Message> messages = delegate.get(conversationId + SUMMARY_SUFFIX);
+        if (messages.isEmpty() || !(messages.get(messages.size() - 1) instanceof SystemMessage summary)) {
+            return null;
+        }
+        return summary;
+    }
+
+    /**
+     * 摘要已覆盖的消息条数；历史被清空或截短时视为未覆盖
+     */
+    private static int summarizedCount(SystemMessage summary, int total) {
+        if (summary == null || !(summary.getMetadata().get(SUMMARIZED_COUNT) instanceof Number count)) {
+            return 0;
+        }
+        return Math.min(count.intValue(), total);
+    }
+
+    private static String stripPrefix(String text) {
+        return text != null && text.startsWith(SUMMARY_PREFIX) ? text.substring(SUMMARY_PREFIX.length()) : text;
+    }
+
+    /**
+     * qwen3 等模型可能带 <think> 块，去掉后只保留正文
+     */
+    private static String cleanSummary(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.replaceAll("(?s)<think>.*?</think>", "").trim();
+    }
+
+    private static String roleOf(Message message) {
+        return switch (message.getMessageType()) {
+            case USER -> "用户";
+            case ASSISTANT -> "助手";
+            case SYSTEM -> "系统";
+            case TOOL -> "工具";
+        };
+    }
+}
@@ -0,0 +1,23 @@
+package com.tao.chatmemory;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 支持按区间读取的对话记忆
+ * 会话很长时不必每轮都把全部历史读出来：{@link SummarizingWindowChatMemory} 只需要总条数、最近一段和待摘要的那一段
+ */
+public interface WindowedChatMemory extends ChatMemory {
+
+    /**
+     * 会话消息总条数
+     */
+    int count(String conversationId);
+
+    /**
+     * 读取 [from, to) 区间的消息，下标从最早一条消息算起
+     */
+    List<Message> getRange(String conversationId, int from, int to);
+}
@@ -0,0 +1,273 @@
+package com.tao.chatmemory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 写回式对话记忆（内存缓存 + 延迟落盘）
+ * FileBasedChatMemory 每次 add 都要整文件反序列化、追加、再整文件写回，get 又要再读一遍，
+ * 多轮对话的 I/O 随轮数平方增长。这里在它前面加一层内存缓存：
+ * 1. 会话首次访问时从存储加载一次，之后 get/add 只操作内存；
+ * 2. add 只把会话标记为脏，后台按固定间隔把脏会话写回（write-behind），
+ *    存储支持追加（{@link AppendableChatMemoryRepository}）时只写新增消息，否则整会话覆盖；
+ * 3. 会话数超过上限或空闲超时会被淘汰，淘汰时若为脏会先同步写回，再从内存移除；
+ * 4. 关闭时（Spring 销毁 bean）把所有脏会话写回。
+ * 写回失败（存储抛异常）时保留脏标记和已落盘位置，下一轮照常重试；淘汰时写回失败的会话暂存在
+ * failedEvictions 中，由后续写回重试，期间再次访问会从这里取回，不会读到缺消息的存储。
+ */
+@Slf4j
+public class WriteBackChatMemory implements ChatMemory, AutoCloseable {
+
+    private final ChatMemoryRepository repository;
+
+    private final Cache<String, Conversation> cache;
+
+    private final ScheduledExecutorService flusher;
+
+    // 淘汰时写回失败的会话：已移出缓存，但消息还没进存储
+    private final Map<String, Conversation> failedEvictions = new ConcurrentHashMap<>();
+
+    /**
+     * @param repository       落盘存储（整会话读写）
+     * @param maxConversations 内存中最多缓存的会话数
+     * @param idleTimeout      会话空闲多久后淘汰
+     * @param flushInterval    脏会话写回间隔
+     */
+    public WriteBackChatMemory(ChatMemoryRepository repository,
+                               long maxConversations,
+                               Duration idleTimeout,
+                               Duration flushInterval) {
+        this.repository = repository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxConversations)
+                .expireAfterAccess(idleTimeout)
+                .scheduler(Scheduler.systemScheduler())
+                // evictionListener 在淘汰的原子操作内同步执行：同一会话的下一次加载一定能读到写回后的文件
+                .evictionListener((String id, Conversation conversation, RemovalCause cause) -> {
+                    if (id != null && conversation != null) {
+                        evict(id, conversation);
+                    }
+                })
+                .build();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chat-memory-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        long millis = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        while (true) {
+            Conversation conversation = cache.get(conversationId, this::load);
+            synchronized (conversation) {
+                // 拿到锁之前刚好被淘汰（已写回），重新加载后再追加
+                if (conversation.removed) {
+                    continue;
+                }
+                conversation.messages.addAll(messages);
+                conversation.dirty = true;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        Conversation conversation = cache.get(conversationId, this::load);
+        synchronized (conversation) {
+            // 返回副本，调用方修改不影响缓存
+            return new ArrayList<>(conversation.messages);
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        // 删除文件与移出缓存在同一个原子操作内完成，期间同一会话的加载会等待，不会读到删除前的旧文件
+        cache.asMap().compute(conversationId, (id, conversation) -> {
+            if (conversation != null) {
+                synchronized (conversation) {
+                    conversation.removed = true;
+                    conversation.dirty = false;
+                }
+            }
+            Conversation pending = failedEvictions.remove(id);
+            if (pending != null) {
+                synchronized (pending) {
+                    pending.dirty = false;
+                }
+            }
+            repository.deleteByConversationId(id);
+            return null;
+        });
+    }
+
+    /**
+     * 立即把所有脏会话写回存储；单个会话写回失败不影响其他会话，失败的保留脏标记等下一轮
+     * @return 成功写回的会话数
+     */
+    public int flush() {
+        int flushed = 0;
+        int failed = 0;
+        for (Map.Entry<String, Conversation> entry : cache.asMap().entrySet()) {
+            Conversation conversation = entry.getValue();
+            synchronized (conversation) {
+                if (conversation.dirty && !conversation.removed) {
+                    if (tryWrite(entry.getKey(), conversation)) {
+                        flushed++;
+                    } else {
+                        failed++;
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, Conversation> entry : failedEvictions.entrySet()) {
+            Conversation conversation = entry.getValue();
+            synchronized (conversation) {
+                // dirty 为 false：已被重新加载回缓存或已清空，由那边负责
+                if (!conversation.dirty) {
+                    failedEvictions.remove(entry.getKey(), conversation);
+                } else if (tryWrite(entry.getKey(), conversation)) {
+                    failedEvictions.remove(entry.getKey(), conversation);
+                    flushed++;
+                } else {
+                    failed++;
+                }
+            }
+        }
+        if (failed > 0) {
+            log.warn("对话记忆有 {} 个会话写回失败，下一轮重试", failed);
+        }
+        return flushed;
+    }
+
+    /**
+     * 当前缓存的会话数
+     */
+    public long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int flushed = flush();
+        log.info("对话记忆关闭，写回 {} 个会话", flushed);
+    }
+
+    private void flushQuietly() {
+        try {
+            cache.cleanUp();
+            int flushed = flush();
+            if (flushed > 0) {
+                log.debug("对话记忆写回 {} 个会话", flushed);
+            }
+        } catch (Exception e) {
+            // 单个会话的写回失败已在 flush 内处理，这里只兜底，避免定时任务因异常停止调度
+            log.warn("对话记忆写回失败", e);
+        }
+    }
+
+    private Conversation load(String conversationId) {
+        // 淘汰时没写回成功的会话直接取回内存中的状态，存储里缺它未写回的消息
+        Conversation pending = failedEvictions.remove(conversationId);
+        if (pending != null) {
+            synchronized (pending) {
+                if (pending.dirty) {
+                    Conversation conversation = new Conversation(new ArrayList<>(pending.messages));
+                    conversation.persisted = pending.persisted;
+                    conversation.dirty = true;
+                    // 写回责任转交给新对象，flush 不再重试旧对象
+                    pending.dirty = false;
+                    return conversation;
+                }
+            }
+        }
+        return new Conversation(new ArrayList<>(repository.findByConversationId(conversationId)));
+    }
+
+    private void evict(String conversationId, Conversation conversation) {
+        synchronized (conversation) {
+            if (conversation.dirty && !conversation.removed && !tryWrite(conversationId, conversation)) {
+                failedEvictions.put(conversationId, conversation);
+            }
+            conversation.removed = true;
+        }
+    }
+
+    /**
+     * 写回单个会话，失败时记录日志并返回 false，脏标记和已落盘位置保持不变
+     */
+    private boolean tryWrite(String conversationId, Conversation conversation) {
+        try {
+            write(conversationId, conversation);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("会话 {} 写回失败", conversationId, e);
+            return false;
+        }
+    }
+
+    /**
+     * 写回成功后才推进 persisted 并清除脏标记
+     */
+    private void write(String conversationId, Conversation conversation) {
+        List<Message> messages = conversation.messages;
+        if (repository instanceof AppendableChatMemoryRepository appendable && conversation.persisted <= messages.size()) {
+            // 存储里已有前 persisted 条，只追加新增部分
+            appendable.append(conversationId, new ArrayList<>(messages.subList(conversation.persisted, messages.size())));
+        } else {
+            repository.saveAll(conversationId, messages);
+        }
+        conversation.persisted = messages.size();
+        conversation.dirty = false;
+    }
+
+    /**
+     * 内存中的单个会话，字段都在 synchronized (this) 下访问
+     */
+    private static final class Conversation {
+
+        final List<Message> messages;
+
+        // 有未写回的消息
+        boolean dirty;
+
+        // 存储中已有的消息条数
+        int persisted;
+
+        // 已被淘汰或清空，持有旧引用的线程需要重新加载
+        boolean removed;
+
+        Conversation(List<Message> messages) {
+            this.messages = messages;
+            this.persisted = messages.size();
+        }
+    }
+}
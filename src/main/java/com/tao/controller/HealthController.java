@@ -1,17 +1,52 @@
 package com.tao.controller;
 
+import com.tao.tools.TaxonomyBootstrap;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.LivenessState;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
 @RequestMapping("/health")
+@RequiredArgsConstructor
 public class HealthController {
 
+    private final ApplicationAvailability applicationAvailability;
+
+    private final TaxonomyBootstrap taxonomyBootstrap;
+
     @GetMapping
     public String healthCheck() {
         return "ok";
     }
-}
 
+    /**
+     * 存活探针：进程正常即可，不受分类表导入影响
+     */
+    @GetMapping("/liveness")
+    public ResponseEntity<String> liveness() {
+        if (applicationAvailability.getLivenessState() == LivenessState.CORRECT) {
+            return ResponseEntity.ok("ok");
+        }
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("broken");
+    }
 
+    /**
+     * 就绪探针：应用可接流量，且分类表导入 + 内存索引刷新已完成
+     * TaxonomyBootstrap 会同步发布 ReadinessState，结论与 /actuator/health/readiness 一致
+     */
+    @GetMapping("/readiness")
+    public ResponseEntity<String> readiness() {
+        if (applicationAvailability.getReadinessState() == ReadinessState.ACCEPTING_TRAFFIC
+                && taxonomyBootstrap.isReady()) {
+            return ResponseEntity.ok("ok");
+        }
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body("not ready: taxonomy " + taxonomyBootstrap.state());
+    }
+}
@@ -49,13 +49,13 @@ public class InteractiveRagRunner implements CommandLineRunner {
                 }
                 System.out.println("===  模型开始处理，请耐心等待  ===");
 
-                long start = System.currentTimeMillis(); // 开始时间
+                long start = System.nanoTime(); // 开始时间
                 String result = serviceApp.doClassifyWithRag(message);
-                double costSeconds = (System.currentTimeMillis() - start) / 1000.0;   // 总耗时
+                long costMillis = (System.nanoTime() - start) / 1_000_000;   // 总耗时
 
                 System.out.println("=== 模型输出 ===");
                 System.out.println(result);
-                System.out.println("=== 完成，总耗时: " + costSeconds + " ms ===");
+                System.out.println("=== 完成，总耗时: " + costMillis + " ms ===");
 
             }
         }
@@ -0,0 +1,176 @@
+package com.tao.embedding;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带缓存的 EmbeddingModel 包装
+ * 同一个问题文本（如“询问套餐资费”）一天会被 embedding 成千上万次，这里在 Ollama 前面加一层本地缓存：
+ * - key：规范化后的文本（去首尾空白、全角标点转半角、连续空白合并）；
+ * - value：规范化文本的向量，调用方拿到的 float[] 是共享的，不能修改；
+ * - 容量按字节数限制（向量 4 字节/维 + key 2 字节/字符），Caffeine W-TinyLFU 淘汰，写入后 TTL 过期；
+ * - 开启命中率统计，可通过 {@link #stats()} 获取。
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    // 每个缓存条目的固定开销估算（对象头、数组头、节点等）
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final EmbeddingModel delegate;
+
+    private final Cache<String, float[]> cache;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, long maxBytes, Duration ttl) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, float[] value) -> ENTRY_OVERHEAD_BYTES + key.length() * 2 + value.length * 4)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 未命中时在调用线程上请求 Ollama 再写入缓存；不用 cache.get(key, loader)，
+     * 那样 HTTP 调用会在 Caffeine 的 compute 里执行，阻塞同一个哈希桶上的其他写入。
+     * 同一文本并发未命中时可能重复请求一次，结果相同，后写入的覆盖先写入的
+     */
+    @Override
+    public float[] embed(String text) {
+        String key = normalize(text);
+        float[] cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        float[] embedding = delegate.embed(key);
+        cache.put(key, embedding);
+        return embedding;
+    }
+
+    /**
+     * 批量 embedding：命中的直接取缓存，未命中的去重后一次性批量调用
+     */
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        List<String> keys = new ArrayList<>(texts.size());
+        Map<String, float[]> found = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String text : texts) {
+            String key = normalize(text);
+            keys.add(key);
+            if (found.containsKey(key)) {
+                continue;
+            }
+            float[] cached = cache.getIfPresent(key);
+            found.put(key, cached);
+            if (cached == null) {
+                missing.add(key);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            List<float[]> embeddings = delegate.embed(missing);
+            for (int i = 0; i < missing.size(); i++) {
+                cache.put(missing.get(i), embeddings.get(i));
+                found.put(missing.get(i), embeddings.get(i));
+            }
+        }
+
+        List<float[]> result = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            result.add(found.get(key));
+        }
+        return result;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        // 带 options 的原始调用不缓存，原样透传
+        return delegate.call(request);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    /**
+     * 命中/未命中/淘汰等统计
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * 把命中率、淘汰数等缓存指标注册到 Micrometer（cache.gets / cache.evictions 等，tag cache=name）
+     */
+    public void bindMetrics(MeterRegistry registry, String name) {
+        CaffeineCacheMetrics.monitor(registry, cache, name);
+    }
+
+    /**
+     * 估算的缓存条目数
+     */
+    public long estimatedSize() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * 缓存 key 规范化：
+     * - 全角 ASCII 字符（！到～）转半角，全角空格转半角空格；
+     * - 常见中文标点（。、“”‘’）转成对应半角标点；
+     * - 连续空白合并为一个空格，并去掉首尾空白。
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '！' && c <= '～') {
+                c = (char) (c - 0xFEE0);
+            } else {
+                c = switch (c) {
+                    case '　' -> ' ';
+                    case '。' -> '.';
+                    case '、' -> ',';
+                    case '“', '”' -> '"';
+                    case '‘', '’' -> '\'';
+                    default -> c;
+                };
+            }
+            if (Character.isWhitespace(c)) {
+                pendingSpace = sb.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
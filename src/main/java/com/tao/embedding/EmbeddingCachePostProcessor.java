@@ -0,0 +1,47 @@
+package com.tao.embedding;
+
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 给 ollamaEmbeddingModel 这个 bean 套上一层缓存
+ * 用 BeanPostProcessor 原地替换，所有按名字或类型注入 EmbeddingModel 的地方都自动走缓存
+ */
+@Slf4j
+@Component
+public class EmbeddingCachePostProcessor implements BeanPostProcessor {
+
+    private static final String TARGET_BEAN = "ollamaEmbeddingModel";
+
+    private final boolean enabled;
+
+    private final DataSize maxSize;
+
+    private final Duration ttl;
+
+    public EmbeddingCachePostProcessor(@Value("${app.embedding.cache.enabled:true}") boolean enabled,
+                                @Value("${app.embedding.cache.max-size:64MB}") DataSize maxSize,
+                                @Value("${app.embedding.cache.ttl:24h}") Duration ttl) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (enabled && TARGET_BEAN.equals(beanName) && bean instanceof EmbeddingModel embeddingModel) {
+            log.info("ollamaEmbeddingModel 启用 embedding 缓存，容量 {}，TTL {}", maxSize, ttl);
+            CachingEmbeddingModel caching = new CachingEmbeddingModel(embeddingModel, maxSize.toBytes(), ttl);
+            caching.bindMetrics(Metrics.globalRegistry, "embedding");
+            return caching;
+        }
+        return bean;
+    }
+}
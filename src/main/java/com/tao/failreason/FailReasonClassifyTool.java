@@ -0,0 +1,114 @@
+package com.tao.failreason;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.tao.tools.ProblemClassifyTool;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 外呼“失败原因”分类工具
+ * 失败原因是整通电话的结论（未接通、非机主、无需求、担心扣费等），每通录音只分类一次：
+ * - 检索 query 只取客户说的话（失败原因基本都体现在客户的回应里），并限制长度，避免整段录音去做 embedding；
+ * - 解析模型输出，并与异议分类结果合并成一个结果对象。
+ * 大模型调用仍然只在 ServiceApp 中进行。
+ */
+@Slf4j
+@Component
+public class FailReasonClassifyTool {
+
+    private static final String CUSTOMER_PREFIX = "客户";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // 检索 query 最大字符数
+    private final int maxQueryChars;
+
+    public FailReasonClassifyTool(@Value("${app.rag.fail-reason.max-query-chars:512}") int maxQueryChars) {
+        this.maxQueryChars = Math.max(32, maxQueryChars);
+    }
+
+    /**
+     * 从对话中取客户的话拼成检索 query；没有客户发言（如未接通）时取对话开头
+     *
+     * @param info 客服与客户对话文本
+     * @return 检索文本
+     */
+    public String buildRetrievalQuery(String info) {
+        if (info == null || info.isBlank()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String line : info.split("\n")) {
+            String trimmed = line.trim();
+            if (!trimmed.startsWith(CUSTOMER_PREFIX)) {
+                continue;
+            }
+            // 去掉“客户：”前缀
+            String content = trimmed.substring(CUSTOMER_PREFIX.length()).replaceFirst("^[：:]", "").trim();
+            if (content.isEmpty()) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(content);
+            if (sb.length() >= maxQueryChars) {
+                break;
+            }
+        }
+        String query = sb.length() > 0 ? sb.toString() : info.trim();
+        return query.length() > maxQueryChars ? query.substring(0, maxQueryChars) : query;
+    }
+
+    /**
+     * 清理并解析失败原因分类输出，统一返回 JSON 数组
+     */
+    public ArrayNode parseResult(String raw) {
+        ArrayNode result = objectMapper.createArrayNode();
+        String cleaned = ProblemClassifyTool.cleanResult(raw);
+        if (cleaned == null || cleaned.isBlank()) {
+            log.warn("失败原因分类返回空或非JSON");
+            return result;
+        }
+        try {
+            JsonNode parsed = objectMapper.readTree(cleaned);
+            if (parsed.isArray()) {
+                result.addAll((ArrayNode) parsed);
+            } else if (!parsed.isNull()) {
+                result.add(parsed);
+            }
+        } catch (Exception e) {
+            log.warn("解析失败原因分类结果失败。原始结果: {}", cleaned, e);
+        }
+        return result;
+    }
+
+    /**
+     * 合并异议分类与失败原因分类：
+     * {
+     *   "异议分类": [...],
+     *   "失败原因": [...]
+     * }
+     */
+    public String mergeAnalysis(String objectionsJson, ArrayNode failReasons) {
+        ObjectNode merged = objectMapper.createObjectNode();
+        JsonNode objections;
+        try {
+            objections = objectionsJson == null ? null : objectMapper.readTree(objectionsJson);
+        } catch (Exception e) {
+            log.warn("异议分类结果不是合法 JSON，按空数组处理: {}", objectionsJson);
+            objections = null;
+        }
+        merged.set("异议分类", objections != null && objections.isArray() ? objections : objectMapper.createArrayNode());
+        merged.set("失败原因", failReasons == null ? objectMapper.createArrayNode() : failReasons);
+        try {
+            return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(merged);
+        } catch (Exception e) {
+            return merged.toString();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.tao.generation;
+
+import com.tao.metrics.PipelineMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * JSON 输出类调用（异议抽取、单问题分类、失败原因分类）的生成控制
+ * 生成的 token 数是这类调用耗时的大头，这里从三个方向减少：
+ * - 关闭 qwen3 思考：用户提示词末尾追加 /no_think 软开关，模型只输出空的 think 块；
+ * - num_predict 上限与停止序列：防止模型失控输出或开始复述输入标签；
+ * - 流式生成 + {@link JsonStreamScanner}：顶层 JSON 数组/对象一闭合就取消流，Ollama 随连接断开停止生成。
+ * 结构化输出模式下把 JSON Schema 放进 Ollama 的 format 参数，由 Ollama 按 schema 约束解码，
+ * 输出必然是合法 JSON，调用方直接一次反序列化成记录类，不再做正则清洗。
+ */
+@Slf4j
+@Component
+public class JsonGeneration {
+
+    /**
+     * qwen3 的关闭思考软开关，放在用户消息末尾
+     */
+    public static final String NO_THINK = "/no_think";
+
+    private final boolean noThink;
+
+    private final boolean stopOnJsonClose;
+
+    private final boolean structuredOutput;
+
+    private final List<String> stop;
+
+    private final int extractNumPredict;
+
+    private final int classifyNumPredict;
+
+    private final int failReasonNumPredict;
+
+    public JsonGeneration(@Value("${app.generation.no-think:true}") boolean noThink,
+                          @Value("${app.generation.stop-on-json-close:true}") boolean stopOnJsonClose,
+                          @Value("${app.generation.structured-output:true}") boolean structuredOutput,
+                          @Value("${app.generation.stop:}") String stop,
+                          @Value("${app.generation.num-predict.extract:768}") int extractNumPredict,
+                          @Value("${app.generation.num-predict.classify:768}") int classifyNumPredict,
+                          @Value("${app.generation.num-predict.fail-reason:512}") int failReasonNumPredict) {
+        this.noThink = noThink;
+        this.stopOnJsonClose = stopOnJsonClose;
+        this.structuredOutput = structuredOutput;
+        this.stop = Arrays.stream(stop.split(","))
+                .map(String::strip)
+                .filter(s -> !s.isEmpty())
+                .toList();
+        this.extractNumPredict = extractNumPredict;
+        this.classifyNumPredict = classifyNumPredict;
+        this.failReasonNumPredict = failReasonNumPredict;
+    }
+
+    /**
+     * 是否按 JSON Schema 约束输出（Ollama format）
+     */
+    public boolean isStructuredOutput() {
+        return structuredOutput;
+    }
+
+    public int extractNumPredict() {
+        return extractNumPredict;
+    }
+
+    public int classifyNumPredict() {
+        return classifyNumPredict;
+    }
+
+    public int failReasonNumPredict() {
+        return failReasonNumPredict;
+    }
+
+    /**
+     * 按配置给用户提示词追加关闭思考的开关
+     */
+    public String userPrompt(String prompt) {
+        return noThink ? prompt + "\n" + NO_THINK : prompt;
+    }
+
+    /**
+     * 在 base 的基础上加上 num_predict 上限和停止序列
+     * ChatClient 请求级 options 会整体替换客户端默认 options，所以要从 base 复制，不能只传新增字段
+     *
+     * @param base       调用方原有的 options，可为 null
+     * @param numPredict 最大生成 token 数，<= 0 不限制
+     */
+    public OllamaOptions options(OllamaOptions base, int numPredict) {
+        OllamaOptions options = base == null ? OllamaOptions.builder().build() : OllamaOptions.fromOptions(base);
+        if (numPredict > 0) {
+            options.setNumPredict(numPredict);
+        }
+        if (!stop.isEmpty()) {
+            options.setStop(stop);
+        }
+        return options;
+    }
+
+    /**
+     * 同 {@link #options(OllamaOptions, int)}，结构化输出模式下再把 schema 设为 format
+     *
+     * @param schema 输出的 JSON Schema（见 BeanOutputConverter#getJsonSchemaMap）
+     */
+    public OllamaOptions options(OllamaOptions base, int numPredict, Map<String, Object> schema) {
+        OllamaOptions options = options(base, numPredict);
+        if (structuredOutput && schema != null) {
+            options.setFormat(schema);
+        }
+        return options;
+    }
+
+    /**
+     * 执行请求并返回模型输出文本，token 用量记到 stage 下
+     * 流式模式下顶层 JSON 闭合即取消，返回闭合的 JSON；流正常结束仍未闭合则返回全部文本，交给上层清洗兜底
+     */
+    public String generate(ChatClient.ChatClientRequestSpec request, String stage) {
+        if (!stopOnJsonClose) {
+            ChatResponse response = request.call().chatResponse();
+            PipelineMetrics.recordTokens(stage, response);
+            return response == null || response.getResult() == null ? null : response.getResult().getOutput().getText();
+        }
+
+        JsonStreamScanner scanner = new JsonStreamScanner();
+        AtomicInteger chunks = new AtomicInteger();
+        AtomicReference<Usage> usage = new AtomicReference<>();
+        request.stream()
+                .chatResponse()
+                // takeUntil 在条件满足后向上游发 cancel，WebClient 断开连接
+                .takeUntil(response -> {
+                    Usage chunkUsage = response.getMetadata() == null ? null : response.getMetadata().getUsage();
+                    if (chunkUsage != null && chunkUsage.getTotalTokens() != null && chunkUsage.getTotalTokens() > 0) {
+                        usage.set(chunkUsage);
+                    }
+                    if (response.getResult() == null || response.getResult().getOutput() == null) {
+                        return false;
+                    }
+                    chunks.incrementAndGet();
+                    return scanner.append(response.getResult().getOutput().getText());
+                })
+                .blockLast();
+
+        Usage finalUsage = usage.get();
+        if (finalUsage != null) {
+            PipelineMetrics.recordTokens(stage, finalUsage.getPromptTokens(), finalUsage.getCompletionTokens());
+        } else {
+            // 提前取消时拿不到用量，Ollama 流式每个分片是一个 token
+            PipelineMetrics.recordTokens(stage, null, chunks.get());
+        }
+        if (scanner.isComplete()) {
+            log.debug("[{}] 顶层 JSON 已闭合，取消剩余生成（已收到 {} 个分片）", stage, chunks.get());
+            return scanner.json();
+        }
+        return scanner.text();
+    }
+}
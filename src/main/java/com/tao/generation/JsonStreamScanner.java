@@ -0,0 +1,123 @@
+package com.tao.generation;
+
+/**
+ * 流式输出的增量 JSON 扫描器：逐个分片追加模型输出，找到第一个顶层 { 或 [ 后跟踪括号深度，
+ * 顶层数组/对象闭合时判定完成，调用方据此取消流式请求，不再为收尾文字继续生成 token
+ * - 跳过开头的 <think>...</think> 块（思考内容里的括号不计入）、``` 包裹和前导说明文字；
+ * - 字符串内的括号与转义引号不计入深度；
+ * - 标签可能被拆在两个分片之间，不足以判断时等下一个分片再扫描。
+ * 非线程安全，每次调用新建一个。
+ */
+public final class JsonStreamScanner {
+
+    private static final String THINK_OPEN = "<think>";
+
+    private static final String THINK_CLOSE = "</think>";
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    // 下一个待扫描的位置
+    private int pos;
+
+    // 顶层 JSON 起止下标（含），未找到为 -1
+    private int start = -1;
+
+    private int end = -1;
+
+    private int depth;
+
+    private boolean inThink;
+
+    private boolean inString;
+
+    private boolean escaped;
+
+    /**
+     * 追加一个分片并继续扫描
+     *
+     * @return 顶层 JSON 是否已闭合
+     */
+    public boolean append(String chunk) {
+        if (end >= 0) {
+            return true;
+        }
+        if (chunk != null && !chunk.isEmpty()) {
+            buffer.append(chunk);
+            scan();
+        }
+        return end >= 0;
+    }
+
+    public boolean isComplete() {
+        return end >= 0;
+    }
+
+    /**
+     * 闭合的顶层 JSON 文本；未闭合返回 null
+     */
+    public String json() {
+        return end >= 0 ? buffer.substring(start, end + 1) : null;
+    }
+
+    /**
+     * 已收到的全部文本
+     */
+    public String text() {
+        return buffer.toString();
+    }
+
+    private void scan() {
+        int length = buffer.length();
+        while (pos < length && end < 0) {
+            if (inThink) {
+                int close = buffer.indexOf(THINK_CLOSE, pos);
+                if (close < 0) {
+                    // 结束标签可能被截在末尾，保留最后几个字符下次再找
+                    pos = Math.max(pos, length - THINK_CLOSE.length() + 1);
+                    return;
+                }
+                inThink = false;
+                pos = close + THINK_CLOSE.length();
+                continue;
+            }
+            char c = buffer.charAt(pos);
+            if (start < 0) {
+                if (c == '<') {
+                    int remaining = length - pos;
+                    if (remaining < THINK_OPEN.length()) {
+                        if (THINK_OPEN.startsWith(buffer.substring(pos))) {
+                            return;
+                        }
+                    } else if (THINK_OPEN.contentEquals(buffer.subSequence(pos, pos + THINK_OPEN.length()))) {
+                        inThink = true;
+                        pos += THINK_OPEN.length();
+                        continue;
+                    }
+                } else if (c == '{' || c == '[') {
+                    start = pos;
+                    depth = 1;
+                }
+                pos++;
+                continue;
+            }
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (--depth == 0) {
+                    end = pos;
+                }
+            }
+            pos++;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.tao.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 分类流水线各阶段的耗时与 token 指标
+ * 注册到 Micrometer 全局注册表，Spring Boot 会把 Prometheus 注册表挂到全局注册表上，通过 /actuator/prometheus 暴露：
+ * - ai.pipeline.stage（Timer，tag stage）：各阶段耗时，发布 p50/p95/p99 和直方图桶（可用 histogram_quantile 跨实例聚合）；
+ * - ai.llm.tokens（Counter，tag stage、type=prompt/completion）：从 ChatResponse metadata 中读取的 token 用量。
+ * 阶段名见本类常量。
+ */
+public final class PipelineMetrics {
+
+    public static final String STAGE_TIMER = "ai.pipeline.stage";
+
+    public static final String TOKEN_COUNTER = "ai.llm.tokens";
+
+    // 对话文本压缩（去附和、合并轮次、token 预算），纯 CPU
+    public static final String TRANSCRIPT_COMPACT = "transcript_compact";
+
+    // 从对话文本抽取异议问题（一次 LLM 调用）
+    public static final String EXTRACT = "extract";
+
+    // 检索 query 生成向量（含 embedding 缓存命中）
+    public static final String QUERY_EMBED = "query_embed";
+
+    // 向量检索（不含 query embedding）
+    public static final String VECTOR_SEARCH = "vector_search";
+
+    // 单问题 RAG 分类（检索 + LLM 调用）
+    public static final String CLASSIFY_SINGLE = "classify_single";
+
+    // 整通录音的失败原因 RAG 分类（检索 + LLM 调用）
+    public static final String CLASSIFY_FAIL_REASON = "classify_fail_reason";
+
+    // doClassifyWithRag 整体（抽取 + 全部问题分类 + 合并）
+    public static final String CLASSIFY_TOTAL = "classify_total";
+
+    // 模型输出清洗 + JSON 解析
+    public static final String JSON_CLEANUP = "json_cleanup";
+
+    // 带记忆的对话调用（doChat / doChatByStream / doChatWithRag），流式按整个流结束计时
+    public static final String CHAT = "chat";
+
+    // 分类 CSV 导入：一批行的 embedding
+    public static final String IMPORT_EMBED_BATCH = "import_embed_batch";
+
+    // 分类 CSV 导入：一批行写库
+    public static final String IMPORT_UPSERT_BATCH = "import_upsert_batch";
+
+    private static final Map<String, Timer> TIMERS = new ConcurrentHashMap<>();
+
+    private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+
+    private PipelineMetrics() {
+    }
+
+    /**
+     * 阶段耗时 Timer，按阶段名缓存，避免每次记录都走一遍 builder 查找
+     */
+    public static Timer timer(String stage) {
+        return TIMERS.computeIfAbsent(stage, s -> Timer.builder(STAGE_TIMER)
+                .description("分类流水线各阶段耗时")
+                .tag("stage", s)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                // LLM 调用在 CPU 上可能跑到分钟级，默认 30s 的上界不够
+                .maximumExpectedValue(Duration.ofMinutes(5))
+                .register(registry()));
+    }
+
+    /**
+     * 计时执行 supplier，异常也会记录耗时
+     */
+    public static <T> T record(String stage, Supplier<T> supplier) {
+        return timer(stage).record(supplier);
+    }
+
+    /**
+     * 记录 ChatResponse 中的 prompt / completion token 数；模型未返回用量时忽略
+     */
+    public static void recordTokens(String stage, ChatResponse response) {
+        if (response == null || response.getMetadata() == null) {
+            return;
+        }
+        Usage usage = response.getMetadata().getUsage();
+        if (usage == null) {
+            return;
+        }
+        recordTokens(stage, usage.getPromptTokens(), usage.getCompletionTokens());
+    }
+
+    /**
+     * 直接记录 token 数（流式请求提前取消时拿不到 Ollama 最后一个分片的用量，按收到的分片数计）；null 或 0 忽略
+     */
+    public static void recordTokens(String stage, Integer promptTokens, Integer completionTokens) {
+        increment(stage, "prompt", promptTokens);
+        increment(stage, "completion", completionTokens);
+    }
+
+    private static void increment(String stage, String type, Integer tokens) {
+        if (tokens == null || tokens <= 0) {
+            return;
+        }
+        COUNTERS.computeIfAbsent(stage + ':' + type, k -> Counter.builder(TOKEN_COUNTER)
+                        .description("LLM token 用量")
+                        .baseUnit("tokens")
+                        .tag("stage", stage)
+                        .tag("type", type)
+                        .register(registry()))
+                .increment(tokens);
+    }
+
+    private static MeterRegistry registry() {
+        return Metrics.globalRegistry;
+    }
+}
@@ -0,0 +1,59 @@
+package com.tao.rag;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 分类表的内存字典：编号（code，如 01002）-> 大类/小类编号与名称
+ * 紧凑输出模式下模型只输出编号，名称由这里回填，保证与知识库原文完全一致。
+ * 自身不查库：内存模式由 {@link InMemoryObjectionCategoryVectorStore} 每次重建索引快照时一并替换，
+ * 与向量索引共用同一次整表加载和同一个定时刷新；pgvector 模式由 {@link CategoryDictionaryLoader} 单独查表替换。
+ * 查询时只读 volatile 快照，不加锁。
+ */
+@Slf4j
+public class CategoryDictionary {
+
+    /**
+     * 分类表中的一行
+     */
+    public record Category(String code, String bigCode, String bigName, String smallCode, String smallTitle) {
+    }
+
+    private final String tableName;
+
+    private volatile Map<String, Category> byCode = Map.of();
+
+    public CategoryDictionary(String tableName) {
+        this.tableName = tableName;
+    }
+
+    /**
+     * 按编号查分类，编号前后空白忽略
+     */
+    public Optional<Category> find(String code) {
+        if (code == null || code.isBlank()) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(byCode.get(code.strip()));
+    }
+
+    public int size() {
+        return byCode.size();
+    }
+
+    /**
+     * 整体替换为新加载的分类
+     */
+    public void replace(Collection<Category> categories) {
+        Map<String, Category> loaded = new HashMap<>(categories.size() * 2);
+        for (Category category : categories) {
+            loaded.put(category.code(), category);
+        }
+        byCode = Map.copyOf(loaded);
+        log.info("分类字典已更新：表 {}，{} 个编号", tableName, loaded.size());
+    }
+}
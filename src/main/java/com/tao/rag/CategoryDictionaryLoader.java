@@ -0,0 +1,98 @@
+package com.tao.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 独立维护分类编号字典：pgvector 模式没有内存索引，字典由这里单独查表加载
+ * 只查编号和名称五列，不读向量；与内存索引相同，按行数 + 最大更新时间判断表是否变化，有变化才重载。
+ * 定时刷新线程随 bean 销毁（close）停止。
+ */
+@Slf4j
+public class CategoryDictionaryLoader implements AutoCloseable {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final String tableName;
+
+    private final CategoryDictionary dictionary;
+
+    private final ScheduledExecutorService refresher;
+
+    // 上次加载时的表版本，相同则跳过
+    private volatile String version;
+
+    public CategoryDictionaryLoader(JdbcTemplate jdbcTemplate, String tableName) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tableName = tableName;
+        this.dictionary = new CategoryDictionary(tableName);
+        this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "category-dictionary-refresher-" + tableName);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 首次加载并开启定时刷新
+     * @param refreshInterval 刷新间隔，<= 0 表示不定时刷新
+     */
+    public void start(Duration refreshInterval) {
+        refreshQuietly();
+        if (refreshInterval != null && !refreshInterval.isZero() && !refreshInterval.isNegative()) {
+            long millis = refreshInterval.toMillis();
+            refresher.scheduleWithFixedDelay(this::refreshQuietly, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    public CategoryDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * 表有变化时重新加载字典
+     * @return 是否发生了重载
+     */
+    public synchronized boolean refresh() {
+        String current = jdbcTemplate.queryForObject(
+                "SELECT count(*) || ':' || coalesce(max(updated_at)::text, '') FROM " + tableName,
+                String.class);
+        if (Objects.equals(current, version)) {
+            return false;
+        }
+        List<CategoryDictionary.Category> categories = jdbcTemplate.query(
+                "SELECT code, big_code, big_name, small_code, small_title FROM " + tableName,
+                (rs, rowNum) -> new CategoryDictionary.Category(
+                        rs.getString("code"),
+                        rs.getString("big_code"),
+                        rs.getString("big_name"),
+                        rs.getString("small_code"),
+                        rs.getString("small_title")
+                )
+        );
+        dictionary.replace(categories);
+        version = current;
+        return true;
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            // 刷新失败保留旧字典继续服务
+            log.warn("分类字典刷新失败，继续使用旧字典：表 {}", tableName, e);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.tao.rag;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Spring AI Filter.Expression 翻译器（分类向量表专用）
+ * - toSql：翻译成带 ? 占位符的 SQL WHERE 片段 + 参数列表，供 pgvector 检索 / 按条件删除下推到数据库；
+ * - toPredicate：翻译成内存谓词，供内存索引在扫描时过滤。
+ * key 只允许分类表里的普通列，其余一律拒绝，避免拼接出任意 SQL。
+ */
+final class CategoryFilterExpressions {
+
+    /**
+     * 过滤 key -> 表字段
+     */
+    static final Map<String, String> COLUMNS = Map.of(
+            "code", "code",
+            "big_code", "big_code",
+            "big_name", "big_name",
+            "small_code", "small_code",
+            "small_title", "small_title",
+            "source_file", "source_file"
+    );
+
+    private CategoryFilterExpressions() {
+    }
+
+    /**
+     * SQL WHERE 片段及其参数
+     */
+    record SqlFilter(String where, List<Object> params) {
+    }
+
+    static SqlFilter toSql(Filter.Expression expression) {
+        List<Object> params = new ArrayList<>();
+        String where = toSql(expression, params);
+        return new SqlFilter(where, params);
+    }
+
+    private static String toSql(Filter.Operand operand, List<Object> params) {
+        if (operand instanceof Filter.Group group) {
+            return "(" + toSql(group.content(), params) + ")";
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            throw new IllegalArgumentException("不支持的过滤操作数: " + operand);
+        }
+        return switch (expression.type()) {
+            case AND -> "(" + toSql(expression.left(), params) + " AND " + toSql(expression.right(), params) + ")";
+            case OR -> "(" + toSql(expression.left(), params) + " OR " + toSql(expression.right(), params) + ")";
+            case NOT -> "NOT (" + toSql(expression.left(), params) + ")";
+            case EQ, NE, GT, GTE, LT, LTE -> {
+                params.add(value(expression.right()));
+                yield column(expression.left()) + " " + sqlOperator(expression.type()) + " ?";
+            }
+            case IN, NIN -> {
+                List<Object> values = values(expression.right());
+                if (values.isEmpty()) {
+                    // IN () 恒假，NOT IN () 恒真
+                    yield expression.type() == Filter.ExpressionType.IN ? "FALSE" : "TRUE";
+                }
+                params.addAll(values);
+                String placeholders = String.join(", ", Collections.nCopies(values.size(), "?"));
+                yield column(expression.left())
+                        + (expression.type() == Filter.ExpressionType.IN ? " IN (" : " NOT IN (")
+                        + placeholders + ")";
+            }
+        };
+    }
+
+    /**
+     * 翻译成内存谓词，fieldAccessor 按表字段名取值
+     * 按 SQL 三值逻辑求值：NULL 参与的比较结果为 UNKNOWN，NOT UNKNOWN 仍是 UNKNOWN，最终只有 TRUE 的行命中，
+     * 与 pgvector 实现的 WHERE 结果一致
+     */
+    static Predicate<Function<String, Object>> toPredicate(Filter.Operand operand) {
+        Function<Function<String, Object>, Boolean> condition = toCondition(operand);
+        return row -> Boolean.TRUE.equals(condition.apply(row));
+    }
+
+    /**
+     * 三值条件：返回 TRUE / FALSE / null（UNKNOWN）
+     */
+    private static Function<Function<String, Object>, Boolean> toCondition(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return toCondition(group.content());
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            throw new IllegalArgumentException("不支持的过滤操作数: " + operand);
+        }
+        return switch (expression.type()) {
+            case AND -> {
+                var left = toCondition(expression.left());
+                var right = toCondition(expression.right());
+                yield row -> and(left.apply(row), right.apply(row));
+            }
+            case OR -> {
+                var left = toCondition(expression.left());
+                var right = toCondition(expression.right());
+                yield row -> or(left.apply(row), right.apply(row));
+            }
+            case NOT -> {
+                var inner = toCondition(expression.left());
+                yield row -> {
+                    Boolean value = inner.apply(row);
+                    return value == null ? null : !value;
+                };
+            }
+            case EQ, NE, GT, GTE, LT, LTE -> {
+                String column = column(expression.left());
+                Object expected = value(expression.right());
+                Filter.ExpressionType type = expression.type();
+                yield row -> compare(type, row.apply(column), expected);
+            }
+            case IN, NIN -> {
+                String column = column(expression.left());
+                List<String> expected = values(expression.right()).stream().map(String::valueOf).toList();
+                boolean in = expression.type() == Filter.ExpressionType.IN;
+                if (expected.isEmpty()) {
+                    // 与 toSql 一致：IN () 恒假，NOT IN () 恒真
+                    yield row -> !in;
+                }
+                yield row -> {
+                    Object actual = row.apply(column);
+                    return actual == null ? null : expected.contains(String.valueOf(actual)) == in;
+                };
+            }
+        };
+    }
+
+    private static Boolean and(Boolean left, Boolean right) {
+        if (Boolean.FALSE.equals(left) || Boolean.FALSE.equals(right)) {
+            return false;
+        }
+        return left == null || right == null ? null : true;
+    }
+
+    private static Boolean or(Boolean left, Boolean right) {
+        if (Boolean.TRUE.equals(left) || Boolean.TRUE.equals(right)) {
+            return true;
+        }
+        return left == null || right == null ? null : false;
+    }
+
+    private static Boolean compare(Filter.ExpressionType type, Object actual, Object expected) {
+        if (actual == null || expected == null) {
+            // 与 SQL 语义一致：NULL 参与比较结果为 UNKNOWN
+            return null;
+        }
+        int cmp = String.valueOf(actual).compareTo(String.valueOf(expected));
+        return switch (type) {
+            case EQ -> Objects.equals(String.valueOf(actual), String.valueOf(expected));
+            case NE -> !Objects.equals(String.valueOf(actual), String.valueOf(expected));
+            case GT -> cmp > 0;
+            case GTE -> cmp >= 0;
+            case LT -> cmp < 0;
+            case LTE -> cmp <= 0;
+            default -> throw new IllegalArgumentException("不支持的比较操作: " + type);
+        };
+    }
+
+    private static String sqlOperator(Filter.ExpressionType type) {
+        return switch (type) {
+            case EQ -> "=";
+            case NE -> "<>";
+            case GT -> ">";
+            case GTE -> ">=";
+            case LT -> "<";
+            case LTE -> "<=";
+            default -> throw new IllegalArgumentException("不支持的比较操作: " + type);
+        };
+    }
+
+    private static String column(Filter.Operand operand) {
+        if (!(operand instanceof Filter.Key key)) {
+            throw new IllegalArgumentException("过滤条件左侧必须是字段名: " + operand);
+        }
+        String name = key.key().replace("\"", "").replace("'", "").trim();
+        String column = COLUMNS.get(name);
+        if (column == null) {
+            throw new IllegalArgumentException("不支持的过滤字段: " + name + "，可用字段: " + COLUMNS.keySet());
+        }
+        return column;
+    }
+
+    private static Object value(Filter.Operand operand) {
+        if (!(operand instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("过滤条件右侧必须是值: " + operand);
+        }
+        // 分类表字段都是文本，数字等统一按字符串比较
+        return value.value() == null ? null : String.valueOf(value.value());
+    }
+
+    private static List<Object> values(Filter.Operand operand) {
+        if (!(operand instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("IN/NIN 右侧必须是值列表: " + operand);
+        }
+        if (value.value() instanceof Collection<?> collection) {
+            return collection.stream().map(v -> (Object) String.valueOf(v)).toList();
+        }
+        return List.of(String.valueOf(value.value()));
+    }
+}
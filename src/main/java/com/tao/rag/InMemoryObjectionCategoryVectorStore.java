@@ -0,0 +1,307 @@
+package com.tao.rag;
+
+import com.tao.metrics.PipelineMetrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 基于 JVM 内存的只读向量库实现（暴力检索）。
+ * 分类表只有百来行 4096 维向量，没必要每次检索都走一次 JDBC + pgvector 扫描：
+ * 1. 启动时把分类向量表（objection_category_embedding / fail_category）整表加载成一个连续的 float[] 矩阵；
+ * 2. 检索时在内存里逐行算 L2 距离取 topK（优先 JDK Vector API，不可用时走标量实现）；
+ * 3. Postgres 仍是唯一数据源，后台定时检查表是否变化（行数 + 最大更新时间），有变化才整表重载；
+ * 4. 写入/删除直接委托给 pgvector 实现，写完立即刷新；
+ * 5. 每次重建快照时同时更新编号字典（{@link #dictionary()}），紧凑输出回填名称不再单独查表。
+ */
+@Slf4j
+public class InMemoryObjectionCategoryVectorStore implements VectorStore, AutoCloseable {
+
+    private final EmbeddingModel embeddingModel;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // 写操作委托给它，Postgres 才是数据源
+    private final VectorStore writeDelegate;
+
+    private final String tableName;
+
+    private final VectorScorer scorer = VectorScorer.best();
+
+    private final ScheduledExecutorService refresher;
+
+    // 与索引快照同步更新的编号字典
+    private final CategoryDictionary dictionary;
+
+    // 当前生效的索引快照，整体替换，检索线程无锁读取
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    public InMemoryObjectionCategoryVectorStore(EmbeddingModel embeddingModel,
+                                                JdbcTemplate jdbcTemplate,
+                                                VectorStore writeDelegate,
+                                                String tableName) {
+        this.embeddingModel = embeddingModel;
+        this.jdbcTemplate = jdbcTemplate;
+        this.writeDelegate = writeDelegate;
+        this.tableName = tableName;
+        this.dictionary = new CategoryDictionary(tableName);
+        this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "category-index-refresher-" + tableName);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 首次加载并开启定时刷新
+     * @param refreshInterval 刷新间隔，<= 0 表示不定时刷新
+     */
+    public void start(Duration refreshInterval) {
+        refreshQuietly();
+        if (refreshInterval != null && !refreshInterval.isZero() && !refreshInterval.isNegative()) {
+            long millis = refreshInterval.toMillis();
+            refresher.scheduleWithFixedDelay(this::refreshQuietly, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * 当前索引中的行数
+     */
+    public int size() {
+        return snapshot.rows();
+    }
+
+    /**
+     * 编号字典，随索引一起刷新
+     */
+    public CategoryDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * 表有变化时整表重载，构建新快照后原子替换
+     * @return 是否发生了重载
+     */
+    public synchronized boolean refresh() {
+        String version = jdbcTemplate.queryForObject(
+                "SELECT count(*) || ':' || coalesce(max(updated_at)::text, '') FROM " + tableName,
+                String.class);
+        if (Objects.equals(version, snapshot.version())) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        List<LoadedRow> rows = jdbcTemplate.query(
+                "SELECT code, big_code, big_name, small_code, small_title, source_file, embedding::text AS embedding FROM "
+                        + tableName + " ORDER BY code",
+                (rs, rowNum) -> new LoadedRow(
+                        new Row(
+                                rs.getString("code"),
+                                rs.getString("big_code"),
+                                rs.getString("big_name"),
+                                rs.getString("small_code"),
+                                rs.getString("small_title"),
+                                rs.getString("source_file")
+                        ),
+                        PgVectorCodec.parsePgVectorLiteral(rs.getString("embedding"))
+                )
+        );
+
+        int dim = commonDimension(rows);
+        float[] matrix = new float[rows.size() * dim];
+        List<Row> kept = new ArrayList<>(rows.size());
+        List<CategoryDictionary.Category> categories = new ArrayList<>(rows.size());
+        for (LoadedRow loaded : rows) {
+            Row row = loaded.row();
+            // 维度异常的行不进索引，但编号仍可回填
+            categories.add(new CategoryDictionary.Category(
+                    row.code(), row.bigCode(), row.bigName(), row.smallCode(), row.smallTitle()));
+            if (loaded.embedding().length != dim) {
+                log.warn("分类 {} 的向量维度 {} 与索引维度 {} 不一致，跳过",
+                        loaded.row().code(), loaded.embedding().length, dim);
+                continue;
+            }
+            System.arraycopy(loaded.embedding(), 0, matrix, kept.size() * dim, dim);
+            kept.add(loaded.row());
+        }
+
+        snapshot = new Snapshot(version, dim, matrix, kept.toArray(new Row[0]));
+        dictionary.replace(categories);
+        log.info("内存分类索引已刷新：表 {}，{} 行 x {} 维，耗时 {} ms",
+                tableName, kept.size(), dim, (System.nanoTime() - start) / 1_000_000);
+        return true;
+    }
+
+    /**
+     * 索引维度取出现次数最多的向量长度，个别行向量损坏时只跳过这些行，不会因为第一行异常丢掉整表
+     */
+    private static int commonDimension(List<LoadedRow> rows) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        int dim = 0;
+        int best = 0;
+        for (LoadedRow loaded : rows) {
+            int length = loaded.embedding().length;
+            if (length == 0) {
+                continue;
+            }
+            int count = counts.merge(length, 1, Integer::sum);
+            if (count > best) {
+                best = count;
+                dim = length;
+            }
+        }
+        return dim;
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            // 刷新失败保留旧快照继续服务
+            log.warn("内存分类索引刷新失败，继续使用旧索引", e);
+        }
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        writeDelegate.add(documents);
+        refreshQuietly();
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        writeDelegate.delete(idList);
+        refreshQuietly();
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        writeDelegate.delete(filterExpression);
+        refreshQuietly();
+    }
+
+    /**
+     * 向量相似度检索：内存暴力扫描取 topK
+     * @param request
+     * @return
+     */
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        String query = request.getQuery();
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+
+        Snapshot current = snapshot;
+        if (current.rows() == 0) {
+            // 启动时分类表可能还在后台导入：不在请求线程上加载整表（refresh 是同步方法，所有请求会排队等 JDBC），
+            // 由定时刷新和导入完成后的 TaxonomyBootstrap 负责填充索引
+            log.warn("内存分类索引为空（表 {} 尚未加载），返回空结果", tableName);
+            return List.of();
+        }
+
+        int topK = Math.min(request.getTopK() > 0 ? request.getTopK() : SearchRequest.DEFAULT_TOP_K, current.rows());
+        // 与 pgvector 实现保持一致：过滤条件 + 相似度阈值（换算成 L2 距离平方上界）
+        Predicate<Function<String, Object>> filter = request.hasFilterExpression()
+                ? CategoryFilterExpressions.toPredicate(request.getFilterExpression())
+                : null;
+        double maxDistance = ObjectionCategoryPgVectorStore.maxDistance(request.getSimilarityThreshold());
+        float maxSquared = maxDistance == Double.MAX_VALUE ? Float.MAX_VALUE : (float) (maxDistance * maxDistance);
+        float[] embedding = PipelineMetrics.record(PipelineMetrics.QUERY_EMBED, () -> embeddingModel.embed(query));
+        if (embedding.length != current.dim()) {
+            log.warn("query 向量维度 {} 与索引维度 {} 不一致，返回空结果", embedding.length, current.dim());
+            return List.of();
+        }
+
+        Timer.Sample sample = Timer.start();
+
+        // 小 topK 用插入排序维护有序数组即可
+        int[] bestIdx = new int[topK];
+        float[] bestDist = new float[topK];
+        int filled = 0;
+        int dim = current.dim();
+        float[] matrix = current.matrix();
+        for (int row = 0; row < current.rows(); row++) {
+            if (filter != null && !filter.test(current.entries()[row]::field)) {
+                continue;
+            }
+            float dist = scorer.squaredL2(embedding, matrix, row * dim, dim);
+            if (dist > maxSquared || (filled == topK && dist >= bestDist[topK - 1])) {
+                continue;
+            }
+            int pos = filled < topK ? filled++ : topK - 1;
+            while (pos > 0 && bestDist[pos - 1] > dist) {
+                bestDist[pos] = bestDist[pos - 1];
+                bestIdx[pos] = bestIdx[pos - 1];
+                pos--;
+            }
+            bestDist[pos] = dist;
+            bestIdx[pos] = row;
+        }
+
+        List<Document> documents = new ArrayList<>(filled);
+        for (int i = 0; i < filled; i++) {
+            Row row = current.entries()[bestIdx[i]];
+            documents.add(ObjectionCategoryPgVectorStore.toDocument(
+                    row.code(), row.bigCode(), row.bigName(), row.smallCode(), row.smallTitle(),
+                    Math.sqrt(bestDist[i])));
+        }
+        sample.stop(PipelineMetrics.timer(PipelineMetrics.VECTOR_SEARCH));
+        return documents;
+    }
+
+    private record Row(String code, String bigCode, String bigName,
+                       String smallCode, String smallTitle, String sourceFile) {
+
+        /**
+         * 按表字段名取值，供过滤表达式使用
+         */
+        Object field(String column) {
+            return switch (column) {
+                case "code" -> code;
+                case "big_code" -> bigCode;
+                case "big_name" -> bigName;
+                case "small_code" -> smallCode;
+                case "small_title" -> smallTitle;
+                case "source_file" -> sourceFile;
+                default -> null;
+            };
+        }
+    }
+
+    private record LoadedRow(Row row, float[] embedding) {
+    }
+
+    /**
+     * 不可变索引快照：matrix 为 rows * dim 的行优先连续矩阵
+     */
+    private record Snapshot(String version, int dim, float[] matrix, Row[] entries) {
+        static final Snapshot EMPTY = new Snapshot(null, 0, new float[0], new Row[0]);
+
+        int rows() {
+            return entries.length;
+        }
+    }
+}
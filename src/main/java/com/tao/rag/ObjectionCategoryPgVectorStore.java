@@ -1,6 +1,6 @@
 package com.tao.rag;
 
-import lombok.RequiredArgsConstructor;
+import com.tao.metrics.PipelineMetrics;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.embedding.EmbeddingModel;
@@ -11,16 +11,15 @@ import org.springframework.jdbc.core.JdbcTemplate;
 
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 /**
  * 基于 Postgres+pgvector 的只读向量库实现。
- * 作用：根据用户 query 生成 embedding，去数据库表 objection_category_embedding 中做向量相似度查询
+ * 作用：根据用户 query 生成 embedding，去分类向量表（默认 objection_category_embedding，
+ * 失败原因分类用 fail_category，两张表结构相同）中做向量相似度查询
  * 将编号/名称等信息封装成 Document，供 RAG 使用。
  */
 @Slf4j
-@RequiredArgsConstructor
 public class ObjectionCategoryPgVectorStore implements VectorStore {
 
     // embedding 模型
@@ -29,7 +28,18 @@ public class ObjectionCategoryPgVectorStore implements VectorStore {
     // JDBC 访问 pgvector 表
     private final JdbcTemplate jdbcTemplate;
 
-    private static final String TABLE_NAME = "objection_category_embedding";
+    // 分类向量表名
+    private final String tableName;
+
+    public ObjectionCategoryPgVectorStore(EmbeddingModel embeddingModel, JdbcTemplate jdbcTemplate) {
+        this(embeddingModel, jdbcTemplate, "objection_category_embedding");
+    }
+
+    public ObjectionCategoryPgVectorStore(EmbeddingModel embeddingModel, JdbcTemplate jdbcTemplate, String tableName) {
+        this.embeddingModel = embeddingModel;
+        this.jdbcTemplate = jdbcTemplate;
+        this.tableName = tableName;
+    }
 
     /**
      * 写入逻辑
@@ -48,14 +58,21 @@ public class ObjectionCategoryPgVectorStore implements VectorStore {
         }
         int total = 0;
         for (String code : idList) {
-            total += jdbcTemplate.update("DELETE FROM " + TABLE_NAME + " WHERE code = ?", code);
+            total += jdbcTemplate.update("DELETE FROM " + tableName + " WHERE code = ?", code);
         }
         log.info("ObjectionCategoryPgVectorStore.delete(List<String>): 删除 {} 条记录", total);
     }
 
+    /**
+     * 按过滤条件删除，条件翻译成 SQL WHERE 下推到数据库
+     * @param filterExpression
+     */
     @Override
     public void delete(Filter.Expression filterExpression) {
-        log.warn("ObjectionCategoryPgVectorStore.delete(Filter.Expression) 未实现过滤删除逻辑，收到表达式: {}", filterExpression);
+        CategoryFilterExpressions.SqlFilter filter = CategoryFilterExpressions.toSql(filterExpression);
+        int total = jdbcTemplate.update("DELETE FROM " + tableName + " WHERE " + filter.where(),
+                filter.params().toArray());
+        log.info("ObjectionCategoryPgVectorStore.delete(Filter.Expression): 条件 {}，删除 {} 条记录", filter.where(), total);
     }
 
     /**
@@ -85,76 +102,104 @@ public class ObjectionCategoryPgVectorStore implements VectorStore {
         int topK = request.getTopK() > 0 ? request.getTopK() : SearchRequest.DEFAULT_TOP_K;
 
         // 生成 query 的向量
-        float[] embedding = embeddingModel.embed(query);
-        String embeddingLiteral = toPgVectorLiteral(embedding);
-
-        // pgvector 相似度查询 SQL
-        String sql = """                                                                                                                                                                                                          
-                  SELECT                                                                                                                                                                                                            
-                      code,                                                                                                                                                                                                         
-                      big_code,                                                                                                                                                                                                     
-                      big_name,                                                                                                                                                                                                     
-                      small_code,                                                                                                                                                                                                   
-                      small_title,                                                                                                                                                                                                  
-                      embedding <-> ?::vector AS distance                                                                                                                                                                           
-                  FROM %s                                                                                                                                                                                                           
-                  ORDER BY embedding <-> ?::vector                                                                                                                                                                                  
-                  LIMIT ?                                                                                                                                                                                                           
-                  """.formatted(TABLE_NAME);
+        float[] embedding = PipelineMetrics.record(PipelineMetrics.QUERY_EMBED, () -> embeddingModel.embed(query));
+
+        // 过滤条件翻译成 WHERE；相似度阈值换算成距离上界
+        CategoryFilterExpressions.SqlFilter filter = request.hasFilterExpression()
+                ? CategoryFilterExpressions.toSql(request.getFilterExpression())
+                : null;
+        double maxDistance = maxDistance(request.getSimilarityThreshold());
+
+        // pgvector 相似度查询 SQL，向量只绑定一次
+        // 内层 ORDER BY + LIMIT 保持走向量索引，外层再按距离上界截断（结果有序，先截 topK 再过滤等价）
+        String sql = """
+                SELECT * FROM (
+                    SELECT
+                        code,
+                        big_code,
+                        big_name,
+                        small_code,
+                        small_title,
+                        embedding <-> ? AS distance
+                    FROM %s
+                    %s
+                    ORDER BY distance
+                    LIMIT ?
+                ) ranked
+                WHERE distance <= ?
+                """.formatted(tableName, filter == null ? "" : "WHERE " + filter.where());
 
         log.debug("向量检索SQL: {}", sql);
-        log.debug("向量检索 query='{}', topK={}", query, topK);
+        log.debug("向量检索 query='{}', topK={}, maxDistance={}", query, topK, maxDistance);
 
         // 执行查询并封装 Document
-        return jdbcTemplate.query(
+        return PipelineMetrics.record(PipelineMetrics.VECTOR_SEARCH, () -> jdbcTemplate.query(
                 sql,
                 ps -> {
-                    ps.setString(1, embeddingLiteral);
-                    ps.setString(2, embeddingLiteral);
-                    ps.setInt(3, topK);
+                    int index = 1;
+                    PgVectorCodec.bind(ps, index++, embedding);
+                    if (filter != null) {
+                        for (Object param : filter.params()) {
+                            ps.setObject(index++, param);
+                        }
+                    }
+                    ps.setInt(index++, topK);
+                    ps.setDouble(index, maxDistance);
                 },
-                (rs, rowNum) -> {
-                    // 把编号/名称都放进 content，方便 RAG 直接注入到 <context>
-                    String content = """                                                                                                                                                                                          
-                              code: %s                                                                                                                                                                                              
-                              big_code: %s                                                                                                                                                                                          
-                              big_name: %s                                                                                                                                                                                          
-                              small_code: %s                                                                                                                                                                                        
-                              small_title: %s                                                                                                                                                                                       
-                              """.formatted(
-                            rs.getString("code"),
-                            rs.getString("big_code"),
-                            rs.getString("big_name"),
-                            rs.getString("small_code"),
-                            rs.getString("small_title")
-                    );
-
-                    Map<String, Object> metadata = new HashMap<>();
-                    metadata.put("code", rs.getString("code"));
-                    metadata.put("big_code", rs.getString("big_code"));
-                    metadata.put("big_name", rs.getString("big_name"));
-                    metadata.put("small_code", rs.getString("small_code"));
-                    metadata.put("distance", rs.getDouble("distance"));
-                    return new Document(content, metadata);
-                }
-        );
+                (rs, rowNum) -> toDocument(
+                        rs.getString("code"),
+                        rs.getString("big_code"),
+                        rs.getString("big_name"),
+                        rs.getString("small_code"),
+                        rs.getString("small_title"),
+                        rs.getDouble("distance")
+                )
+        ));
     }
 
     /**
-     * 将 float[] 转成 pgvector 字面量格式 "[0.1,0.2,...]"，locale 固定为 US 避免逗号/小数点问题。
-     * @param vec
-     * @return
+     * 相似度阈值 -> L2 距离上界
+     * Ollama 返回的 embedding 已做 L2 归一化，单位向量下 余弦相似度 = 1 - d²/2，
+     * 所以 similarity >= threshold 等价于 d <= sqrt(2 * (1 - threshold))；阈值 <= 0 表示不限制
      */
-    private static String toPgVectorLiteral(float[] vec) {
-        StringBuilder sb = new StringBuilder();
-        sb.append('[');
-        for (int i = 0; i < vec.length; i++) {
-            if (i > 0) {
-                sb.append(',');
-            }
-            sb.append(String.format(Locale.US, "%.6f", vec[i]));
+    static double maxDistance(double similarityThreshold) {
+        if (similarityThreshold <= SearchRequest.SIMILARITY_THRESHOLD_ACCEPT_ALL) {
+            return Double.MAX_VALUE;
         }
-        sb.append(']');
-        return sb.toString();
+        return Math.sqrt(2 * (1 - Math.min(similarityThreshold, 1.0)));
+    }
+
+    /**
+     * L2 距离 -> 相似度分数（余弦相似度），写入 Document.score
+     */
+    static double score(double distance) {
+        return 1 - distance * distance / 2;
+    }
+
+    /**
+     * 把一行分类记录封装成 Document，score 为相似度分数，metadata 中保留原始 L2 距离
+     * 编号/名称都放进 content，方便 RAG 直接注入到 <context>；pgvector 与内存索引两种实现共用
+     */
+    static Document toDocument(String code, String bigCode, String bigName,
+                               String smallCode, String smallTitle, double distance) {
+        String content = """
+                code: %s
+                big_code: %s
+                big_name: %s
+                small_code: %s
+                small_title: %s
+                """.formatted(code, bigCode, bigName, smallCode, smallTitle);
+
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("code", code);
+        metadata.put("big_code", bigCode);
+        metadata.put("big_name", bigName);
+        metadata.put("small_code", smallCode);
+        metadata.put("distance", distance);
+        return Document.builder()
+                .text(content)
+                .metadata(metadata)
+                .score(score(distance))
+                .build();
     }
-}
\ No newline at end of file
+}
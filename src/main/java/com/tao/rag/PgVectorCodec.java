@@ -0,0 +1,173 @@
+package com.tao.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.util.PGBinaryObject;
+import org.postgresql.util.PGobject;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * pgvector 向量编解码（objection_category_embedding / fail_category 的检索与导入共用）
+ *
+ * 【写入/绑定】
+ * - 以 vector 类型参数绑定，不再拼 "[0.1,0.2,...]" 字面量再 ::vector 转换；
+ * - 连接支持时走 pgvector 二进制 send 格式：int16 维度 + int16 保留位 + dim 个大端 float4，
+ *   4096 维只有 16KB，且服务端不用再解析文本；
+ * - 非 PG 连接（或驱动不支持）时回退为文本格式，文本用 Float 最短表示直接写入 StringBuilder，
+ *   不再每个分量调用一次 String.format。
+ *
+ * 【读取】
+ * - 解析 pgvector 文本格式 "[0.1,0.2,...]"，供内存索引加载使用。
+ */
+@Slf4j
+public final class PgVectorCodec {
+
+    private static final String VECTOR_TYPE = "vector";
+
+    private PgVectorCodec() {
+    }
+
+    /**
+     * 把向量绑定到 PreparedStatement 的第 index 个参数（SQL 中直接写 ?，不需要 ::vector）
+     */
+    public static void bind(PreparedStatement ps, int index, float[] vec) throws SQLException {
+        enableBinarySend(ps.getConnection());
+        ps.setObject(index, new VectorParameter(vec));
+    }
+
+    /**
+     * 把 float[] 转成 pgvector 的字面量: "[0.1,0.2,...]"
+     * Float 最短往返表示，精度不丢且与 locale 无关
+     */
+    public static String toPgVectorLiteral(float[] vec) {
+        // 每个分量一般不超过 12 个字符，预估容量避免扩容
+        StringBuilder sb = new StringBuilder(vec.length * 12 + 2);
+        sb.append('[');
+        for (int i = 0; i < vec.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(vec[i]);
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    /**
+     * 解析 pgvector 文本格式 "[0.1,0.2,...]"
+     */
+    public static float[] parsePgVectorLiteral(String literal) {
+        if (literal == null) {
+            return new float[0];
+        }
+        int start = literal.indexOf('[') + 1;
+        int end = literal.lastIndexOf(']');
+        if (end <= start) {
+            return new float[0];
+        }
+        int count = 1;
+        for (int i = start; i < end; i++) {
+            if (literal.charAt(i) == ',') {
+                count++;
+            }
+        }
+        float[] vec = new float[count];
+        int idx = 0;
+        int from = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || literal.charAt(i) == ',') {
+                vec[idx++] = Float.parseFloat(literal.substring(from, i));
+                from = i + 1;
+            }
+        }
+        return vec;
+    }
+
+    /**
+     * pgjdbc 只对登记过的 OID 走二进制 send，vector 是扩展类型（OID 每个库不同），这里按物理连接登记一次
+     */
+    private static void enableBinarySend(Connection connection) {
+        try {
+            if (connection == null || !connection.isWrapperFor(BaseConnection.class)) {
+                return;
+            }
+            BaseConnection pgConnection = connection.unwrap(BaseConnection.class);
+            int oid = pgConnection.getTypeInfo().getPGType(VECTOR_TYPE);
+            if (oid != 0 && !pgConnection.binaryTransferSend(oid)) {
+                pgConnection.getQueryExecutor().addBinarySendOid(oid);
+            }
+        } catch (SQLException e) {
+            // 登记失败不影响功能，驱动会回退为文本格式
+            log.debug("vector 类型二进制传输登记失败，回退为文本格式", e);
+        }
+    }
+
+    /**
+     * vector 类型参数：驱动开启二进制 send 时调用 toBytes，否则取 getValue 文本
+     */
+    static final class VectorParameter extends PGobject implements PGBinaryObject {
+
+        private transient float[] vec;
+
+        VectorParameter(float[] vec) {
+            this.vec = vec;
+            setType(VECTOR_TYPE);
+        }
+
+        @Override
+        public String getValue() {
+            return toPgVectorLiteral(vec);
+        }
+
+        @Override
+        public void setValue(String value) {
+            this.vec = parsePgVectorLiteral(value);
+        }
+
+        @Override
+        public int lengthInBytes() {
+            return 4 + vec.length * 4;
+        }
+
+        @Override
+        public void toBytes(byte[] bytes, int offset) {
+            int pos = offset;
+            pos = writeShort(bytes, pos, vec.length);
+            pos = writeShort(bytes, pos, 0);
+            for (float v : vec) {
+                int bits = Float.floatToIntBits(v);
+                bytes[pos++] = (byte) (bits >>> 24);
+                bytes[pos++] = (byte) (bits >>> 16);
+                bytes[pos++] = (byte) (bits >>> 8);
+                bytes[pos++] = (byte) bits;
+            }
+        }
+
+        @Override
+        public void setByteValue(byte[] bytes, int offset) {
+            int dim = ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+            float[] parsed = new float[dim];
+            int pos = offset + 4;
+            for (int i = 0; i < dim; i++) {
+                int bits = ((bytes[pos] & 0xFF) << 24) | ((bytes[pos + 1] & 0xFF) << 16)
+                        | ((bytes[pos + 2] & 0xFF) << 8) | (bytes[pos + 3] & 0xFF);
+                parsed[i] = Float.intBitsToFloat(bits);
+                pos += 4;
+            }
+            this.vec = parsed;
+        }
+
+        float[] vector() {
+            return vec;
+        }
+
+        private static int writeShort(byte[] bytes, int pos, int value) {
+            bytes[pos] = (byte) (value >>> 8);
+            bytes[pos + 1] = (byte) value;
+            return pos + 2;
+        }
+    }
+}
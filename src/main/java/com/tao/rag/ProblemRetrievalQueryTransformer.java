@@ -0,0 +1,65 @@
+package com.tao.rag;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.preretrieval.query.transformation.QueryTransformer;
+
+import java.util.StringJoiner;
+
+/**
+ * 检索 query 替换器
+ * RetrievalAugmentationAdvisor 默认把整段用户提示词（指令 + <info> 全文 + problem）当作检索 query 去做 embedding，
+ * 这里改为只用单个问题的“问题/原文摘要/解释”去检索；
+ * 只替换检索用的 query，召回的知识仍然注入到原始的完整提示词中
+ */
+@Slf4j
+public class ProblemRetrievalQueryTransformer implements QueryTransformer {
+
+    /**
+     * advisor 参数 key：调用方通过 spec.param(RETRIEVAL_QUERY, ...) 传入检索用文本
+     */
+    public static final String RETRIEVAL_QUERY = "problem_retrieval_query";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String[] PROBLEM_FIELDS = {"问题", "原文摘要", "解释"};
+
+    @Override
+    public Query transform(Query query) {
+        Object retrievalQuery = query.context().get(RETRIEVAL_QUERY);
+        if (retrievalQuery instanceof String text && !text.isBlank()) {
+            return query.mutate().text(text).build();
+        }
+        // 未传入则保持原 query，兼容旧调用
+        return query;
+    }
+
+    /**
+     * 从单个问题 JSON 中拼出检索 query：
+     * {"问题": "...", "原文摘要": "...", "解释": "..."} -> "问题\n原文摘要\n解释"
+     *
+     * @param oneProblemJson 单个问题 JSON
+     * @return 检索文本；解析失败或字段都为空时返回 null，由上层回退到完整提示词
+     */
+    public static String buildRetrievalQuery(String oneProblemJson) {
+        if (oneProblemJson == null || oneProblemJson.isBlank()) {
+            return null;
+        }
+        try {
+            JsonNode node = OBJECT_MAPPER.readTree(oneProblemJson);
+            StringJoiner joiner = new StringJoiner("\n");
+            for (String field : PROBLEM_FIELDS) {
+                String value = node.path(field).asText("").trim();
+                if (!value.isEmpty()) {
+                    joiner.add(value);
+                }
+            }
+            return joiner.length() == 0 ? null : joiner.toString();
+        } catch (Exception e) {
+            log.warn("单问题 JSON 解析失败，检索 query 回退为完整提示词: {}", oneProblemJson);
+            return null;
+        }
+    }
+}
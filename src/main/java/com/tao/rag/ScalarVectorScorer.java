@@ -0,0 +1,36 @@
+package com.tao.rag;
+
+/**
+ * 标量实现，作为 Vector API 不可用时的兜底
+ * 4 路展开，给 JIT 自动向量化留空间
+ */
+final class ScalarVectorScorer implements VectorScorer {
+
+    @Override
+    public float squaredL2(float[] query, float[] matrix, int offset, int dim) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        int bound = dim & ~3;
+        for (; i < bound; i += 4) {
+            float d0 = query[i] - matrix[offset + i];
+            float d1 = query[i + 1] - matrix[offset + i + 1];
+            float d2 = query[i + 2] - matrix[offset + i + 2];
+            float d3 = query[i + 3] - matrix[offset + i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        float sum = s0 + s1 + s2 + s3;
+        for (; i < dim; i++) {
+            float d = query[i] - matrix[offset + i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return "ScalarVectorScorer";
+    }
+}
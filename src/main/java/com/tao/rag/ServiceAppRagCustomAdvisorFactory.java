@@ -52,5 +52,22 @@ public class ServiceAppRagCustomAdvisorFactory {
                 .build();
     }
 
-
+    /**
+     * 创建“按单个问题检索”的 RAG 检索增强顾问
+     * 检索 query 取自 advisor 参数 {@link ProblemRetrievalQueryTransformer#RETRIEVAL_QUERY}，
+     * 召回的知识仍然注入到完整的用户提示词中
+     * @param vectorStore  向量存储
+     * @return             自定义的 RAG 检索增强顾问
+     */
+    public static Advisor createProblemScopedRagAdvisor(VectorStore vectorStore) {
+        DocumentRetriever documentRetriever = VectorStoreDocumentRetriever.builder()
+                .vectorStore(vectorStore)
+                .similarityThreshold(THRESHOLD)
+                .topK(TOP_K)
+                .build();
+        return RetrievalAugmentationAdvisor.builder()
+                .queryTransformers(new ProblemRetrievalQueryTransformer())
+                .documentRetriever(documentRetriever)
+                .build();
+    }
 }
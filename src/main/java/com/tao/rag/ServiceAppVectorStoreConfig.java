@@ -8,7 +8,9 @@ import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
@@ -16,6 +18,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 
 import java.io.File;
 import java.nio.file.Files;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -32,14 +35,73 @@ public class ServiceAppVectorStoreConfig {
     @Resource
     private JdbcTemplate jdbcTemplate;
 
+    private static final String CATEGORY_TABLE = "objection_category_embedding";
+
     /**
      * 使用 Postgres + pgvector 的向量库，而不是本地 JSON
+     * type=memory（默认）：整表加载到 JVM 内存暴力检索，Postgres 作为数据源定时刷新
+     * type=pgvector：每次检索都走数据库
      */
     @Bean
     @Primary
-    public VectorStore serviceAppVectorStore(@Qualifier("ollamaEmbeddingModel") EmbeddingModel embeddingModel) {
-        log.info("初始化 ObjectionCategoryPgVectorStore，使用数据库 objection_category_embedding 作为向量库");
-        return new ObjectionCategoryPgVectorStore(embeddingModel, jdbcTemplate);
+    public VectorStore serviceAppVectorStore(@Qualifier("ollamaEmbeddingModel") EmbeddingModel embeddingModel,
+                                             @Value("${app.rag.vector-store.type:memory}") String type,
+                                             @Value("${app.rag.vector-store.refresh-interval:60s}") Duration refreshInterval) {
+        return createCategoryVectorStore(embeddingModel, CATEGORY_TABLE, type, refreshInterval);
+    }
+
+    /**
+     * 失败原因分类向量库，复用同一套检索实现，只是换一张表（默认 fail_category）
+     */
+    @Bean
+    public VectorStore failReasonVectorStore(@Qualifier("ollamaEmbeddingModel") EmbeddingModel embeddingModel,
+                                             @Value("${app.rag.fail-reason.table:fail_category}") String table,
+                                             @Value("${app.rag.vector-store.type:memory}") String type,
+                                             @Value("${app.rag.vector-store.refresh-interval:60s}") Duration refreshInterval) {
+        return createCategoryVectorStore(embeddingModel, table, type, refreshInterval);
+    }
+
+    /**
+     * pgvector 模式下维护异议分类编号字典的加载器：只查编号和名称列，按 refresh-interval 定时刷新，bean 销毁时停止；
+     * 内存模式字典随内存索引刷新，不需要它，返回 null 时 Spring 不注册该 bean
+     */
+    @Bean
+    public CategoryDictionaryLoader objectionCategoryDictionaryLoader(@Qualifier("serviceAppVectorStore") VectorStore serviceAppVectorStore,
+                                                                      @Value("${app.rag.vector-store.refresh-interval:60s}") Duration refreshInterval) {
+        if (serviceAppVectorStore instanceof InMemoryObjectionCategoryVectorStore) {
+            return null;
+        }
+        CategoryDictionaryLoader loader = new CategoryDictionaryLoader(jdbcTemplate, CATEGORY_TABLE);
+        loader.start(refreshInterval);
+        return loader;
+    }
+
+    /**
+     * 异议分类编号字典，紧凑输出模式下按模型输出的编号回填大类/小类名称
+     * 内存模式直接取内存索引随快照更新的字典；pgvector 模式取 objectionCategoryDictionaryLoader 维护的字典
+     */
+    @Bean
+    public CategoryDictionary objectionCategoryDictionary(@Qualifier("serviceAppVectorStore") VectorStore serviceAppVectorStore,
+                                                          ObjectProvider<CategoryDictionaryLoader> objectionCategoryDictionaryLoader) {
+        if (serviceAppVectorStore instanceof InMemoryObjectionCategoryVectorStore memoryStore) {
+            return memoryStore.dictionary();
+        }
+        return objectionCategoryDictionaryLoader.getObject().dictionary();
+    }
+
+    private VectorStore createCategoryVectorStore(EmbeddingModel embeddingModel, String table,
+                                                  String type, Duration refreshInterval) {
+        ObjectionCategoryPgVectorStore pgVectorStore = new ObjectionCategoryPgVectorStore(embeddingModel, jdbcTemplate, table);
+        if ("pgvector".equalsIgnoreCase(type)) {
+            log.info("初始化 ObjectionCategoryPgVectorStore，使用数据库 {} 作为向量库", table);
+            return pgVectorStore;
+        }
+
+        log.info("初始化 InMemoryObjectionCategoryVectorStore，从数据库 {} 加载到内存，刷新间隔 {}", table, refreshInterval);
+        InMemoryObjectionCategoryVectorStore memoryStore =
+                new InMemoryObjectionCategoryVectorStore(embeddingModel, jdbcTemplate, pgVectorStore, table);
+        memoryStore.start(refreshInterval);
+        return memoryStore;
     }
 
 
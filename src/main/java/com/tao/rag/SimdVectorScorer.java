@@ -0,0 +1,38 @@
+package com.tao.rag;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 JDK Vector API 的实现，按 CPU 支持的最宽向量寄存器（AVX2/AVX-512/NEON）并行计算
+ * 只能通过 {@link VectorScorer#best()} 获取，避免在未加载 jdk.incubator.vector 模块时触发类加载
+ */
+final class SimdVectorScorer implements VectorScorer {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public float squaredL2(float[] query, float[] matrix, int offset, int dim) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(dim);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector q = FloatVector.fromArray(SPECIES, query, i);
+            FloatVector m = FloatVector.fromArray(SPECIES, matrix, offset + i);
+            FloatVector diff = q.sub(m);
+            acc = diff.fma(diff, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < dim; i++) {
+            float d = query[i] - matrix[offset + i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return "SimdVectorScorer(" + SPECIES + ")";
+    }
+}
@@ -0,0 +1,53 @@
+package com.tao.rag;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 向量打分器：计算 query 向量与矩阵中某一行的 L2 距离平方
+ * 矩阵按行连续存放在一个 float[] 中（row * dim + i），避免每行一个对象
+ */
+interface VectorScorer {
+
+    /**
+     * @param query  query 向量
+     * @param matrix 连续存放的向量矩阵
+     * @param offset 当前行在 matrix 中的起始下标
+     * @param dim    向量维度
+     * @return L2 距离的平方
+     */
+    float squaredL2(float[] query, float[] matrix, int offset, int dim);
+
+    /**
+     * 优先使用 JDK Vector API（需要 --add-modules jdk.incubator.vector），不可用时回退到标量实现
+     */
+    static VectorScorer best() {
+        return Holder.BEST;
+    }
+
+    @Slf4j
+    final class Holder {
+        private static final VectorScorer BEST = create();
+
+        private Holder() {
+        }
+
+        private static VectorScorer create() {
+            boolean vectorModulePresent = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+            if (vectorModulePresent && !Boolean.getBoolean("app.rag.simd.disabled")) {
+                try {
+                    // SimdVectorScorer 单独编译（见 pom），这里反射创建，其余代码编译时不依赖孵化模块
+                    VectorScorer simd = (VectorScorer) Class.forName("com.tao.rag.SimdVectorScorer")
+                            .getDeclaredConstructor()
+                            .newInstance();
+                    log.info("向量打分使用 JDK Vector API：{}", simd);
+                    return simd;
+                } catch (LinkageError | ReflectiveOperationException e) {
+                    log.warn("JDK Vector API 初始化失败，回退到标量实现", e);
+                }
+            } else {
+                log.info("未启用 jdk.incubator.vector 模块，向量打分使用标量实现");
+            }
+            return new ScalarVectorScorer();
+        }
+    }
+}
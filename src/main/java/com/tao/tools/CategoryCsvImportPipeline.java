@@ -0,0 +1,456 @@
+package com.tao.tools;
+
+import com.tao.metrics.PipelineMetrics;
+import com.tao.rag.PgVectorCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 分类 CSV -> pgvector 表 的导入流水线（客服异议分类、失败原因分类共用）
+ * 1. 多个 CSV 文件并行解析（每个文件一个虚拟线程）；
+ * 2. 每行计算内容哈希，与库里的 content_hash 比对：
+ *    - 哈希相同：跳过；
+ *    - 只有编号/名称变了、小类标题没变：只更新字段，不重新 embedding；
+ *    - 新增或小类标题变了：重新 embedding；
+ * 3. 需要 embedding 的行按批调用 embed(List)，同时在跑的 embedding 批次数受限，避免压垮 Ollama；
+ * 4. 写库用 JDBC batchUpdate，向量走 PgVectorCodec 二进制绑定；
+ * 5. 所有文件都导入成功后，删除表里有、但本次所有 CSV 里都没有的编号（CSV 中删掉的分类）。
+ * 不再以“表非空”作为跳过条件，CSV 改了重启即可增量同步。
+ */
+@Slf4j
+@Component
+public class CategoryCsvImportPipeline {
+
+    private final EmbeddingModel embeddingModel;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // 每次 embed(List) 的行数
+    private final int embedBatchSize;
+
+    // 全局同时在跑的 embedding 批次数
+    private final Semaphore embedPermits;
+
+    public CategoryCsvImportPipeline(EmbeddingModel embeddingModel,
+                                     JdbcTemplate jdbcTemplate,
+                                     @Value("${app.import.embed-batch-size:32}") int embedBatchSize,
+                                     @Value("${app.import.max-concurrent-embeds:2}") int maxConcurrentEmbeds) {
+        this.embeddingModel = embeddingModel;
+        this.jdbcTemplate = jdbcTemplate;
+        this.embedBatchSize = Math.max(1, embedBatchSize);
+        this.embedPermits = new Semaphore(Math.max(1, maxConcurrentEmbeds));
+    }
+
+    /**
+     * 单行分类数据
+     */
+    record CategoryRow(String code, String bigCode, String bigName, String smallCode, String smallTitle,
+                       String sourceFile, int rowIndex) {
+
+        String contentHash() {
+            return sha256(String.join("\u0001", code, bigCode, bigName, smallCode, smallTitle));
+        }
+    }
+
+    /**
+     * 库中已有记录的摘要，用于增量判断
+     */
+    private record ExistingRow(String smallTitle, String contentHash) {
+    }
+
+    /**
+     * 导入结果统计
+     *
+     * @param files       成功导入的文件数
+     * @param deleted     CSV 中已不存在、从表里删除的编号数
+     * @param failedFiles 导入失败的文件名（解析、embedding 或写库失败），其中的行不计入其他统计
+     */
+    public record ImportStats(int files, int rows, int embedded, int updatedOnly, int unchanged, int deleted,
+                              List<String> failedFiles) {
+
+        static final ImportStats EMPTY = new ImportStats(0, 0, 0, 0, 0, 0, List.of());
+
+        static ImportStats failed(String fileName) {
+            return new ImportStats(0, 0, 0, 0, 0, 0, List.of(fileName));
+        }
+
+        /**
+         * 所有文件都导入成功
+         */
+        public boolean complete() {
+            return failedFiles.isEmpty();
+        }
+
+        ImportStats plus(ImportStats other) {
+            List<String> failed = new ArrayList<>(failedFiles);
+            failed.addAll(other.failedFiles);
+            return new ImportStats(files + other.files, rows + other.rows, embedded + other.embedded,
+                    updatedOnly + other.updatedOnly, unchanged + other.unchanged, deleted + other.deleted,
+                    List.copyOf(failed));
+        }
+    }
+
+    /**
+     * 把 resourcePattern 匹配到的所有 CSV 增量导入 tableName
+     *
+     * @param tableName       目标表（objection_category_embedding / fail_category）
+     * @param resourcePattern 例如 classpath:document/CustomerObjectionClassification/*.csv
+     * @return 导入统计；单个文件失败不影响其他文件，失败的文件记在 {@link ImportStats#failedFiles()} 中
+     */
+    public ImportStats importAll(String tableName, String resourcePattern) throws Exception {
+        long start = System.currentTimeMillis();
+        ensureHashColumn(tableName);
+
+        PathMatchingResourcePatternResolver resolver =
+                new PathMatchingResourcePatternResolver(this.getClass().getClassLoader());
+        Resource[] resources = resolver.getResources(resourcePattern);
+        log.info("表 {}：共发现分类规则文件 {} 个", tableName, resources.length);
+
+        Map<String, ExistingRow> existing = loadExisting(tableName);
+        // 本次所有 CSV 中出现过的编号
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+
+        ImportStats total = ImportStats.EMPTY;
+        List<Future<ImportStats>> futures = new ArrayList<>(resources.length);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Resource resource : resources) {
+                futures.add(executor.submit(() -> importSingleCsv(tableName, resource, existing, seen)));
+            }
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                total = total.plus(futures.get(i).get());
+            } catch (Exception e) {
+                String fileName = safeGetFileName(resources[i]);
+                log.error("导入文件 {} 失败", fileName, e);
+                total = total.plus(ImportStats.failed(fileName));
+            }
+        }
+        total = total.plus(deleteRemoved(tableName, resources.length, total, existing.keySet(), seen));
+
+        log.info("表 {} 导入完成：文件 {}，行 {}，重新embedding {}，仅更新字段 {}，未变化 {}，删除 {}，失败文件 {}，耗时 {} ms",
+                tableName, total.files(), total.rows(), total.embedded(), total.updatedOnly(), total.unchanged(),
+                total.deleted(), total.failedFiles(), System.currentTimeMillis() - start);
+        return total;
+    }
+
+    private ImportStats importSingleCsv(String tableName, Resource resource, Map<String, ExistingRow> existing,
+                                       Set<String> seen) throws Exception {
+        String fileName = safeGetFileName(resource);
+        List<CategoryRow> rows = parseCsv(resource, fileName);
+        rows.forEach(row -> seen.add(row.code()));
+
+        List<CategoryRow> toEmbed = new ArrayList<>();
+        List<CategoryRow> toUpdate = new ArrayList<>();
+        int unchanged = 0;
+        for (CategoryRow row : rows) {
+            ExistingRow old = existing.get(row.code());
+            if (old == null || !row.smallTitle().equals(old.smallTitle())) {
+                toEmbed.add(row);
+            } else if (!row.contentHash().equals(old.contentHash())) {
+                toUpdate.add(row);
+            } else {
+                unchanged++;
+            }
+        }
+
+        for (int from = 0; from < toEmbed.size(); from += embedBatchSize) {
+            List<CategoryRow> batch = toEmbed.subList(from, Math.min(from + embedBatchSize, toEmbed.size()));
+            List<float[]> embeddings = embedBatch(batch);
+            PipelineMetrics.timer(PipelineMetrics.IMPORT_UPSERT_BATCH)
+                    .record(() -> upsertWithEmbedding(tableName, batch, embeddings));
+        }
+        if (!toUpdate.isEmpty()) {
+            PipelineMetrics.timer(PipelineMetrics.IMPORT_UPSERT_BATCH)
+                    .record(() -> updateWithoutEmbedding(tableName, toUpdate));
+        }
+
+        log.info("文件 {} 导入完成：行 {}，重新embedding {}，仅更新字段 {}，未变化 {}",
+                fileName, rows.size(), toEmbed.size(), toUpdate.size(), unchanged);
+        return new ImportStats(1, rows.size(), toEmbed.size(), toUpdate.size(), unchanged, 0, List.of());
+    }
+
+    /**
+     * 删除 CSV 中已不存在的编号；有文件失败时不知道失败文件里有哪些编号，一律不删，
+     * 一个文件都没匹配到时多半是路径配错，同样不删
+     */
+    private ImportStats deleteRemoved(String tableName, int fileCount, ImportStats stats,
+                                      Set<String> existingCodes, Set<String> seen) {
+        if (!stats.complete() || fileCount == 0) {
+            return ImportStats.EMPTY;
+        }
+        List<Object[]> removed = existingCodes.stream()
+                .filter(code -> !seen.contains(code))
+                .map(code -> new Object[]{code})
+                .toList();
+        if (removed.isEmpty()) {
+            return ImportStats.EMPTY;
+        }
+        jdbcTemplate.batchUpdate("DELETE FROM " + tableName + " WHERE code = ?", removed);
+        log.info("表 {}：删除 CSV 中已不存在的编号 {} 个", tableName, removed.size());
+        return new ImportStats(0, 0, 0, 0, 0, removed.size(), List.of());
+    }
+
+    /**
+     * 调本地 Qwen3 Embedding 模型批量生成 4096 维向量
+     */
+    private List<float[]> embedBatch(List<CategoryRow> batch) throws InterruptedException {
+        List<String> titles = batch.stream().map(CategoryRow::smallTitle).toList();
+        embedPermits.acquire();
+        try {
+            // 只统计真正调用模型的时间，不含排队等待许可
+            return PipelineMetrics.record(PipelineMetrics.IMPORT_EMBED_BATCH, () -> embeddingModel.embed(titles));
+        } finally {
+            embedPermits.release();
+        }
+    }
+
+    private void upsertWithEmbedding(String tableName, List<CategoryRow> batch, List<float[]> embeddings) {
+        String sql = """
+                INSERT INTO %s
+                  (code, big_code, big_name, small_code, small_title,
+                   embedding, source_file, row_index, content_hash, created_at, updated_at)
+                VALUES
+                  (?, ?, ?, ?, ?, ?, ?, ?, ?, now(), now())
+                ON CONFLICT (code) DO UPDATE SET
+                  big_code     = EXCLUDED.big_code,
+                  big_name     = EXCLUDED.big_name,
+                  small_code   = EXCLUDED.small_code,
+                  small_title  = EXCLUDED.small_title,
+                  embedding    = EXCLUDED.embedding,
+                  source_file  = EXCLUDED.source_file,
+                  row_index    = EXCLUDED.row_index,
+                  content_hash = EXCLUDED.content_hash,
+                  updated_at   = now()
+                """.formatted(tableName);
+
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                CategoryRow row = batch.get(i);
+                ps.setString(1, row.code());
+                ps.setString(2, row.bigCode());
+                ps.setString(3, row.bigName());
+                ps.setString(4, row.smallCode());
+                ps.setString(5, row.smallTitle());
+                PgVectorCodec.bind(ps, 6, embeddings.get(i));
+                ps.setString(7, row.sourceFile());
+                ps.setInt(8, row.rowIndex());
+                ps.setString(9, row.contentHash());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return batch.size();
+            }
+        });
+    }
+
+    private void updateWithoutEmbedding(String tableName, List<CategoryRow> rows) {
+        String sql = """
+                UPDATE %s SET
+                  big_code     = ?,
+                  big_name     = ?,
+                  small_code   = ?,
+                  source_file  = ?,
+                  row_index    = ?,
+                  content_hash = ?,
+                  updated_at   = now()
+                WHERE code = ?
+                """.formatted(tableName);
+
+        jdbcTemplate.batchUpdate(sql, rows, rows.size(), (ps, row) -> {
+            ps.setString(1, row.bigCode());
+            ps.setString(2, row.bigName());
+            ps.setString(3, row.smallCode());
+            ps.setString(4, row.sourceFile());
+            ps.setInt(5, row.rowIndex());
+            ps.setString(6, row.contentHash());
+            ps.setString(7, row.code());
+        });
+    }
+
+    /**
+     * 老表没有 content_hash 列时补上；老数据哈希为空，第一次导入会按“仅更新字段”补齐哈希，不会重新 embedding
+     */
+    private void ensureHashColumn(String tableName) {
+        jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS content_hash varchar(64)");
+    }
+
+    private Map<String, ExistingRow> loadExisting(String tableName) {
+        Map<String, ExistingRow> existing = new HashMap<>();
+        jdbcTemplate.query("SELECT code, small_title, content_hash FROM " + tableName, rs -> {
+            existing.put(rs.getString("code"),
+                    new ExistingRow(rs.getString("small_title"), rs.getString("content_hash")));
+        });
+        return existing;
+    }
+
+    /**
+     * 解析单个 CSV 文件
+     */
+    static List<CategoryRow> parseCsv(Resource resource, String fileName) throws Exception {
+        List<CategoryRow> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+
+            String headerLine = reader.readLine();
+            if (headerLine == null) {
+                log.warn("文件 {} 为空，跳过", fileName);
+                return rows;
+            }
+
+            // 去掉 BOM（UTF-8 带 BOM 时第一行开头会有一个 \uFEFF）
+            headerLine = headerLine.replace("\uFEFF", "");
+
+            String[] headers = headerLine.split(",", -1);
+            log.debug("文件 {} 原始表头: {}", fileName, Arrays.toString(headers));
+
+            int idxCode       = indexOf(headers, "编号");
+            int idxBigCode    = indexOf(headers, "大类编号");
+            int idxBigName    = indexOf(headers, "大类");
+            int idxSmallCode  = indexOf(headers, "小类编号");
+            int idxSmallTitle = indexOf(headers, "小类标题");
+
+            if (idxCode < 0 || idxBigCode < 0 || idxBigName < 0
+                    || idxSmallCode < 0 || idxSmallTitle < 0) {
+                // 表头不对整个文件都导不进去，按失败文件处理
+                throw new IllegalArgumentException("文件 " + fileName + " 表头不符合预期，原始 headers="
+                        + Arrays.toString(headers));
+            }
+
+            String line;
+            int rowIndex = 0;
+
+            while ((line = reader.readLine()) != null) {
+                rowIndex++;
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                // 简单按逗号切；你现在 CSV 列比较规整，这样足够
+                String[] cols = line.split(",", -1);
+                if (cols.length < headers.length) {
+                    log.warn("文件 {} 第 {} 行列数不足，实际={} 期望>={}",
+                            fileName, rowIndex, cols.length, headers.length);
+                    continue;
+                }
+
+                String code       = cleanExcelValue(cols[idxCode]);
+                String smallTitle = cleanExcelValue(cols[idxSmallTitle]);
+
+                if (code.isEmpty() || smallTitle.isEmpty()) {
+                    log.warn("文件 {} 第 {} 行 code 或 smallTitle 为空，跳过", fileName, rowIndex);
+                    continue;
+                }
+
+                rows.add(new CategoryRow(
+                        code,
+                        cleanExcelValue(cols[idxBigCode]),
+                        cleanExcelValue(cols[idxBigName]),
+                        cleanExcelValue(cols[idxSmallCode]),
+                        smallTitle,
+                        fileName,
+                        rowIndex
+                ));
+            }
+        }
+        return rows;
+    }
+
+    private static String safeGetFileName(Resource resource) {
+        try {
+            return resource.getFilename();
+        } catch (Exception e) {
+            return "UNKNOWN";
+        }
+    }
+
+    /**
+     * 处理你现在这种 "=""01001""" 形式的单元格导出数据：
+     * - 去掉 BOM
+     * - 去掉外层引号
+     * - 去掉开头的 =" 和 结尾的 "
+     */
+    static String cleanExcelValue(String raw) {
+        if (raw == null) {
+            return "";
+        }
+        // 顺手把 BOM 也去掉
+        String s = raw.replace("\uFEFF", "").trim();
+
+        // 去掉外层引号
+        if (s.startsWith("\"") && s.endsWith("\"") && s.length() >= 2) {
+            s = s.substring(1, s.length() - 1);
+        }
+
+        // 去掉 =" 前缀（常见于 Excel 导出）
+        if (s.startsWith("=\"") && s.endsWith("\"") && s.length() >= 3) {
+            s = s.substring(2, s.length() - 1);
+        }
+
+        return s.trim();
+    }
+
+    /**
+     * 规范化表头；去掉 BOM、引号、等号、前后空格
+     */
+    private static String normalizeHeader(String h) {
+        if (h == null) {
+            return "";
+        }
+        return h
+                .replace("\uFEFF", "")  // 去 BOM
+                .replace("\"", "")
+                .replace("=", "")
+                .trim();
+    }
+
+    /**
+     * 根据中文表头名找到对应列下标
+     */
+    private static int indexOf(String[] headers, String name) {
+        for (int i = 0; i < headers.length; i++) {
+            String normalized = normalizeHeader(headers[i]);
+            if (name.equals(normalized)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
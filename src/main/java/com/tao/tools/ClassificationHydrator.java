@@ -0,0 +1,81 @@
+package com.tao.tools;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tao.rag.CategoryDictionary;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 紧凑输出模式的结果回填：模型只给出分类编号，
+ * 大类/小类编号与名称从分类字典取，针对的问题/原文摘要/解释取自抽取出的问题，客服回答由调用方在对话原文中定位。
+ * 名称不再由模型复述，不会出现截断或改写。
+ */
+@Slf4j
+public final class ClassificationHydrator {
+
+    /**
+     * 无匹配分类时的大类编号与名称，与完整输出模式的提示词规则一致
+     */
+    public static final String NEW_CATEGORY_CODE = "00";
+
+    public static final String NEW_CATEGORY_NAME = "新分类";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private ClassificationHydrator() {
+    }
+
+    /**
+     * 解析紧凑输出；结构化输出下是纯 JSON，直接反序列化，否则先清洗
+     *
+     * @return 解析失败返回 null
+     */
+    public static CompactClassification parse(String raw) {
+        if (raw == null || raw.isBlank()) {
+            return null;
+        }
+        try {
+            return OBJECT_MAPPER.readValue(raw, CompactClassification.class);
+        } catch (JsonProcessingException e) {
+            String cleaned = ProblemClassifyTool.cleanResult(raw);
+            if (cleaned == null) {
+                return null;
+            }
+            try {
+                return OBJECT_MAPPER.readValue(cleaned, CompactClassification.class);
+            } catch (JsonProcessingException ex) {
+                log.warn("紧凑输出解析失败: {}", raw);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 回填完整分类结果
+     *
+     * @param problem     抽取出的问题
+     * @param compact     模型的紧凑输出
+     * @param dictionary  分类字典
+     * @param agentAnswer 客服回答，由 {@link com.tao.transcript.AnswerLocator} 在对话中定位
+     */
+    public static ClassificationResult hydrate(ObjectionItem problem, CompactClassification compact,
+                                               CategoryDictionary dictionary, String agentAnswer) {
+        String bigCode = NEW_CATEGORY_CODE;
+        String bigName = NEW_CATEGORY_NAME;
+        String smallCode = "";
+        String smallName = "";
+        CategoryDictionary.Category category = dictionary.find(compact.code()).orElse(null);
+        if (category != null) {
+            bigCode = category.bigCode();
+            bigName = category.bigName();
+            smallCode = category.smallCode();
+            smallName = category.smallTitle();
+        } else if (!NEW_CATEGORY_CODE.equals(compact.code())) {
+            log.warn("模型输出的分类编号 {} 不在分类字典中，按新分类处理", compact.code());
+        }
+        return new ClassificationResult(problem.problem(), bigCode, bigName, smallCode, smallName,
+                agentAnswer, problem.excerpt(), problem.explanation());
+    }
+}
@@ -0,0 +1,27 @@
+package com.tao.tools;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 单问题分类输出，字段名与顺序与提示词中的 JSON 示例一致（合并结果按该顺序序列化）
+ * 结构化输出模式下同时用于生成 Ollama format 的 JSON Schema
+ *
+ * @param problem       针对的问题
+ * @param bigCode       问题大类编号
+ * @param bigName       问题大类名称
+ * @param smallCode     问题小类编号
+ * @param smallName     问题小类名称
+ * @param agentAnswer   客服回答，找不到为空字符串
+ * @param excerpt       原文摘要
+ * @param explanation   解释
+ */
+public record ClassificationResult(
+        @JsonProperty(value = "针对的问题", required = true) String problem,
+        @JsonProperty(value = "问题大类编号", required = true) String bigCode,
+        @JsonProperty(value = "问题大类名称", required = true) String bigName,
+        @JsonProperty(value = "问题小类编号", required = true) String smallCode,
+        @JsonProperty(value = "问题小类名称", required = true) String smallName,
+        @JsonProperty(value = "客服回答", required = true) String agentAnswer,
+        @JsonProperty(value = "原文摘要", required = true) String excerpt,
+        @JsonProperty(value = "解释", required = true) String explanation) {
+}
@@ -0,0 +1,21 @@
+package com.tao.tools;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.springframework.ai.converter.BeanOutputConverter;
+
+import java.util.Map;
+
+/**
+ * 紧凑输出模式下单问题分类的模型输出：只有知识库编号，
+ * 完整的 {@link ClassificationResult} 由 {@link ClassificationHydrator} 按分类字典、输入问题和对话原文回填
+ *
+ * @param code 知识库中的分类编号（如 01002），无匹配为 "00"
+ */
+public record CompactClassification(
+        @JsonProperty(value = "编号", required = true) String code) {
+
+    /**
+     * 结构化输出模式下传给 Ollama format 的 JSON Schema
+     */
+    public static final Map<String, Object> SCHEMA = new BeanOutputConverter<>(CompactClassification.class).getJsonSchemaMap();
+}
@@ -1,14 +1,23 @@
 package com.tao.tools;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tao.generation.JsonGeneration;
+import com.tao.metrics.PipelineMetrics;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
-import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.converter.BeanOutputConverter;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * 从客服对话文本 info 中抽取客户异议 problem 的工具类。
  * 最终返回的字符串是一个 JSON 数组：
@@ -25,7 +34,26 @@ import org.springframework.stereotype.Component;
 public class ObjectionExtractTool {
 
     private final ChatClient chatClient;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final JsonGeneration jsonGeneration;
+
+    // 模型偶尔多输出字段，绑定记录类时忽略
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * 模型输出的顶层对象：{"异议列表": [...]}
+     */
+    record Extraction(@JsonProperty(value = "异议列表", required = true) List<ObjectionItem> items) {
+    }
+
+    /**
+     * 结构化输出模式下传给 Ollama format 的 JSON Schema
+     */
+    private static final Map<String, Object> EXTRACTION_SCHEMA = new BeanOutputConverter<>(Extraction.class).getJsonSchemaMap();
+
+    private static final TypeReference<List<ObjectionItem>> ITEM_LIST = new TypeReference<>() {
+    };
 
     /**
      * 系统提示词 system prompt
@@ -56,10 +84,11 @@ public class ObjectionExtractTool {
              
             """;
 
-    public ObjectionExtractTool(@Qualifier("ollamaChatModel") ChatModel chatModel) {
+    public ObjectionExtractTool(@Qualifier("ollamaChatModel") ChatModel chatModel, JsonGeneration jsonGeneration) {
         this.chatClient = ChatClient.builder(chatModel)
                 .defaultSystem(SYSTEM_PROMPT)
                 .build();
+        this.jsonGeneration = jsonGeneration;
     }
 
 //   5、严禁使用 ```json 或任何 Markdown 代码块包裹输出，不能输出解释性文字，只能输出纯 JSON。
@@ -73,23 +102,83 @@ public class ObjectionExtractTool {
      * {"问题": "...", "原文摘要": "...", "解释": "..."},
      * ...
      * ]
-     * - 如果解析失败，则直接返回模型原始输出，由上层自己兜底处理。
+     * - 解析失败返回 "[]"
      */
     public String extractProblems(String info) {
+        List<ObjectionItem> items = extractItems(info);
+        try {
+            return OBJECT_MAPPER.writeValueAsString(items);
+        } catch (JsonProcessingException e) {
+            log.warn("序列化异议列表失败，返回空数组", e);
+            return "[]";
+        }
+    }
+
+    /**
+     * 从 info 中抽取 problem 列表，直接返回记录类
+     * 结构化输出模式下模型输出按 schema 约束，一次反序列化即可；否则走文本清洗
+     *
+     * @param info 客服与客户的对话文本
+     * @return 问题列表，解析失败时为空列表
+     */
+    public List<ObjectionItem> extractItems(String info) {
         // 按提示词要求包一层 <info></info>，其实也可以不包
         String userPrompt = "<info>\n" + info + "\n</info>";
 
-        ChatResponse response = chatClient
+        // 关闭思考 + 生成上限，流式输出在“异议列表”对象闭合时即停止
+        String raw = PipelineMetrics.record(PipelineMetrics.EXTRACT, () -> jsonGeneration.generate(chatClient
                 .prompt()
-                .user(userPrompt)
-                .call()
-                .chatResponse();
-
-        String raw = response.getResult().getOutput().getText();
+                .options(jsonGeneration.options(null, jsonGeneration.extractNumPredict(), EXTRACTION_SCHEMA))
+                .user(jsonGeneration.userPrompt(userPrompt)), PipelineMetrics.EXTRACT));
         // 如果需要查看日志排查问题再开启，平时禁用，减少系统开销
         // log.info("异议抽取原始输出: {}", raw);
         // 需要排查模型输出时可打开
 
+        return PipelineMetrics.record(PipelineMetrics.JSON_CLEANUP, () -> jsonGeneration.isStructuredOutput()
+                ? bindProblems(raw)
+                : toItems(parseProblems(raw)));
+    }
+
+    /**
+     * 结构化输出的反序列化：{"异议列表": [...]} -> 问题列表
+     * 输出被 num_predict 截断等情况下反序列化会失败，此时回退到文本清洗并打日志，不再静默变成空数组
+     *
+     * @param raw 模型原始输出
+     * @return 问题列表，无法解析时为空列表
+     */
+    public static List<ObjectionItem> bindProblems(String raw) {
+        if (raw == null || raw.isBlank()) {
+            log.warn("模型输出为空，返回空列表");
+            return List.of();
+        }
+        try {
+            Extraction extraction = OBJECT_MAPPER.readValue(raw, Extraction.class);
+            return extraction.items() == null ? List.of() : extraction.items();
+        } catch (JsonProcessingException e) {
+            log.warn("结构化输出反序列化失败，回退到文本清洗: {}", e.getOriginalMessage());
+            return toItems(parseProblems(raw));
+        }
+    }
+
+    private static List<ObjectionItem> toItems(String problemsJson) {
+        try {
+            return OBJECT_MAPPER.readValue(problemsJson, ITEM_LIST);
+        } catch (JsonProcessingException e) {
+            log.warn("异议列表元素不是预期结构，返回空列表: {}", problemsJson);
+            return List.of();
+        }
+    }
+
+    /**
+     * 清洗模型原始输出并取出“异议列表”数组
+     *
+     * @param raw 模型原始输出
+     * @return 紧凑 JSON 数组字符串，无法解析时返回 "[]"
+     */
+    public static String parseProblems(String raw) {
+        if (raw == null) {
+            return "[]";
+        }
         // 1) 去掉可能的 ```json / ``` 包裹
         String cleaned = raw.trim();
         if (cleaned.startsWith("```")) {
@@ -132,12 +221,12 @@ public class ObjectionExtractTool {
                 return "[]";
             }
 
-            JsonNode root = objectMapper.readTree(payload);
+            JsonNode root = OBJECT_MAPPER.readTree(payload);
             if (root.isObject() && root.has("异议列表")) {
                 root = root.get("异议列表");
             }
             if (root.isArray()) {
-                String result = objectMapper.writeValueAsString(root);
+                String result = OBJECT_MAPPER.writeValueAsString(root);
                 log.info("解析后的异议列表: {}", result);
                 return result;
             }
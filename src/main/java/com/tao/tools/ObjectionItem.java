@@ -0,0 +1,17 @@
+package com.tao.tools;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 异议抽取输出的单个问题，字段名与提示词中的 JSON 字段一致
+ * 结构化输出模式下同时用于生成 Ollama format 的 JSON Schema
+ *
+ * @param problem     问题
+ * @param excerpt     原文摘要（客户原话）
+ * @param explanation 解释
+ */
+public record ObjectionItem(
+        @JsonProperty(value = "问题", required = true) String problem,
+        @JsonProperty(value = "原文摘要", required = true) String excerpt,
+        @JsonProperty(value = "解释", required = true) String explanation) {
+}
@@ -1,23 +1,88 @@
 package com.tao.tools;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.tao.metrics.PipelineMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.function.BiFunction;
 
 /**
  * 客户异议“问题分类”工具
  * 之前的处理逻辑：多条问题 + 一次检索 + 一次回答，query 过长、语料搅在一起，回复会变形
  * 现在按单个问题流式调用外部传入的分类函数，并合并结果
+ * 并发模式下：每个问题一个虚拟线程并行分类，受单次请求并发上限与全局并发上限约束，
+ * 输出顺序与输入问题顺序保持一致，单个问题失败只跳过该问题，不影响其他问题
+ * 结构化输出模式下单问题结果直接反序列化为 {@link ClassificationResult}，失败才回退到文本清洗
  */
 @Slf4j
 @Component
 public class ProblemClassifyTool {
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    /**
+     * 单问题分类输出（JSON 数组）的 JSON Schema，结构化输出模式下作为 Ollama format 传入
+     */
+    public static final Map<String, Object> RESULT_SCHEMA = new BeanOutputConverter<>(
+            new ParameterizedTypeReference<List<ClassificationResult>>() {
+            }).getJsonSchemaMap();
+
+    private static final TypeReference<List<ClassificationResult>> RESULT_LIST = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * 是否开启并发分类
+     */
+    private final boolean parallelEnabled;
+
+    /**
+     * 单次 doClassify 内同时在跑的问题数上限
+     */
+    private final int maxConcurrencyPerRequest;
+
+    /**
+     * 全局（所有请求共享）同时在跑的单问题分类数上限，避免把 Ollama 打满
+     */
+    private final Semaphore globalPermits;
+
+    /**
+     * 单问题输出是否按 {@link #RESULT_SCHEMA} 约束生成
+     */
+    private final boolean structuredOutput;
+
+    public ProblemClassifyTool(boolean parallelEnabled, int maxConcurrencyPerRequest, int maxConcurrencyGlobal) {
+        this(parallelEnabled, maxConcurrencyPerRequest, maxConcurrencyGlobal, false);
+    }
+
+    @Autowired
+    public ProblemClassifyTool(@Value("${app.classify.parallel.enabled:true}") boolean parallelEnabled,
+                               @Value("${app.classify.parallel.max-per-request:3}") int maxConcurrencyPerRequest,
+                               @Value("${app.classify.parallel.max-global:8}") int maxConcurrencyGlobal,
+                               @Value("${app.generation.structured-output:true}") boolean structuredOutput) {
+        this.parallelEnabled = parallelEnabled;
+        this.maxConcurrencyPerRequest = Math.max(1, maxConcurrencyPerRequest);
+        this.globalPermits = new Semaphore(Math.max(1, maxConcurrencyGlobal), true);
+        this.structuredOutput = structuredOutput;
+    }
 
     /**
      * 对多个已抽取的客户问题进行分类。
@@ -66,49 +131,192 @@ public class ProblemClassifyTool {
             }
 
             ArrayNode problemArray = (ArrayNode) root;
-            ArrayNode resultArray = objectMapper.createArrayNode();
-
+            List<String> problemJsonList = new ArrayList<>(problemArray.size());
             for (JsonNode item : problemArray) {
-                String oneProblemJson = objectMapper.writeValueAsString(item);
-                log.debug("开始对单个问题做 RAG 分类: {}", oneProblemJson);
+                problemJsonList.add(objectMapper.writeValueAsString(item));
+            }
+            return classifyAll(info, problemJsonList, singleClassifier);
 
-                String oneResultRaw = singleClassifier.apply(info, oneProblemJson);
-                String oneResult = cleanResult(oneResultRaw);
-                if (oneResult == null || oneResult.isBlank()) {
-                    log.warn("单问题分类返回空或非JSON，跳过。问题: {}", oneProblemJson);
-                    continue;
-                }
+        } catch (CancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("doClassify 解析 problemsJson 失败，直接返回空数组", e);
+            return "[]";
+        }
+    }
 
-                try {
-                    JsonNode parsed = objectMapper.readTree(oneResult);
-                    if (parsed.isArray()) {
-                        for (JsonNode node : parsed) {
-                            resultArray.add(node);
+    /**
+     * 对已绑定为记录类的问题列表分类，省去问题列表字符串的清洗与解析
+     *
+     * @param info             客服与客户的对话文本
+     * @param problems         {@link ObjectionExtractTool#extractItems} 的结果
+     * @param singleClassifier 单问题分类函数，同 {@link #doClassify(String, String, BiFunction)}
+     * @return JSON 数组字符串
+     */
+    public String doClassify(String info,
+                             List<ObjectionItem> problems,
+                             BiFunction<String, String, String> singleClassifier) {
+        if (problems == null || problems.isEmpty()) {
+            log.warn("问题列表problems为空");
+            return "[]";
+        }
+        try {
+            List<String> problemJsonList = new ArrayList<>(problems.size());
+            for (ObjectionItem item : problems) {
+                problemJsonList.add(objectMapper.writeValueAsString(item));
+            }
+            return classifyAll(info, problemJsonList, singleClassifier);
+        } catch (CancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("doClassify 失败，直接返回空数组", e);
+            return "[]";
+        }
+    }
+
+    private String classifyAll(String info,
+                               List<String> problemJsonList,
+                               BiFunction<String, String, String> singleClassifier) throws JsonProcessingException {
+        List<List<JsonNode>> perProblemResults = parallelEnabled && problemJsonList.size() > 1
+                ? classifyConcurrently(info, problemJsonList, singleClassifier)
+                : classifySequentially(info, problemJsonList, singleClassifier);
+
+        // 按输入顺序合并
+        ArrayNode resultArray = objectMapper.createArrayNode();
+        for (List<JsonNode> nodes : perProblemResults) {
+            nodes.forEach(resultArray::add);
+        }
+
+        // wq: 统一使用 pretty printer 输出，终端/日志更易读
+        String finalResult = objectMapper.writerWithDefaultPrettyPrinter()
+                .writeValueAsString(resultArray);
+        log.info("RAG 分类最终合并结果: {}", finalResult);
+        return finalResult;
+    }
+
+    /**
+     * 串行模式：逐个问题调用分类函数
+     */
+    private List<List<JsonNode>> classifySequentially(String info,
+                                                      List<String> problemJsonList,
+                                                      BiFunction<String, String, String> singleClassifier) {
+        List<List<JsonNode>> results = new ArrayList<>(problemJsonList.size());
+        for (String oneProblemJson : problemJsonList) {
+            results.add(classifyOne(info, oneProblemJson, singleClassifier));
+        }
+        return results;
+    }
+
+    /**
+     * 并发模式：每个问题一个虚拟线程，结果按下标回填，保证与输入顺序一致
+     * 等待期间被中断时取消所有未完成的分类并抛出 CancellationException，不返回不完整的结果
+     */
+    private List<List<JsonNode>> classifyConcurrently(String info,
+                                                      List<String> problemJsonList,
+                                                      BiFunction<String, String, String> singleClassifier) {
+        Semaphore requestPermits = new Semaphore(maxConcurrencyPerRequest);
+        List<Future<List<JsonNode>>> futures = new ArrayList<>(problemJsonList.size());
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            for (String oneProblemJson : problemJsonList) {
+                futures.add(executor.submit(() -> {
+                    requestPermits.acquire();
+                    try {
+                        globalPermits.acquire();
+                        try {
+                            return classifyOne(info, oneProblemJson, singleClassifier);
+                        } finally {
+                            globalPermits.release();
                         }
-                    } else if (!parsed.isNull()) {
-                        resultArray.add(parsed);
+                    } finally {
+                        requestPermits.release();
                     }
+                }));
+            }
+
+            List<List<JsonNode>> results = new ArrayList<>(futures.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (InterruptedException e) {
+                    futures.forEach(future -> future.cancel(true));
+                    Thread.currentThread().interrupt();
+                    CancellationException cancelled = new CancellationException("并发分类被中断，已取消剩余问题");
+                    cancelled.initCause(e);
+                    throw cancelled;
                 } catch (Exception e) {
-                    log.warn("解析单问题分类结果失败，跳过该条。原始结果: {}", oneResult, e);
+                    log.warn("单问题并发分类失败，跳过该条。问题: {}", problemJsonList.get(i), e);
+                    results.add(List.of());
                 }
             }
+            return results;
+        } finally {
+            // 正常结束时任务都已完成；中断时不等待被取消的任务退出
+            executor.shutdownNow();
+        }
+    }
 
-            // wq: 统一使用 pretty printer 输出，终端/日志更易读
-            String finalResult = objectMapper.writerWithDefaultPrettyPrinter()
-                    .writeValueAsString(resultArray);
-            log.info("RAG 分类最终合并结果: {}", finalResult);
-            return finalResult;
+    /**
+     * 对单个问题调用分类函数并解析结果；任何异常只影响当前问题，返回空列表
+     */
+    private List<JsonNode> classifyOne(String info,
+                                       String oneProblemJson,
+                                       BiFunction<String, String, String> singleClassifier) {
+        log.debug("开始对单个问题做 RAG 分类: {}", oneProblemJson);
 
+        String oneResultRaw;
+        try {
+            oneResultRaw = singleClassifier.apply(info, oneProblemJson);
         } catch (Exception e) {
-            log.error("doClassify 解析 problemsJson 失败，直接返回空数组", e);
-            return "[]";
+            log.warn("单问题分类调用失败，跳过该条。问题: {}", oneProblemJson, e);
+            return List.of();
+        }
+        return PipelineMetrics.record(PipelineMetrics.JSON_CLEANUP, () -> parseOne(oneProblemJson, oneResultRaw));
+    }
+
+    /**
+     * 解析单问题分类的模型输出：结构化输出模式下直接反序列化，否则清洗后解析；非 JSON 或解析失败返回空列表
+     */
+    List<JsonNode> parseOne(String oneProblemJson, String oneResultRaw) {
+        if (structuredOutput && oneResultRaw != null && !oneResultRaw.isBlank()) {
+            try {
+                List<ClassificationResult> results = objectMapper.readValue(oneResultRaw, RESULT_LIST);
+                List<JsonNode> nodes = new ArrayList<>(results.size());
+                for (ClassificationResult result : results) {
+                    nodes.add(objectMapper.valueToTree(result));
+                }
+                return nodes;
+            } catch (JsonProcessingException e) {
+                log.warn("单问题结构化输出反序列化失败，回退到文本清洗。问题: {}，原因: {}", oneProblemJson, e.getOriginalMessage());
+            }
+        }
+        String oneResult = cleanResult(oneResultRaw);
+        if (oneResult == null || oneResult.isBlank()) {
+            log.warn("单问题分类返回空或非JSON，跳过。问题: {}", oneProblemJson);
+            return List.of();
+        }
+
+        try {
+            JsonNode parsed = objectMapper.readTree(oneResult);
+            List<JsonNode> nodes = new ArrayList<>();
+            if (parsed.isArray()) {
+                parsed.forEach(nodes::add);
+            } else if (!parsed.isNull()) {
+                nodes.add(parsed);
+            }
+            return nodes;
+        } catch (Exception e) {
+            log.warn("解析单问题分类结果失败，跳过该条。原始结果: {}", oneResult, e);
+            return List.of();
         }
     }
 
     /**
      * 清理模型输出：去掉 ``` 包裹、XML/HTML 标签，并截断到首个 { 或 [
+     * 失败原因分类等其他单次 JSON 输出也复用这里
      */
-    private String cleanResult(String raw) {
+    public static String cleanResult(String raw) {
         if (raw == null) {
             return null;
         }
@@ -150,7 +358,7 @@ public class ProblemClassifyTool {
     }
 
     //将合法 JSON 转成缩进格式，便于终端阅读；异常时返回 null 走兜底
-    private String toPrettyOrNull(String json) {
+    String toPrettyOrNull(String json) {
         if (json == null || json.isBlank()) {
             return null;
         }
@@ -0,0 +1,216 @@
+package com.tao.tools;
+
+import com.tao.rag.CategoryDictionaryLoader;
+import com.tao.rag.InMemoryObjectionCategoryVectorStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.LivenessState;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 分类表导入调度 + 就绪状态
+ * - blocking：和以前一样在启动阶段（CommandLineRunner）同步导入，导入完才算启动完成；
+ * - background（默认）：Web 服务起来之后（ApplicationReadyEvent）在后台虚拟线程里导入，
+ *   启动不再被 embedding 卡住；导入 + 内存索引刷新全部完成之前，就绪状态为“未就绪”，
+ *   由 HealthController 的 /health/readiness 对外暴露，编排系统据此决定是否放流量。
+ *   同时通过 AvailabilityChangeEvent 发布 ReadinessState：导入期间为 REFUSING_TRAFFIC，READY 后为 ACCEPTING_TRAFFIC，
+ *   Spring Boot 启动完成时发布的 ACCEPTING_TRAFFIC 在未就绪时会被改回 REFUSING_TRAFFIC，
+ *   使 Actuator 的就绪探针（/actuator/health/readiness）与 /health/readiness 结论一致。
+ * pgvector 模式下的分类编号字典（{@link CategoryDictionaryLoader}）也在进入 READY 之前刷新。
+ * 任一文件导入失败（见 {@link CategoryCsvImportPipeline.ImportStats#failedFiles()}）或索引刷新失败都算失败，
+ * 只有全部完成才进入 READY。失败后按指数退避在后台重试；重试次数用完仍失败则把存活状态置为 BROKEN，
+ * 由编排系统重启实例，而不是一直停在“存活但未就绪”。
+ */
+@Slf4j
+@Component
+public class TaxonomyBootstrap implements CommandLineRunner {
+
+    /**
+     * 导入状态
+     */
+    public enum State {
+        PENDING, IMPORTING, READY, FAILED
+    }
+
+    private final List<TaxonomyImporter> importers;
+
+    private final List<VectorStore> vectorStores;
+
+    private final List<CategoryDictionaryLoader> dictionaryLoaders;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final boolean background;
+
+    private final int maxAttempts;
+
+    private final Duration initialBackoff;
+
+    private final Duration maxBackoff;
+
+    private volatile State state = State.PENDING;
+
+    // Spring Boot 已发布过 ACCEPTING_TRAFFIC（启动完成），此后就绪状态由这里维护；在 synchronized (this) 下访问
+    private boolean started;
+
+    /**
+     * @param maxAttempts    最多导入几次（含第一次），<= 0 不限次数，一直重试
+     * @param initialBackoff 第一次重试前的等待时间，之后每次翻倍
+     * @param maxBackoff     重试等待时间上限
+     */
+    public TaxonomyBootstrap(List<TaxonomyImporter> importers,
+                             List<VectorStore> vectorStores,
+                             List<CategoryDictionaryLoader> dictionaryLoaders,
+                             ApplicationEventPublisher eventPublisher,
+                             @Value("${app.import.mode:background}") String mode,
+                             @Value("${app.import.retry.max-attempts:5}") int maxAttempts,
+                             @Value("${app.import.retry.initial-backoff:10s}") Duration initialBackoff,
+                             @Value("${app.import.retry.max-backoff:5m}") Duration maxBackoff) {
+        this.importers = importers;
+        this.vectorStores = vectorStores;
+        this.dictionaryLoaders = dictionaryLoaders;
+        this.eventPublisher = eventPublisher;
+        this.background = !"blocking".equalsIgnoreCase(mode);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    @Override
+    public void run(String... args) {
+        if (!background && !runImports()) {
+            // 第一次在启动阶段同步执行，重试放到后台，不阻塞启动
+            startRetries();
+        }
+    }
+
+    /**
+     * Web 服务已启动，后台开始导入
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (background) {
+            Thread.ofVirtual().name("taxonomy-bootstrap").start(() -> {
+                if (!runImports()) {
+                    retry();
+                }
+            });
+        }
+    }
+
+    /**
+     * Spring Boot 启动完成后会发布 ACCEPTING_TRAFFIC；分类表尚未就绪时改回 REFUSING_TRAFFIC
+     */
+    @EventListener
+    public void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() != ReadinessState.ACCEPTING_TRAFFIC) {
+            return;
+        }
+        // 与 runImports 结束时的状态切换互斥，避免晚到的 REFUSING_TRAFFIC 覆盖刚发布的 ACCEPTING_TRAFFIC
+        synchronized (this) {
+            started = true;
+            if (!isReady()) {
+                AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+            }
+        }
+    }
+
+    public State state() {
+        return state;
+    }
+
+    /**
+     * 分类索引是否已完整可用
+     */
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    private void startRetries() {
+        Thread.ofVirtual().name("taxonomy-bootstrap-retry").start(this::retry);
+    }
+
+    /**
+     * 第一次导入已失败，按指数退避重试
+     */
+    private void retry() {
+        Duration backoff = initialBackoff;
+        for (int attempt = 2; maxAttempts <= 0 || attempt <= maxAttempts; attempt++) {
+            log.warn("分类表导入失败，{} 后进行第 {} 次尝试", backoff, attempt);
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (runImports()) {
+                return;
+            }
+            Duration doubled = backoff.multipliedBy(2);
+            backoff = doubled.compareTo(maxBackoff) > 0 ? maxBackoff : doubled;
+        }
+        log.error("分类表导入 {} 次均失败，存活状态置为 BROKEN，等待编排系统重启", maxAttempts);
+        AvailabilityChangeEvent.publish(eventPublisher, this, LivenessState.BROKEN);
+    }
+
+    /**
+     * 执行一次全部导入 + 内存索引刷新
+     * @return 是否全部成功
+     */
+    boolean runImports() {
+        state = State.IMPORTING;
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        long start = System.currentTimeMillis();
+        boolean failed = false;
+        for (TaxonomyImporter importer : importers) {
+            try {
+                importer.importTaxonomy();
+            } catch (Exception e) {
+                failed = true;
+                log.error("分类表 {} 导入失败", importer.tableName(), e);
+            }
+        }
+
+        // 导入完成后立即刷新内存索引，不等定时刷新
+        for (VectorStore vectorStore : vectorStores) {
+            if (vectorStore instanceof InMemoryObjectionCategoryVectorStore memoryStore) {
+                try {
+                    memoryStore.refresh();
+                } catch (Exception e) {
+                    failed = true;
+                    log.error("内存分类索引刷新失败", e);
+                }
+            }
+        }
+
+        // pgvector 模式没有内存索引，编号字典单独刷新
+        for (CategoryDictionaryLoader loader : dictionaryLoaders) {
+            try {
+                loader.refresh();
+            } catch (Exception e) {
+                failed = true;
+                log.error("分类字典刷新失败", e);
+            }
+        }
+
+        synchronized (this) {
+            state = failed ? State.FAILED : State.READY;
+            // 启动完成前就绪的，由 Spring Boot 自己发布 ACCEPTING_TRAFFIC
+            if (!failed && started) {
+                AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+            }
+        }
+        log.info("分类表导入结束，状态 {}，耗时 {} ms", state, System.currentTimeMillis() - start);
+        return !failed;
+    }
+}
@@ -0,0 +1,17 @@
+package com.tao.tools;
+
+/**
+ * 分类表导入任务，由 {@link TaxonomyBootstrap} 统一调度（启动时阻塞执行或服务启动后后台执行）
+ */
+public interface TaxonomyImporter {
+
+    /**
+     * 导入的目标表名，用于日志和就绪状态展示
+     */
+    String tableName();
+
+    /**
+     * 执行一次导入（增量）
+     */
+    void importTaxonomy() throws Exception;
+}
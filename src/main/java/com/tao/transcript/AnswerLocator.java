@@ -0,0 +1,157 @@
+package com.tao.transcript;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按问题的“原文摘要”在轮次列表中定位客户原话，取其后的客服发言作为“客服回答”
+ * 原文摘要由模型摘取，常有标点、个别字不同或只截取一部分，所以用模糊匹配：
+ * 去掉标点空白后，包含关系直接记满分，否则按字符二元组的 Dice 系数打分，取得分最高且不低于阈值的客户轮次。
+ */
+public final class AnswerLocator {
+
+    /**
+     * 匹配得分下限，低于该值视为找不到
+     */
+    static final double MIN_SCORE = 0.3;
+
+    private AnswerLocator() {
+    }
+
+    /**
+     * 定位原文摘要对应的客户轮次
+     *
+     * @param turns   轮次列表
+     * @param excerpt 原文摘要，可带“客户：”前缀，也可跨多轮（取其中最后一段客户发言）
+     * @return 匹配到的客户轮次下标，找不到返回 -1
+     */
+    public static int findCustomerTurn(List<Turn> turns, String excerpt) {
+        String target = normalize(lastCustomerSegment(excerpt));
+        if (target.isEmpty()) {
+            return -1;
+        }
+        Map<String, Integer> targetBigrams = bigrams(target);
+        int best = -1;
+        double bestScore = MIN_SCORE;
+        for (Turn turn : turns) {
+            if (turn.speaker() != Speaker.CUSTOMER) {
+                continue;
+            }
+            double score = similarity(target, targetBigrams, normalize(turn.text()));
+            // 分数相同取靠前的轮次
+            if (score > bestScore || (best < 0 && score >= bestScore)) {
+                best = turn.index();
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 客户轮次之后、下一个客户轮次之前的客服发言
+     */
+    public static List<Turn> answerAfter(List<Turn> turns, int customerTurn) {
+        List<Turn> answer = new ArrayList<>();
+        for (int i = customerTurn + 1; i < turns.size(); i++) {
+            Turn turn = turns.get(i);
+            if (turn.speaker() == Speaker.CUSTOMER) {
+                break;
+            }
+            if (turn.speaker() == Speaker.AGENT) {
+                answer.add(turn);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * 定位原文摘要并返回其后的客服回答（多轮用空格连接），找不到返回空字符串
+     */
+    public static String locateAnswer(List<Turn> turns, String excerpt) {
+        return locateAnswer(turns, findCustomerTurn(turns, excerpt));
+    }
+
+    /**
+     * 已定位的客户轮次之后的客服回答（多轮用空格连接），customerTurn 为负时返回空字符串
+     */
+    public static String locateAnswer(List<Turn> turns, int customerTurn) {
+        if (customerTurn < 0) {
+            return "";
+        }
+        List<String> parts = new ArrayList<>();
+        for (Turn turn : answerAfter(turns, customerTurn)) {
+            parts.add(turn.text());
+        }
+        return String.join(" ", parts);
+    }
+
+    /**
+     * 摘要里有说话人标记时只取最后一段客户发言，没有标记时整段使用
+     */
+    static String lastCustomerSegment(String excerpt) {
+        if (excerpt == null) {
+            return "";
+        }
+        List<Turn> parts = TranscriptParser.parse(excerpt);
+        for (int i = parts.size() - 1; i >= 0; i--) {
+            if (parts.get(i).speaker() == Speaker.CUSTOMER) {
+                return parts.get(i).text();
+            }
+        }
+        return parts.isEmpty() ? "" : parts.get(parts.size() - 1).text();
+    }
+
+    static double similarity(String a, String b) {
+        String na = normalize(a);
+        return na.isEmpty() ? 0 : similarity(na, bigrams(na), normalize(b));
+    }
+
+    private static double similarity(String target, Map<String, Integer> targetBigrams, String candidate) {
+        if (candidate.isEmpty()) {
+            return 0;
+        }
+        if (candidate.contains(target) || (target.contains(candidate) && candidate.length() * 2 >= target.length())) {
+            return 1;
+        }
+        Map<String, Integer> candidateBigrams = bigrams(candidate);
+        int total = targetBigrams.values().stream().mapToInt(Integer::intValue).sum()
+                + candidateBigrams.values().stream().mapToInt(Integer::intValue).sum();
+        if (total == 0) {
+            return 0;
+        }
+        int common = 0;
+        for (Map.Entry<String, Integer> entry : targetBigrams.entrySet()) {
+            common += Math.min(entry.getValue(), candidateBigrams.getOrDefault(entry.getKey(), 0));
+        }
+        return 2.0 * common / total;
+    }
+
+    /**
+     * 只保留文字和数字，英文转小写
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        text.codePoints()
+                .filter(Character::isLetterOrDigit)
+                .map(Character::toLowerCase)
+                .forEach(sb::appendCodePoint);
+        return sb.toString();
+    }
+
+    private static Map<String, Integer> bigrams(String text) {
+        Map<String, Integer> counts = new HashMap<>();
+        if (text.length() == 1) {
+            counts.put(text, 1);
+            return counts;
+        }
+        for (int i = 0; i + 1 < text.length(); i++) {
+            counts.merge(text.substring(i, i + 2), 1, Integer::sum);
+        }
+        return counts;
+    }
+}
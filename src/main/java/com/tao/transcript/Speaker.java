@@ -0,0 +1,27 @@
+package com.tao.transcript;
+
+/**
+ * 对话中的说话人
+ */
+public enum Speaker {
+
+    AGENT("客服"),
+
+    CUSTOMER("客户"),
+
+    // 第一个说话人标记之前的内容（如录音抬头）
+    UNKNOWN("");
+
+    private final String label;
+
+    Speaker(String label) {
+        this.label = label;
+    }
+
+    /**
+     * 转写文本中的说话人前缀，如“客服”
+     */
+    public String label() {
+        return label;
+    }
+}
@@ -0,0 +1,184 @@
+package com.tao.transcript;
+
+import com.tao.metrics.PipelineMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 转写文本预处理：在进入提示词之前规范化、压缩对话，抽取、逐问题分类、失败原因分类都复用压缩后的文本
+ * 提示词预填充耗时与输入长度成正比，而原始转写里有大量“客户：嗯。”之类的附和和 ASR 噪声。
+ * 依次执行：
+ * - 规范化：合并连续空白、重复标点；
+ * - 丢弃只有语气词（嗯、哦、啊……）或没有任何文字的轮次；“好的”“对”等可能表示同意的短句保留；
+ * - 合并连续同一说话人的轮次（丢掉附和后，被“嗯”隔开的客服话术会连在一起）；
+ * - 同一轮内连续重复的分句只保留一次（“喂，喂，您好”）；
+ * - token 预算：超出时从首尾两端交替保留轮次，中间用一行省略说明代替。
+ */
+@Slf4j
+@Component
+public class TranscriptCompactor {
+
+    /**
+     * 只由这些字组成的轮次视为附和/语气词
+     */
+    private static final String FILLER_CHARS = "嗯恩哦噢喔啊呃额唉哎诶欸喂嘿哈呀哼嗷";
+
+    // 分句：保留结尾标点；半角逗号、句点不作分隔，避免拆开 9.9、1,000 这类数字
+    private static final Pattern CLAUSE = Pattern.compile("[^，。！!？?；;…]+[，。！!？?；;…]*");
+
+    private static final Pattern REPEATED_PUNCTUATION = Pattern.compile("([，。！!？?；;、~])\\1+");
+
+    private static final Pattern WHITESPACE = Pattern.compile("[\\s\\u3000]+");
+
+    private static final String OMITTED = "……（中间省略 %d 轮对话）";
+
+    private final boolean enabled;
+
+    private final int maxTokens;
+
+    private final TokenCountEstimator tokenEstimator;
+
+    @Autowired
+    public TranscriptCompactor(@Value("${app.transcript.compact.enabled:true}") boolean enabled,
+                               @Value("${app.transcript.compact.max-tokens:3000}") int maxTokens) {
+        this(enabled, maxTokens, new JTokkitTokenCountEstimator());
+    }
+
+    /**
+     * @param maxTokens 压缩后对话的 token 上限，<= 0 不限制
+     */
+    public TranscriptCompactor(boolean enabled, int maxTokens, TokenCountEstimator tokenEstimator) {
+        this.enabled = enabled;
+        this.maxTokens = maxTokens;
+        this.tokenEstimator = tokenEstimator;
+    }
+
+    /**
+     * 压缩转写文本；关闭时原样返回
+     */
+    public String compact(String info) {
+        if (!enabled || info == null || info.isBlank()) {
+            return info;
+        }
+        return PipelineMetrics.record(PipelineMetrics.TRANSCRIPT_COMPACT, () -> {
+            List<Turn> turns = TranscriptParser.parse(info);
+            String compacted = TranscriptParser.format(withinBudget(compactTurns(turns)));
+            log.debug("对话压缩：{} 轮 {} 字 -> {} 字", turns.size(), info.length(), compacted.length());
+            return compacted;
+        });
+    }
+
+    /**
+     * 丢弃附和、合并同一说话人、去掉重复分句，不做 token 截断；返回的轮次重新编号
+     */
+    public static List<Turn> compactTurns(List<Turn> turns) {
+        List<Turn> result = new ArrayList<>();
+        for (Turn turn : turns) {
+            String text = normalize(turn.text());
+            if (isFiller(text)) {
+                continue;
+            }
+            if (!result.isEmpty() && result.get(result.size() - 1).speaker() == turn.speaker()) {
+                Turn previous = result.remove(result.size() - 1);
+                text = previous.text() + " " + text;
+            }
+            result.add(new Turn(result.size(), turn.speaker(), dedupeClauses(text)));
+        }
+        return result;
+    }
+
+    /**
+     * 超出 token 预算时首尾交替保留轮次（开场白和结尾的拒绝/同意通常最重要），中间插入省略说明
+     */
+    List<Turn> withinBudget(List<Turn> turns) {
+        if (maxTokens <= 0) {
+            return turns;
+        }
+        int[] cost = new int[turns.size()];
+        int total = 0;
+        for (int i = 0; i < turns.size(); i++) {
+            // 每轮另算 1 个换行
+            cost[i] = tokenEstimator.estimate(turns.get(i).format()) + 1;
+            total += cost[i];
+        }
+        if (total <= maxTokens) {
+            return turns;
+        }
+        int budget = maxTokens - tokenEstimator.estimate(OMITTED.formatted(turns.size())) - 1;
+        int head = 0;
+        int tail = turns.size();
+        boolean fromHead = true;
+        while (head < tail) {
+            int next = fromHead ? head : tail - 1;
+            if (cost[next] > budget) {
+                // 当前一端放不下就只尝试另一端，两端都放不下时结束
+                int other = fromHead ? tail - 1 : head;
+                if (other == next || cost[other] > budget) {
+                    break;
+                }
+                fromHead = !fromHead;
+                continue;
+            }
+            budget -= cost[next];
+            if (fromHead) {
+                head++;
+            } else {
+                tail--;
+            }
+            fromHead = !fromHead;
+        }
+        List<Turn> kept = new ArrayList<>(turns.subList(0, head));
+        kept.add(new Turn(head, Speaker.UNKNOWN, OMITTED.formatted(tail - head)));
+        for (int i = tail; i < turns.size(); i++) {
+            kept.add(new Turn(kept.size(), turns.get(i).speaker(), turns.get(i).text()));
+        }
+        log.info("对话超出 {} token 预算，省略中间 {} 轮", maxTokens, tail - head);
+        return kept;
+    }
+
+    static String normalize(String text) {
+        String collapsed = WHITESPACE.matcher(text).replaceAll(" ").strip();
+        return REPEATED_PUNCTUATION.matcher(collapsed).replaceAll("$1");
+    }
+
+    /**
+     * 没有任何文字，或文字全是语气词
+     */
+    static boolean isFiller(String text) {
+        return text.codePoints()
+                .filter(Character::isLetterOrDigit)
+                .allMatch(c -> FILLER_CHARS.indexOf(c) >= 0);
+    }
+
+    /**
+     * 连续重复的分句只保留一次（按去掉标点、空白后的文字比较）
+     */
+    static String dedupeClauses(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        String previous = null;
+        Matcher matcher = CLAUSE.matcher(text);
+        int last = 0;
+        while (matcher.find()) {
+            sb.append(text, last, matcher.start());
+            last = matcher.end();
+            String clause = matcher.group();
+            String key = AnswerLocator.normalize(clause);
+            if (key.isEmpty() || key.equals(previous)) {
+                continue;
+            }
+            previous = key;
+            sb.append(clause);
+        }
+        sb.append(text, last, text.length());
+        return sb.toString().strip();
+    }
+}
@@ -0,0 +1,85 @@
+package com.tao.transcript;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 把“客服：... / 客户：...”格式的转写文本切成轮次列表
+ * - 全角、半角冒号都认；同一行里出现多个说话人标记（ASR 合并成一行）也会拆开；
+ * - 没有说话人前缀的行归到上一轮（同一段话被换行拆开）；
+ * - 第一个标记之前的内容记为 {@link Speaker#UNKNOWN}；
+ * - 独占一行的省略说明（{@link TranscriptCompactor}、{@link TranscriptWindow} 插入的“……（中间省略 N 轮对话）”）
+ *   单独成为一轮 UNKNOWN，不会接到上一轮后面，压缩后的文本再次切分时轮次与压缩前一致。
+ */
+public final class TranscriptParser {
+
+    // 第 1 组：说话人标记；第 2 组：独占一行的省略说明
+    private static final Pattern TURN_MARK = Pattern.compile(
+            "(客服|客户)\\s*[:：]|^[ \\t]*(……（(?:前面|中间|后面)省略 \\d+ 轮对话）)[ \\t]*$", Pattern.MULTILINE);
+
+    private TranscriptParser() {
+    }
+
+    public static List<Turn> parse(String info) {
+        if (info == null || info.isBlank()) {
+            return List.of();
+        }
+        List<Turn> turns = new ArrayList<>();
+        Speaker speaker = Speaker.UNKNOWN;
+        StringBuilder text = new StringBuilder();
+        Matcher matcher = TURN_MARK.matcher(info);
+        int last = 0;
+        while (matcher.find()) {
+            append(text, info.substring(last, matcher.start()));
+            add(turns, speaker, text);
+            text.setLength(0);
+            last = matcher.end();
+            if (matcher.group(2) != null) {
+                text.append(matcher.group(2));
+                add(turns, Speaker.UNKNOWN, text);
+                text.setLength(0);
+                speaker = Speaker.UNKNOWN;
+                continue;
+            }
+            speaker = "客服".equals(matcher.group(1)) ? Speaker.AGENT : Speaker.CUSTOMER;
+        }
+        append(text, info.substring(last));
+        add(turns, speaker, text);
+        return turns;
+    }
+
+    /**
+     * 轮次列表还原成转写文本，每轮一行
+     */
+    public static String format(List<Turn> turns) {
+        StringJoiner joiner = new StringJoiner("\n");
+        for (Turn turn : turns) {
+            joiner.add(turn.format());
+        }
+        return joiner.toString();
+    }
+
+    // 同一轮内的多行用空格连接
+    private static void append(StringBuilder text, String segment) {
+        for (String line : segment.split("\\R")) {
+            String stripped = line.strip();
+            if (stripped.isEmpty()) {
+                continue;
+            }
+            if (!text.isEmpty()) {
+                text.append(' ');
+            }
+            text.append(stripped);
+        }
+    }
+
+    private static void add(List<Turn> turns, Speaker speaker, StringBuilder text) {
+        // 说话人标记后面没有内容的空轮次丢掉
+        if (!text.isEmpty()) {
+            turns.add(new Turn(turns.size(), speaker, text.toString()));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.tao.transcript;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 逐问题分类时只截取问题附近的对话：按原文摘要定位客户轮次（{@link AnswerLocator#findCustomerTurn}），
+ * 取其前 before 轮、后 after 轮，被截掉的部分各用一行省略说明代替，让模型知道这不是完整对话。
+ * 一通录音有 N 个问题时，每次分类调用的预填充 token 从整段对话降到窗口大小。
+ */
+public final class TranscriptWindow {
+
+    private TranscriptWindow() {
+    }
+
+    /**
+     * @param turns   完整轮次列表
+     * @param excerpt 问题的原文摘要
+     * @param before  客户轮次之前保留的轮数
+     * @param after   客户轮次之后保留的轮数，至少为 1 才能带上客服的回答
+     * @return 窗口内的对话文本；原文摘要定位不到时返回 null，调用方改用完整对话
+     */
+    public static String around(List<Turn> turns, String excerpt, int before, int after) {
+        int customerTurn = AnswerLocator.findCustomerTurn(turns, excerpt);
+        return customerTurn < 0 ? null : around(turns, customerTurn, before, after);
+    }
+
+    /**
+     * 调用方已定位好客户轮次时使用，避免重复匹配
+     *
+     * @param customerTurn 客户轮次下标（{@link AnswerLocator#findCustomerTurn} 的结果，不能为负）
+     */
+    public static String around(List<Turn> turns, int customerTurn, int before, int after) {
+        int from = Math.max(0, customerTurn - Math.max(0, before));
+        int to = Math.min(turns.size(), customerTurn + Math.max(0, after) + 1);
+        List<Turn> window = new ArrayList<>(to - from + 2);
+        if (from > 0) {
+            window.add(new Turn(-1, Speaker.UNKNOWN, "……（前面省略 %d 轮对话）".formatted(from)));
+        }
+        window.addAll(turns.subList(from, to));
+        if (to < turns.size()) {
+            window.add(new Turn(-1, Speaker.UNKNOWN, "……（后面省略 %d 轮对话）".formatted(turns.size() - to)));
+        }
+        return TranscriptParser.format(window);
+    }
+}
@@ -0,0 +1,18 @@
+package com.tao.transcript;
+
+/**
+ * 对话中的一轮发言
+ *
+ * @param index   在轮次列表中的下标（从 0 开始）
+ * @param speaker 说话人
+ * @param text    发言内容，不含“客服：”等前缀
+ */
+public record Turn(int index, Speaker speaker, String text) {
+
+    /**
+     * 还原成转写文本的一行：“客服：...”
+     */
+    public String format() {
+        return speaker == Speaker.UNKNOWN ? text : speaker.label() + "：" + text;
+    }
+}
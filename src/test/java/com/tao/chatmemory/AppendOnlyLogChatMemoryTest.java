@@ -0,0 +1,113 @@
+package com.tao.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * AppendOnlyLogChatMemory 测试：只用本地临时目录，不依赖 Ollama / Postgres
+ */
+class AppendOnlyLogChatMemoryTest {
+
+    private static final String LONG_REPLY = "您好，这边是电信客服，给您介绍一下本月的流量包优惠活动，".repeat(20);
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 追加后按顺序读回，记录过多时压实成一条
+     */
+    @Test
+    void appendsAndCompacts() throws Exception {
+        AppendOnlyLogChatMemory memory = new AppendOnlyLogChatMemory(dir.toString(), true, 4);
+        for (int i = 0; i < 10; i++) {
+            memory.add("c1", List.of(new UserMessage("q" + i), new AssistantMessage(LONG_REPLY)));
+        }
+        Path file = memory.layout().path("c1", false);
+        long beforeCompaction = Files.size(file);
+
+        List<Message> messages = memory.get("c1");
+        Assertions.assertEquals(20, messages.size());
+        Assertions.assertEquals("q9", messages.get(18).getText());
+        Assertions.assertTrue(Files.size(file) < beforeCompaction, "压实后文件应变小");
+
+        memory.add("c1", List.of(new UserMessage("q10")));
+        Assertions.assertEquals(21, memory.get("c1").size());
+    }
+
+    /**
+     * 追加写到一半抛 IOException：失败抛给调用方；下一次追加先截掉残缺尾部，之后的消息不会因为接在坏数据后面而丢失
+     */
+    @Test
+    void appendAfterFailedAppendRepairsFirst() {
+        AtomicBoolean failNext = new AtomicBoolean();
+        AppendOnlyLogChatMemory memory = new AppendOnlyLogChatMemory(dir.toString(), false, 100) {
+            @Override
+            void writeRecord(FileChannel channel, byte[] record) throws IOException {
+                if (failNext.getAndSet(false)) {
+                    channel.write(ByteBuffer.wrap(record, 0, record.length / 2));
+                    throw new IOException("mock disk failure");
+                }
+                super.writeRecord(channel, record);
+            }
+        };
+        memory.add("c1", List.of(new UserMessage("q0")));
+        failNext.set(true);
+        Assertions.assertThrows(UncheckedIOException.class, () -> memory.add("c1", List.of(new UserMessage("q1"))));
+        memory.add("c1", List.of(new UserMessage("q2")));
+
+        List<Message> messages = memory.get("c1");
+        Assertions.assertEquals(List.of("q0", "q2"), messages.stream().map(Message::getText).toList());
+    }
+
+    /**
+     * 尾部记录写了一半：读取时丢弃残缺记录，之后的追加仍可读
+     */
+    @Test
+    void recoversFromTornTail() throws Exception {
+        AppendOnlyLogChatMemory memory = new AppendOnlyLogChatMemory(dir.toString(), false, 100);
+        memory.add("c1", List.of(new UserMessage("q0")));
+        memory.add("c1", List.of(new UserMessage("q1")));
+        Path file = memory.layout().path("c1", false);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        // 新实例模拟进程重启
+        AppendOnlyLogChatMemory restarted = new AppendOnlyLogChatMemory(dir.toString(), false, 100);
+        restarted.add("c1", List.of(new UserMessage("q2")));
+        List<Message> messages = restarted.get("c1");
+        Assertions.assertEquals(List.of("q0", "q2"), messages.stream().map(Message::getText).toList());
+    }
+
+    /**
+     * 写回缓存在追加日志上只追加增量，不整会话覆盖
+     */
+    @Test
+    void writeBackAppendsOnlyNewMessages() {
+        AppendOnlyLogChatMemory log = new AppendOnlyLogChatMemory(dir.toString(), true, 100);
+        WriteBackChatMemory memory = new WriteBackChatMemory(log, 100, Duration.ofMinutes(10), Duration.ofHours(1));
+        memory.add("c1", List.of(new UserMessage("q0")));
+        memory.flush();
+        memory.add("c1", List.of(new UserMessage("q1")));
+        memory.flush();
+        memory.close();
+
+        Assertions.assertEquals(List.of("q0", "q1"), log.get("c1").stream().map(Message::getText).toList());
+    }
+}
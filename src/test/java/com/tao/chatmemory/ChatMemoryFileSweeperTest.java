@@ -0,0 +1,92 @@
+package com.tao.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+
+/**
+ * 分片目录与会话文件清理测试：只用本地临时目录
+ */
+class ChatMemoryFileSweeperTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 文件写在两级分片子目录下，旧的平铺文件首次访问时迁移
+     */
+    @Test
+    void shardsFilesAndMigratesFlatLayout() throws Exception {
+        FileBasedChatMemory memory = new FileBasedChatMemory(dir.toString());
+        memory.add("c1", List.of(new UserMessage("你好")));
+        Path file = memory.layout().path("c1", false);
+        Assertions.assertEquals(dir, file.getParent().getParent().getParent());
+
+        Files.move(file, dir.resolve("c1.kryo"));
+        Assertions.assertEquals("你好", memory.get("c1").get(0).getText());
+        Assertions.assertTrue(Files.exists(file));
+        Assertions.assertFalse(Files.exists(dir.resolve("c1.kryo")));
+    }
+
+    /**
+     * 超过 TTL 未访问的会话删除，超出容量时先删最久未访问的
+     */
+    @Test
+    void expiresByTtlThenEvictsLeastRecentlyUsed() throws Exception {
+        FileBasedChatMemory memory = new FileBasedChatMemory(dir.toString());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            memory.add("c" + i, List.of(new UserMessage("消息".repeat(100))));
+            // c0 最旧（已过期），c4 最新
+            Path file = memory.layout().path("c" + i, false);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(now - Duration.ofHours(10 - i).toMillis()));
+        }
+        long oneFile = Files.size(memory.layout().path("c4", false));
+
+        ChatMemoryFileSweeper sweeper = new ChatMemoryFileSweeper(
+                memory.layout(), memory, Duration.ofHours(9).plusMinutes(30), oneFile * 3);
+        ChatMemoryFileSweeper.SweepStats stats = sweeper.sweep();
+        sweeper.close();
+
+        Assertions.assertEquals(5, stats.scanned());
+        Assertions.assertEquals(1, stats.expired());
+        // 剩 4 个超出 3 个的容量，清到 90% 以下只能留 2 个
+        Assertions.assertEquals(2, stats.evicted());
+        Set<String> left = memory.findConversationIds().stream().collect(Collectors.toSet());
+        Assertions.assertEquals(Set.of("c3", "c4"), left);
+    }
+
+    /**
+     * 经过写回缓存删除：缓存中的会话一并失效，未写回的消息不会在关闭时把已删除的会话写回来
+     */
+    @Test
+    void sweepThroughWriteBackInvalidatesCache() throws Exception {
+        FileBasedChatMemory file = new FileBasedChatMemory(dir.toString());
+        WriteBackChatMemory memory = new WriteBackChatMemory(file, 100, Duration.ofMinutes(10), Duration.ofHours(1));
+        memory.add("c1", List.of(new UserMessage("旧消息")));
+        memory.flush();
+        Path path = file.layout().path("c1", false);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - Duration.ofDays(30).toMillis()));
+        // 缓存中还有一条未写回的消息
+        memory.add("c1", List.of(new UserMessage("未写回")));
+
+        ChatMemoryFileSweeper sweeper = new ChatMemoryFileSweeper(file.layout(), memory, Duration.ofDays(7), 0);
+        Assertions.assertEquals(1, sweeper.sweep().expired());
+        sweeper.close();
+
+        Assertions.assertTrue(memory.get("c1").isEmpty(), "删除后缓存不应再返回旧会话");
+        memory.close();
+        Assertions.assertFalse(Files.exists(path));
+        Assertions.assertTrue(file.get("c1").isEmpty());
+    }
+}
@@ -0,0 +1,95 @@
+package com.tao.chatmemory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.FileOutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * FileBasedChatMemory 测试：只用本地临时目录，不依赖 Ollama / Postgres
+ */
+class FileBasedChatMemoryTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 同一会话并发追加不丢消息
+     */
+    @Test
+    void concurrentAddsOnSameConversationAreNotLost() {
+        FileBasedChatMemory memory = new FileBasedChatMemory(dir.toString());
+        int threads = 16;
+        int perThread = 10;
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        memory.add("c1", List.of(new UserMessage(id + "-" + i)));
+                    }
+                });
+            }
+        }
+        Assertions.assertEquals(threads * perThread, memory.get("c1").size());
+    }
+
+    /**
+     * 注册过的消息类型都能往返，metadata 保留
+     */
+    @Test
+    void roundTripsRegisteredMessageTypes() {
+        FileBasedChatMemory memory = new FileBasedChatMemory(dir.toString());
+        List<Message> messages = List.of(
+                new SystemMessage("你是一个客服分析智能体"),
+                new UserMessage("这不是要扣费吧"),
+                new AssistantMessage("不会扣费", Map.of("model", "qwen3", "eval_count", 42),
+                        List.of(new AssistantMessage.ToolCall("1", "function", "lookup", "{}"))));
+        memory.add("c1", messages);
+
+        List<Message> loaded = memory.get("c1");
+        Assertions.assertEquals(3, loaded.size());
+        Assertions.assertEquals(MessageType.SYSTEM, loaded.get(0).getMessageType());
+        Assertions.assertEquals("这不是要扣费吧", loaded.get(1).getText());
+        AssistantMessage assistant = (AssistantMessage) loaded.get(2);
+        Assertions.assertEquals(42, assistant.getMetadata().get("eval_count"));
+        Assertions.assertEquals("lookup", assistant.getToolCalls().get(0).name());
+    }
+
+    /**
+     * 旧格式（未注册、类名编码）的文件仍能读取，下次写入后转换为新格式
+     */
+    @Test
+    void readsLegacyFiles() throws Exception {
+        Kryo legacy = new Kryo();
+        legacy.setRegistrationRequired(false);
+        legacy.setInstantiatorStrategy(new StdInstantiatorStrategy());
+        List<Message> old = new ArrayList<>(List.of(new UserMessage("旧消息")));
+        try (Output output = new Output(new FileOutputStream(dir.resolve("c1.kryo").toFile()))) {
+            legacy.writeObject(output, old);
+        }
+
+        FileBasedChatMemory memory = new FileBasedChatMemory(dir.toString());
+        Assertions.assertEquals("旧消息", memory.get("c1").get(0).getText());
+        memory.add("c1", List.of(new AssistantMessage("新消息")));
+        List<Message> loaded = memory.get("c1");
+        Assertions.assertEquals(2, loaded.size());
+        Assertions.assertEquals("新消息", loaded.get(1).getText());
+    }
+}
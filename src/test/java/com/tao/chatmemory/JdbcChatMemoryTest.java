@@ -0,0 +1,161 @@
+package com.tao.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+
+
+/**
+ * JdbcChatMemory 测试：JdbcTemplate 用 Mockito 模拟，不依赖 Postgres；不调用 start，没有后台写入和监听线程
+ */
+class JdbcChatMemoryTest {
+
+    private static final String TABLE = "chat_memory_message";
+
+    private JdbcTemplate jdbc;
+
+    private JdbcChatMemory memory;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = Mockito.mock(JdbcTemplate.class);
+        memory = new JdbcChatMemory(jdbc, TABLE, 64, Duration.ofHours(1), 2, 100);
+    }
+
+    /**
+     * 区间读取合并三部分：更早的区间查库、缓存的最近一段、尚未写入的待写消息
+     */
+    @Test
+    void getRangeMergesQueriedCachedAndPending() throws Exception {
+        // 库里 4 条，缓存最近 2 条
+        mockTail(4, "m2", "m3");
+        Mockito.when(jdbc.query(contains("OFFSET"), ArgumentMatchers.<RowMapper<Message>>any(), eq("c1"), eq(1), eq(3)))
+                .thenReturn(List.of(message("m1"), message("m2"), message("m3")));
+        memory.append("c1", List.of(message("m4")));
+
+        Assertions.assertEquals(5, memory.count("c1"));
+        Assertions.assertEquals(List.of("m2", "m3", "m4"), texts(memory.getRange("c1", 2, 5)));
+        Mockito.verify(jdbc, Mockito.never())
+                .query(contains("OFFSET"), ArgumentMatchers.<RowMapper<Message>>any(), eq("c1"), eq(1), eq(3));
+
+        Assertions.assertEquals(List.of("m1", "m2", "m3", "m4"), texts(memory.getRange("c1", 1, 10)));
+        Assertions.assertEquals(List.of("m4"), texts(memory.getRange("c1", 4, 5)));
+        // 条数和最近一段只查一次，之后走缓存
+        Mockito.verify(jdbc, Mockito.times(1))
+                .query(contains("AS total"), ArgumentMatchers.<RowMapper<Object>>any(), eq("c1"), eq("c1"), eq(2));
+    }
+
+    /**
+     * 加载缓存期间收到其他实例的失效通知：本次读取照常返回，但加载结果不留在缓存里，下次重新查库
+     */
+    @Test
+    void invalidationDuringLoadDoesNotCacheStaleState() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        Mockito.when(jdbc.query(contains("AS total"), ArgumentMatchers.<RowMapper<Object>>any(), eq("c1"), eq("c1"), eq(2)))
+                .thenAnswer(invocation -> {
+                    if (loads.incrementAndGet() == 1) {
+                        memory.onNotification("other-node|c1");
+                    }
+                    return mapTail(invocation.getArgument(1), 1, "m0");
+                });
+
+        Assertions.assertEquals(1, memory.count("c1"));
+        Assertions.assertEquals(1, memory.count("c1"));
+        Assertions.assertEquals(1, memory.count("c1"));
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    /**
+     * 某个会话的数据写不进去时按会话逐个重试：其他会话照常写入，坏会话连续失败达到上限后被丢弃，不再阻塞后续写入
+     */
+    @Test
+    void poisonConversationIsIsolatedAndEventuallyDropped() throws Exception {
+        mockTail(0);
+        List<String> written = new ArrayList<>();
+        Mockito.when(jdbc.batchUpdate(anyString(), Mockito.any(BatchPreparedStatementSetter.class)))
+                .thenAnswer(invocation -> {
+                    List<String> ids = conversationsOf(invocation.getArgument(1));
+                    if (ids.contains("bad")) {
+                        throw new DataIntegrityViolationException("value too long");
+                    }
+                    written.addAll(ids);
+                    return new int[ids.size()];
+                });
+
+        memory.append("good", List.of(new UserMessage("你好"), new AssistantMessage("您好")));
+        memory.append("bad", List.of(new UserMessage("坏数据")));
+        Assertions.assertEquals(2, memory.flush());
+        Assertions.assertEquals(List.of("good", "good"), written);
+        Assertions.assertEquals(1, memory.count("bad"), "未达到上限前坏会话的消息仍保留");
+
+        for (int i = 1; i < JdbcChatMemory.MAX_WRITE_ATTEMPTS; i++) {
+            Assertions.assertEquals(0, memory.flush());
+        }
+        Assertions.assertEquals(0, memory.count("bad"));
+
+        memory.append("good", List.of(new UserMessage("再问一句")));
+        Assertions.assertEquals(1, memory.flush());
+        Assertions.assertEquals(List.of("good", "good", "good"), written);
+    }
+
+    /**
+     * 合并查询的结果：每行带总条数，按 seq 倒序
+     */
+    private void mockTail(int total, String... newestLast) throws Exception {
+        Mockito.when(jdbc.query(contains("AS total"), ArgumentMatchers.<RowMapper<Object>>any(), anyString(), anyString(), eq(2)))
+                .thenAnswer(invocation -> mapTail(invocation.getArgument(1), total, newestLast));
+    }
+
+    private static List<Object> mapTail(RowMapper<Object> mapper, int total, String... newestLast) throws Exception {
+        List<Object> rows = new ArrayList<>();
+        for (int i = newestLast.length - 1; i >= 0; i--) {
+            ResultSet rs = Mockito.mock(ResultSet.class);
+            Mockito.when(rs.getInt("total")).thenReturn(total);
+            Mockito.when(rs.getBytes("payload")).thenReturn(ChatMessageKryo.encodeRecord(List.of(message(newestLast[i]))));
+            rows.add(mapper.mapRow(rs, rows.size()));
+        }
+        return rows;
+    }
+
+    /**
+     * 通过 setter 写入 PreparedStatement 的第 1 个参数取出这一批的会话 id
+     */
+    private static List<String> conversationsOf(BatchPreparedStatementSetter setter) throws Exception {
+        List<String> ids = new ArrayList<>();
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        Mockito.doAnswer(invocation -> ids.add(invocation.getArgument(1)))
+                .when(ps).setString(eq(1), anyString());
+        for (int i = 0; i < setter.getBatchSize(); i++) {
+            setter.setValues(ps, i);
+        }
+        return ids;
+    }
+
+    private static Message message(String text) {
+        return new UserMessage(text);
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+}
@@ -0,0 +1,157 @@
+package com.tao.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * SummarizingWindowChatMemory 测试：模型用桩实现，不依赖 Ollama
+ */
+class SummarizingWindowChatMemoryTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 窗口受条数限制，窗口外的旧消息进入摘要，摘要放在窗口前面
+     */
+    @Test
+    void keepsBoundedWindowAndFoldsOlderTurnsIntoSummary() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ChatModel model = prompt -> {
+            calls.incrementAndGet();
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("<think></think>用户询问了套餐资费"))));
+        };
+        SummarizingWindowChatMemory memory = new SummarizingWindowChatMemory(
+                new FileBasedChatMemory(dir.toString()), model, new JTokkitTokenCountEstimator(),
+                10_000, 4, 2, 200, 1);
+        for (int i = 0; i < 10; i++) {
+            memory.add("c1", List.of(new UserMessage("问题" + i), new AssistantMessage("回答" + i)));
+        }
+
+        List<Message> first = memory.get("c1");
+        Assertions.assertEquals(4, first.size());
+        Assertions.assertEquals("问题8", first.get(0).getText());
+
+        // 摘要在后台生成，这里直接同步执行一次代替等待
+        memory.summarize("c1");
+        List<Message> second = memory.get("c1");
+        Assertions.assertEquals(5, second.size());
+        Assertions.assertEquals(MessageType.SYSTEM, second.get(0).getMessageType());
+        Assertions.assertTrue(second.get(0).getText().endsWith("用户询问了套餐资费"), second.get(0).getText());
+        Assertions.assertTrue(calls.get() >= 1);
+        memory.close();
+    }
+
+    /**
+     * 摘要按批生成，未攒够一批时窗口外的消息留在窗口里：每一轮 prompt 中摘要覆盖的消息加上窗口内的消息正好是完整历史
+     */
+    @Test
+    void everyMessageIsInSummaryOrWindow() throws Exception {
+        ChatModel model = prompt -> new ChatResponse(List.of(new Generation(new AssistantMessage("摘要"))));
+        SummarizingWindowChatMemory memory = new SummarizingWindowChatMemory(
+                new FileBasedChatMemory(dir.toString()), model, new JTokkitTokenCountEstimator(),
+                10_000, 4, 3, 200, 1);
+        List<String> history = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            memory.add("c1", List.of(new UserMessage("问题" + i), new AssistantMessage("回答" + i)));
+            history.add("问题" + i);
+            history.add("回答" + i);
+
+            List<Message> prompt = memory.get("c1");
+            int covered = 0;
+            List<Message> window = prompt;
+            if (!prompt.isEmpty() && prompt.get(0).getMessageType() == MessageType.SYSTEM) {
+                covered = ((Number) prompt.get(0).getMetadata().get(SummarizingWindowChatMemory.SUMMARIZED_COUNT)).intValue();
+                window = prompt.subList(1, prompt.size());
+            }
+            Assertions.assertEquals(history.subList(covered, history.size()),
+                    window.stream().map(Message::getText).toList(), "第 " + i + " 轮");
+            // 后台摘要在这里同步执行一次代替等待
+            memory.summarize("c1");
+        }
+        memory.close();
+    }
+
+    /**
+     * token 预算优先于条数：长消息会把窗口挤小，但至少保留最新一条
+     */
+    @Test
+    void respectsTokenBudget() throws Exception {
+        ChatModel model = prompt -> new ChatResponse(List.of(new Generation(new AssistantMessage("摘要"))));
+        SummarizingWindowChatMemory memory = new SummarizingWindowChatMemory(
+                new FileBasedChatMemory(dir.toString()), model, new JTokkitTokenCountEstimator(),
+                50, 20, 100, 200, 1);
+        memory.add("c1", List.of(new UserMessage("短问题"), new AssistantMessage("很长的回答".repeat(50)),
+                new UserMessage("追问"), new AssistantMessage("好的")));
+
+        List<Message> window = memory.get("c1");
+        Assertions.assertEquals(List.of("追问", "好的"), window.stream().map(Message::getText).toList());
+        memory.close();
+    }
+
+    /**
+     * 底层支持区间读取时只读最近一段，不读全部历史
+     */
+    @Test
+    void readsOnlyTailFromWindowedStore() throws Exception {
+        FileBasedChatMemory file = new FileBasedChatMemory(dir.toString());
+        AtomicInteger fullReads = new AtomicInteger();
+        WindowedChatMemory windowed = new WindowedChatMemory() {
+            @Override
+            public int count(String conversationId) {
+                return file.get(conversationId).size();
+            }
+
+            @Override
+            public List<Message> getRange(String conversationId, int from, int to) {
+                return file.get(conversationId).subList(from, to);
+            }
+
+            @Override
+            public void add(String conversationId, List<Message> messages) {
+                file.add(conversationId, messages);
+            }
+
+            @Override
+            public List<Message> get(String conversationId) {
+                if (!conversationId.endsWith(SummarizingWindowChatMemory.SUMMARY_SUFFIX)) {
+                    fullReads.incrementAndGet();
+                }
+                return file.get(conversationId);
+            }
+
+            @Override
+            public void clear(String conversationId) {
+                file.clear(conversationId);
+            }
+        };
+        ChatModel model = prompt -> new ChatResponse(List.of(new Generation(new AssistantMessage("摘要"))));
+        SummarizingWindowChatMemory memory = new SummarizingWindowChatMemory(
+                windowed, model, new JTokkitTokenCountEstimator(), 10_000, 4, 2, 200, 1);
+        for (int i = 0; i < 10; i++) {
+            memory.add("c1", List.of(new UserMessage("问题" + i), new AssistantMessage("回答" + i)));
+        }
+
+        memory.summarize("c1");
+        List<Message> window = memory.get("c1");
+        Assertions.assertEquals(5, window.size());
+        Assertions.assertEquals("问题8", window.get(1).getText());
+        Assertions.assertEquals(0, fullReads.get());
+        memory.close();
+    }
+}
@@ -0,0 +1,149 @@
+package com.tao.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * WriteBackChatMemory 测试：只用本地临时目录，不依赖 Ollama / Postgres
+ */
+class WriteBackChatMemoryTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * add 只改内存，flush / close 后文件内容才更新
+     */
+    @Test
+    void writesBehindAndFlushesOnClose() {
+        FileBasedChatMemory file = new FileBasedChatMemory(dir.toString());
+        WriteBackChatMemory memory = new WriteBackChatMemory(file, 100, Duration.ofMinutes(10), Duration.ofHours(1));
+
+        memory.add("c1", List.of(new UserMessage("你好")));
+        memory.add("c1", List.of(new AssistantMessage("您好，请问有什么可以帮您")));
+        Assertions.assertEquals(2, memory.get("c1").size());
+        Assertions.assertTrue(file.get("c1").isEmpty(), "写回之前文件中不应有数据");
+
+        memory.close();
+        List<Message> persisted = file.get("c1");
+        Assertions.assertEquals(2, persisted.size());
+        Assertions.assertEquals("您好，请问有什么可以帮您", persisted.get(1).getText());
+    }
+
+    /**
+     * 超出会话数上限被淘汰的脏会话先写回，再次访问能从文件恢复
+     */
+    @Test
+    void evictedConversationIsPersistedAndReloaded() {
+        FileBasedChatMemory file = new FileBasedChatMemory(dir.toString());
+        WriteBackChatMemory memory = new WriteBackChatMemory(file, 1, Duration.ofMinutes(10), Duration.ofHours(1));
+
+        for (int i = 0; i < 20; i++) {
+            memory.add("c" + i, List.of(new UserMessage("m" + i)));
+        }
+        Assertions.assertTrue(memory.size() <= 1);
+
+        for (int i = 0; i < 20; i++) {
+            List<Message> messages = memory.get("c" + i);
+            Assertions.assertEquals(1, messages.size(), "c" + i);
+            Assertions.assertEquals("m" + i, messages.get(0).getText());
+        }
+        memory.close();
+    }
+
+    /**
+     * clear 同时清掉内存与文件，不会被后续写回复活
+     */
+    @Test
+    void clearRemovesFromMemoryAndDisk() {
+        FileBasedChatMemory file = new FileBasedChatMemory(dir.toString());
+        WriteBackChatMemory memory = new WriteBackChatMemory(file, 100, Duration.ofMinutes(10), Duration.ofHours(1));
+
+        memory.add("c1", List.of(new UserMessage("你好")));
+        memory.flush();
+        memory.clear("c1");
+        memory.close();
+
+        Assertions.assertTrue(file.get("c1").isEmpty());
+        Assertions.assertTrue(memory.get("c1").isEmpty());
+    }
+
+    /**
+     * 存储写回抛异常：会话保持脏，已落盘位置不前移，下一次 flush 重试并补上全部新消息
+     */
+    @Test
+    void failedFlushIsRetriedOnNextFlush() {
+        AtomicBoolean failing = new AtomicBoolean();
+        AppendOnlyLogChatMemory log = failingLog(failing);
+        WriteBackChatMemory memory = new WriteBackChatMemory(log, 100, Duration.ofMinutes(10), Duration.ofHours(1));
+
+        memory.add("c1", List.of(new UserMessage("q0")));
+        Assertions.assertEquals(1, memory.flush());
+        memory.add("c1", List.of(new AssistantMessage("a0")));
+        memory.add("c2", List.of(new UserMessage("other")));
+        failing.set(true);
+        Assertions.assertEquals(0, memory.flush());
+        Assertions.assertEquals(List.of("q0"), texts(log.get("c1")));
+
+        failing.set(false);
+        Assertions.assertEquals(2, memory.flush());
+        Assertions.assertEquals(List.of("q0", "a0"), texts(log.get("c1")));
+        Assertions.assertEquals(List.of("other"), texts(log.get("c2")));
+        Assertions.assertEquals(0, memory.flush(), "写回成功后不再是脏会话");
+        memory.close();
+    }
+
+    /**
+     * 淘汰时写回失败：消息不丢，再次访问从内存取回，之后的 flush 写回存储
+     */
+    @Test
+    void failedEvictionKeepsMessagesUntilWritten() {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        AppendOnlyLogChatMemory log = failingLog(failing);
+        WriteBackChatMemory memory = new WriteBackChatMemory(log, 1, Duration.ofMinutes(10), Duration.ofHours(1));
+
+        for (int i = 0; i < 5; i++) {
+            memory.add("c" + i, List.of(new UserMessage("m" + i)));
+        }
+        Assertions.assertTrue(memory.size() <= 1);
+        Assertions.assertEquals(List.of("m0"), texts(memory.get("c0")));
+
+        failing.set(false);
+        memory.flush();
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(List.of("m" + i), texts(log.get("c" + i)), "c" + i);
+        }
+        memory.close();
+    }
+
+    /**
+     * failing 为 true 时每次写入都抛 IOException 的日志存储
+     */
+    private AppendOnlyLogChatMemory failingLog(AtomicBoolean failing) {
+        return new AppendOnlyLogChatMemory(dir.toString(), false, 100) {
+            @Override
+            void writeRecord(FileChannel channel, byte[] record) throws IOException {
+                if (failing.get()) {
+                    throw new IOException("mock disk failure");
+                }
+                super.writeRecord(channel, record);
+            }
+        };
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+}
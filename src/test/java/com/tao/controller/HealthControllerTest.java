@@ -0,0 +1,59 @@
+package com.tao.controller;
+
+import com.tao.tools.TaxonomyBootstrap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.LivenessState;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * 存活/就绪探针响应测试
+ */
+class HealthControllerTest {
+
+    private final ApplicationAvailability availability = Mockito.mock(ApplicationAvailability.class);
+
+    private final TaxonomyBootstrap bootstrap = Mockito.mock(TaxonomyBootstrap.class);
+
+    private final HealthController controller = new HealthController(availability, bootstrap);
+
+    /**
+     * 可接流量且分类表就绪才返回 200，否则 503 并带上导入状态
+     */
+    @Test
+    void readinessRequiresTaxonomy() {
+        Mockito.when(availability.getReadinessState()).thenReturn(ReadinessState.ACCEPTING_TRAFFIC);
+        for (TaxonomyBootstrap.State state : TaxonomyBootstrap.State.values()) {
+            Mockito.when(bootstrap.state()).thenReturn(state);
+            Mockito.when(bootstrap.isReady()).thenReturn(state == TaxonomyBootstrap.State.READY);
+
+            ResponseEntity<String> response = controller.readiness();
+            if (state == TaxonomyBootstrap.State.READY) {
+                Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+                Assertions.assertEquals("ok", response.getBody());
+            } else {
+                Assertions.assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+                Assertions.assertEquals("not ready: taxonomy " + state, response.getBody());
+            }
+        }
+
+        Mockito.when(availability.getReadinessState()).thenReturn(ReadinessState.REFUSING_TRAFFIC);
+        Assertions.assertEquals(HttpStatus.SERVICE_UNAVAILABLE, controller.readiness().getStatusCode());
+    }
+
+    /**
+     * 存活探针只看存活状态（导入重试用完后为 BROKEN）
+     */
+    @Test
+    void livenessFollowsLivenessState() {
+        Mockito.when(availability.getLivenessState()).thenReturn(LivenessState.CORRECT);
+        Assertions.assertEquals(HttpStatus.OK, controller.liveness().getStatusCode());
+
+        Mockito.when(availability.getLivenessState()).thenReturn(LivenessState.BROKEN);
+        Assertions.assertEquals(HttpStatus.SERVICE_UNAVAILABLE, controller.liveness().getStatusCode());
+    }
+}
@@ -0,0 +1,77 @@
+package com.tao.embedding;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+
+/**
+ * CachingEmbeddingModel 缓存 key 规范化与命中测试，底层模型用 Mockito 模拟
+ */
+class CachingEmbeddingModelTest {
+
+    /**
+     * 全角字符与中文标点转半角，连续空白（含全角空格、换行）合并，去首尾空白
+     */
+    @Test
+    void normalizesKey() {
+        Assertions.assertEquals("询问套餐资费?(39元)", CachingEmbeddingModel.normalize("询问套餐资费？（３９元）"));
+        Assertions.assertEquals("好的. 不需要,谢谢 \"再见\" 'ok'",
+                CachingEmbeddingModel.normalize("  好的。　\n 不需要、谢谢\t“再见” ‘ｏｋ’ "));
+        Assertions.assertEquals("", CachingEmbeddingModel.normalize(null));
+        Assertions.assertEquals("", CachingEmbeddingModel.normalize(" 　\n"));
+    }
+
+    /**
+     * 规范化后相同的文本只请求一次底层模型，用规范化文本请求
+     */
+    @Test
+    void singleEmbedHitsByNormalizedKey() {
+        EmbeddingModel delegate = Mockito.mock(EmbeddingModel.class);
+        Mockito.when(delegate.embed(anyString())).thenAnswer(inv -> vector(inv.getArgument(0)));
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, 1 << 20, Duration.ofHours(1));
+
+        float[] first = model.embed("套餐多少钱？");
+        float[] second = model.embed("  套餐多少钱? ");
+
+        Assertions.assertSame(first, second);
+        Mockito.verify(delegate).embed("套餐多少钱?");
+        Assertions.assertEquals(1, model.stats().hitCount());
+        Assertions.assertEquals(1, model.stats().missCount());
+    }
+
+    /**
+     * 批量请求：命中的直接取缓存，未命中的去重后一次批量请求，结果按输入顺序返回
+     */
+    @Test
+    void batchSplitsHitsAndMisses() {
+        EmbeddingModel delegate = Mockito.mock(EmbeddingModel.class);
+        Mockito.when(delegate.embed(anyString())).thenAnswer(inv -> vector(inv.getArgument(0)));
+        Mockito.when(delegate.embed(anyList())).thenAnswer(inv -> {
+            List<String> texts = inv.getArgument(0);
+            return texts.stream().map(CachingEmbeddingModelTest::vector).toList();
+        });
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, 1 << 20, Duration.ofHours(1));
+        float[] cached = model.embed("A");
+
+        List<float[]> result = model.embed(List.of("B", "A", "Ｂ", "C"));
+
+        Mockito.verify(delegate).embed(List.of("B", "C"));
+        Assertions.assertSame(cached, result.get(1));
+        Assertions.assertSame(result.get(0), result.get(2));
+        Assertions.assertEquals('C', (char) result.get(3)[0]);
+        // 之后都能命中，不再请求底层模型
+        model.embed(List.of("C", "B"));
+        Mockito.verify(delegate, Mockito.times(1)).embed(anyList());
+    }
+
+    private static float[] vector(String text) {
+        return new float[]{text.charAt(0), text.length()};
+    }
+}
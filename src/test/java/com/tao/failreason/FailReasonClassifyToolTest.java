@@ -0,0 +1,43 @@
+package com.tao.failreason;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * FailReasonClassifyTool 纯逻辑测试，不依赖 Ollama / Postgres
+ */
+class FailReasonClassifyToolTest {
+
+    private final FailReasonClassifyTool tool = new FailReasonClassifyTool(512);
+
+    /**
+     * 检索 query 只取客户发言
+     */
+    @Test
+    void retrievalQueryUsesCustomerTurnsOnly() {
+        String info = "客服：您好，这边给您推荐一个流量包。\n客户：不需要。\n客服：只要 10 元。\n客户: 我在开车，挂了";
+        Assertions.assertEquals("不需要。\n我在开车，挂了", tool.buildRetrievalQuery(info));
+    }
+
+    /**
+     * 没有客户发言（如未接通）时退回对话原文
+     */
+    @Test
+    void retrievalQueryFallsBackToTranscript() {
+        Assertions.assertEquals("客服：喂，您好？", tool.buildRetrievalQuery("客服：喂，您好？"));
+        Assertions.assertNull(tool.buildRetrievalQuery("  "));
+    }
+
+    /**
+     * 模型输出清理后合并；异议分类结果缺失时按空数组处理
+     */
+    @Test
+    void mergeToleratesMissingParts() {
+        String raw = "<think>\n</think>\n```json\n[{\"失败原因大类编号\": \"03\"}]\n```";
+        String merged = tool.mergeAnalysis(null, tool.parseResult(raw));
+        Assertions.assertTrue(merged.contains("\"异议分类\" : [ ]"), merged);
+        Assertions.assertTrue(merged.contains("\"失败原因大类编号\" : \"03\""), merged);
+        Assertions.assertEquals(0, tool.parseResult("无法判断").size());
+    }
+}
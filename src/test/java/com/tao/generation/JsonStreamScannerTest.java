@@ -0,0 +1,57 @@
+package com.tao.generation;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * JsonStreamScanner 增量扫描测试
+ */
+class JsonStreamScannerTest {
+
+    /**
+     * 逐字符喂入：跳过 think 块和代码块标记，字符串里的括号、转义引号不影响深度，闭合后忽略后续内容
+     */
+    @Test
+    void completesWhenTopLevelClosesCharByChar() {
+        String output = "<think>\n先看 {a: [1]} 这类内容\n</think>\n```json\n"
+                + "{\"异议列表\": [{\"问题\": \"套餐]是不是{要扣费\", \"解释\": \"说\\\"不要\\\"\"}]}"
+                + "\n```\n以上是结果";
+        JsonStreamScanner scanner = new JsonStreamScanner();
+        int closedAt = -1;
+        for (int i = 0; i < output.length(); i++) {
+            if (scanner.append(String.valueOf(output.charAt(i)))) {
+                closedAt = i;
+                break;
+            }
+        }
+        Assertions.assertTrue(scanner.isComplete());
+        Assertions.assertEquals(output.indexOf("]}\n```") + 1, closedAt);
+        Assertions.assertEquals("{\"异议列表\": [{\"问题\": \"套餐]是不是{要扣费\", \"解释\": \"说\\\"不要\\\"\"}]}",
+                scanner.json());
+    }
+
+    /**
+     * think 开始/结束标签被拆在两个分片之间
+     */
+    @Test
+    void thinkTagSplitAcrossChunks() {
+        JsonStreamScanner scanner = new JsonStreamScanner();
+        Assertions.assertFalse(scanner.append("<th"));
+        Assertions.assertFalse(scanner.append("ink>[x]</thi"));
+        Assertions.assertFalse(scanner.append("nk>\n[{\"a\""));
+        Assertions.assertTrue(scanner.append(": 1}] 多余"));
+        Assertions.assertEquals("[{\"a\": 1}]", scanner.json());
+    }
+
+    /**
+     * 未闭合时 json() 为 null，text() 返回已收到的全部内容
+     */
+    @Test
+    void incompleteKeepsText() {
+        JsonStreamScanner scanner = new JsonStreamScanner();
+        Assertions.assertFalse(scanner.append("[{\"问题\": \"没说完"));
+        Assertions.assertFalse(scanner.isComplete());
+        Assertions.assertNull(scanner.json());
+        Assertions.assertEquals("[{\"问题\": \"没说完", scanner.text());
+    }
+}
@@ -0,0 +1,63 @@
+package com.tao.metrics;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.util.List;
+
+/**
+ * PipelineMetrics 测试：阶段计时与 token 计数写入全局注册表
+ */
+class PipelineMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.removeRegistry(registry);
+    }
+
+    /**
+     * 按阶段计时，异常时也计入
+     */
+    @Test
+    void recordsStageTimings() {
+        Assertions.assertEquals("ok", PipelineMetrics.record("test_stage", () -> "ok"));
+        Assertions.assertThrows(IllegalStateException.class, () -> PipelineMetrics.record("test_stage", () -> {
+            throw new IllegalStateException("boom");
+        }));
+        Assertions.assertEquals(2, registry.get(PipelineMetrics.STAGE_TIMER).tag("stage", "test_stage").timer().count());
+    }
+
+    /**
+     * 从 ChatResponse metadata 读取 prompt / completion token；无用量信息时忽略
+     */
+    @Test
+    void countsTokensFromResponseMetadata() {
+        ChatResponse response = new ChatResponse(List.of(new Generation(new AssistantMessage("[]"))),
+                ChatResponseMetadata.builder().usage(new DefaultUsage(120, 30)).build());
+        PipelineMetrics.recordTokens("test_tokens", response);
+        PipelineMetrics.recordTokens("test_tokens", response);
+        PipelineMetrics.recordTokens("test_tokens", new ChatResponse(List.of()));
+        PipelineMetrics.recordTokens("test_tokens", null);
+
+        Assertions.assertEquals(240, registry.get(PipelineMetrics.TOKEN_COUNTER)
+                .tags("stage", "test_tokens", "type", "prompt").counter().count());
+        Assertions.assertEquals(60, registry.get(PipelineMetrics.TOKEN_COUNTER)
+                .tags("stage", "test_tokens", "type", "completion").counter().count());
+    }
+}
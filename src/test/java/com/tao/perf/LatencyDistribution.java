@@ -0,0 +1,87 @@
+package com.tao.perf;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 桩模型的延迟分布，配置格式：
+ * - 0 / none：无延迟
+ * - fixed:200ms：固定延迟
+ * - uniform:100ms-300ms：均匀分布
+ * - lognormal:800ms,0.5：对数正态分布，参数为中位数和 sigma（sigma 越大长尾越重，0.5 时 p99 约为中位数的 3.2 倍）
+ */
+record LatencyDistribution(String spec, long minNanos, long maxNanos, long medianNanos, double sigma) {
+
+    static final LatencyDistribution NONE = new LatencyDistribution("0", 0, 0, 0, 0);
+
+    static LatencyDistribution parse(String spec) {
+        if (spec == null || spec.isBlank() || "0".equals(spec.trim()) || "none".equalsIgnoreCase(spec.trim())) {
+            return NONE;
+        }
+        String s = spec.trim();
+        int colon = s.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("延迟分布格式错误: " + spec);
+        }
+        String type = s.substring(0, colon);
+        String args = s.substring(colon + 1);
+        return switch (type) {
+            case "fixed" -> {
+                long nanos = nanos(args);
+                yield new LatencyDistribution(s, nanos, nanos, nanos, 0);
+            }
+            case "uniform" -> {
+                String[] range = args.split("-", 2);
+                yield new LatencyDistribution(s, nanos(range[0]), nanos(range[1]), 0, 0);
+            }
+            case "lognormal" -> {
+                String[] params = args.split(",", 2);
+                yield new LatencyDistribution(s, 0, 0, nanos(params[0]), Double.parseDouble(params[1].trim()));
+            }
+            default -> throw new IllegalArgumentException("未知的延迟分布类型: " + spec);
+        };
+    }
+
+    /**
+     * 采样一次延迟（纳秒）
+     */
+    long sampleNanos() {
+        if (sigma > 0) {
+            return (long) (medianNanos * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+        }
+        if (maxNanos > minNanos) {
+            return ThreadLocalRandom.current().nextLong(minNanos, maxNanos + 1);
+        }
+        return minNanos;
+    }
+
+    Duration sample() {
+        return Duration.ofNanos(sampleNanos());
+    }
+
+    /**
+     * 在当前线程上等待一次采样的延迟，模拟模型推理耗时
+     */
+    void sleep() {
+        long nanos = sampleNanos();
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(Duration.ofNanos(nanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long nanos(String text) {
+        return DurationStyle.detectAndParse(text.trim()).toNanos();
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
@@ -0,0 +1,480 @@
+package com.tao.perf;
+
+import com.tao.app.ServiceApp;
+import com.tao.chatmemory.ChatMemoryConfig;
+import com.tao.chatmemory.FileBasedChatMemory;
+import com.tao.embedding.CachingEmbeddingModel;
+import com.tao.failreason.FailReasonClassifyTool;
+import com.tao.generation.JsonGeneration;
+import com.tao.metrics.PipelineMetrics;
+import com.tao.rag.CategoryDictionary;
+import com.tao.rag.InMemoryObjectionCategoryVectorStore;
+import com.tao.rag.PgVectorCodec;
+import com.tao.tools.ObjectionExtractTool;
+import com.tao.tools.ProblemClassifyTool;
+import com.tao.transcript.TranscriptCompactor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.ai.ollama.OllamaEmbeddingModel;
+import org.springframework.ai.ollama.api.OllamaApi;
+import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * 离线端到端压测：不依赖 Ollama / Postgres
+ * 1. 用 Spring 容器装配真实的 ServiceApp、抽取/分类工具、对话记忆（写回缓存 + 滑动窗口摘要）和内存分类索引；
+ * 2. ChatModel / EmbeddingModel 换成确定性的桩实现，延迟按配置的分布采样；
+ *    http 模式下改用真实的 Ollama 客户端连接 {@link MockOllamaServer}，把 HTTP / JSON 的开销也算进来；
+ * 3. 分类索引从 resources 下的分类 CSV 加载，数据库访问用 Mockito 模拟；
+ * 4. 按目标并发闭环回放语料，统计每个场景的吞吐和延迟分位数，并输出流水线各阶段的指标（PipelineMetrics）。
+ * 模型延迟设为 0 时测到的就是流水线自身的开销。
+ */
+@Slf4j
+final class LoadTestHarness implements AutoCloseable {
+
+    static final String CLASSIFY = "classify";
+
+    static final String CHAT = "chat";
+
+    static final String STREAM = "stream";
+
+    static final String ANALYZE = "analyze";
+
+    static final String STUB = "stub";
+
+    static final String HTTP = "http";
+
+    private static final int EMBEDDING_DIMENSIONS = 256;
+
+    private final Options options;
+
+    private final List<String> transcripts;
+
+    private final List<String> chatMessages;
+
+    private final Path memoryDir;
+
+    private final AnnotationConfigApplicationContext context;
+
+    private final ServiceApp serviceApp;
+
+    // http 模式下进程内启动的模拟 Ollama，连接外部服务或 stub 模式时为 null
+    private final MockOllamaServer mockOllama;
+
+    /**
+     * 压测参数，均可用 -Dperf.xxx 覆盖
+     *
+     * @param scenarios     要跑的场景：classify（doClassifyWithRag）、chat（doChat）、stream（doChatByStream），
+     *                      可选 analyze（doAnalyzeWithRag，异议分类 + 失败原因分类）
+     * @param concurrency   并发数（闭环：每个并发完成一次请求后立即发下一次）
+     * @param requests      每个场景的请求数
+     * @param warmup        每个场景正式计时前的预热请求数
+     * @param chatLatency   桩 ChatModel 的延迟分布（流式时为首 token 延迟）
+     * @param embedLatency  桩 EmbeddingModel 每次调用的延迟分布
+     * @param tokenInterval 流式输出的分片间隔
+     * @param corpus        语料文件（Spring 资源路径），各段对话用 --- 分隔
+     * @param embeddingCache 是否和线上一样在 EmbeddingModel 前加缓存
+     * @param backend       stub：进程内桩模型；http：真实的 Spring AI Ollama 客户端连接 {@link MockOllamaServer}，
+     *                      多出 HTTP 与 JSON 编解码的开销（-Dperf.mock-ollama.url 指定时连接已启动的外部模拟服务）
+     * @param failureRate   http 模式下模拟服务按该概率返回 5xx
+     */
+    record Options(List<String> scenarios, int concurrency, int requests, int warmup,
+                   LatencyDistribution chatLatency, LatencyDistribution embedLatency, Duration tokenInterval,
+                   String corpus, boolean embeddingCache, String backend, double failureRate) {
+
+        static Options fromSystemProperties() {
+            return new Options(
+                    Arrays.asList(System.getProperty("perf.scenarios", CLASSIFY + "," + CHAT + "," + STREAM).split(",")),
+                    Integer.getInteger("perf.concurrency", 16),
+                    Integer.getInteger("perf.requests", 200),
+                    Integer.getInteger("perf.warmup", 20),
+                    LatencyDistribution.parse(System.getProperty("perf.chat-latency", "lognormal:800ms,0.4")),
+                    LatencyDistribution.parse(System.getProperty("perf.embed-latency", "fixed:20ms")),
+                    DurationStyle.detectAndParse(System.getProperty("perf.token-interval", "20ms")),
+                    System.getProperty("perf.corpus", "classpath:perf/transcripts.txt"),
+                    Boolean.parseBoolean(System.getProperty("perf.embedding-cache", "true")),
+                    System.getProperty("perf.backend", STUB),
+                    Double.parseDouble(System.getProperty("perf.failure-rate", "0")));
+        }
+    }
+
+    /**
+     * 单个场景的结果，延迟单位为微秒
+     */
+    record ScenarioResult(String scenario, int requests, int errors, long elapsedNanos,
+                          Histogram latency, Histogram firstToken) {
+
+        double throughput() {
+            return requests / (elapsedNanos / 1e9);
+        }
+    }
+
+    LoadTestHarness(Options options) throws Exception {
+        this.options = options;
+        this.transcripts = loadCorpus(options.corpus());
+        this.chatMessages = customerLines(transcripts);
+        this.memoryDir = Files.createTempDirectory("perf-chat-memory");
+
+        ChatModel chatModel;
+        EmbeddingModel embeddingModel;
+        if (HTTP.equals(options.backend())) {
+            String url = System.getProperty("perf.mock-ollama.url");
+            if (url == null) {
+                mockOllama = new MockOllamaServer(new MockOllamaServer.Options(options.chatLatency(),
+                        options.tokenInterval(), options.embedLatency(), EMBEDDING_DIMENSIONS,
+                        options.failureRate(), 503, StubChatModel::respond), 0).start();
+                url = mockOllama.baseUrl();
+            } else {
+                mockOllama = null;
+            }
+            OllamaApi ollamaApi = OllamaApi.builder().baseUrl(url).build();
+            chatModel = OllamaChatModel.builder()
+                    .ollamaApi(ollamaApi)
+                    .defaultOptions(OllamaOptions.builder().model("qwen3:8b").build())
+                    .build();
+            embeddingModel = OllamaEmbeddingModel.builder()
+                    .ollamaApi(ollamaApi)
+                    .defaultOptions(OllamaOptions.builder().model("qwen3-embedding").build())
+                    .build();
+        } else {
+            mockOllama = null;
+            chatModel = new StubChatModel(options.chatLatency(), options.tokenInterval());
+            embeddingModel = new StubEmbeddingModel(options.embedLatency(), EMBEDDING_DIMENSIONS);
+        }
+        if (options.embeddingCache()) {
+            embeddingModel = new CachingEmbeddingModel(embeddingModel, 64L << 20, Duration.ofHours(24));
+        }
+        EmbeddingModel embeddings = embeddingModel;
+
+        // 与 ChatMemoryConfig 的默认配置一致：文件存储 + 写回缓存 + 滑动窗口摘要
+        ChatMemory chatMemory = new ChatMemoryConfig().chatMemory(
+                new FileBasedChatMemory(memoryDir.toString()), chatModel,
+                true, 2048, 20, 6, 300, 1,
+                true, 10_000, Duration.ofMinutes(30), Duration.ofSeconds(5));
+
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean("ollamaChatModel", ChatModel.class, () -> chatModel);
+        context.registerBean("ollamaEmbeddingModel", EmbeddingModel.class, () -> embeddings);
+        context.registerBean("chatMemory", ChatMemory.class, () -> chatMemory);
+        JdbcTemplate objectionTable = categoryTable(embeddings, "classpath*:document/CustomerObjectionClassification/*.csv");
+        JdbcTemplate failTable = categoryTable(embeddings, "classpath*:document/failCategory/*.csv");
+        context.registerBean("serviceAppVectorStore", VectorStore.class,
+                () -> categoryIndex(embeddings, objectionTable, "objection_category_embedding"));
+        context.registerBean("failReasonVectorStore", VectorStore.class,
+                () -> categoryIndex(embeddings, failTable, "fail_category"));
+        context.registerBean("objectionCategoryDictionary", CategoryDictionary.class,
+                () -> ((InMemoryObjectionCategoryVectorStore) context.getBean("serviceAppVectorStore")).dictionary());
+        context.register(JsonGeneration.class, TranscriptCompactor.class, ObjectionExtractTool.class, ProblemClassifyTool.class,
+                FailReasonClassifyTool.class, ServiceApp.class);
+        context.refresh();
+        serviceApp = context.getBean(ServiceApp.class);
+    }
+
+    /**
+     * 依次跑配置的场景，阶段指标记录到临时挂到全局注册表上的 SimpleMeterRegistry
+     */
+    Report run() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try {
+            List<ScenarioResult> results = new ArrayList<>();
+            for (String scenario : options.scenarios()) {
+                results.add(runScenario(scenario.trim()));
+            }
+            return new Report(options, results, stageSummary(registry));
+        } finally {
+            Metrics.removeRegistry(registry);
+            registry.close();
+        }
+    }
+
+    private ScenarioResult runScenario(String scenario) throws Exception {
+        log.info("压测场景 {}：预热 {} 次", scenario, options.warmup());
+        drive(scenario, options.warmup(), new ConcurrentHistogram(3), new ConcurrentHistogram(3), new AtomicInteger());
+
+        log.info("压测场景 {}：{} 并发，{} 次请求", scenario, options.concurrency(), options.requests());
+        Histogram latency = new ConcurrentHistogram(3);
+        Histogram firstToken = new ConcurrentHistogram(3);
+        AtomicInteger errors = new AtomicInteger();
+        long start = System.nanoTime();
+        drive(scenario, options.requests(), latency, firstToken, errors);
+        long elapsed = System.nanoTime() - start;
+        return new ScenarioResult(scenario, options.requests(), errors.get(), elapsed, latency,
+                STREAM.equals(scenario) ? firstToken : null);
+    }
+
+    /**
+     * 闭环施压：concurrency 个虚拟线程共同领取 total 个请求
+     */
+    private void drive(String scenario, int total, Histogram latency, Histogram firstToken, AtomicInteger errors)
+            throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int worker = 0; worker < options.concurrency(); worker++) {
+                executor.submit(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < total) {
+                        long start = System.nanoTime();
+                        try {
+                            invoke(scenario, i, start, firstToken);
+                            latency.recordValue((System.nanoTime() - start) / 1_000);
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                            log.warn("压测请求失败：场景 {} 第 {} 次", scenario, i, e);
+                        }
+                    }
+                });
+            }
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    private void invoke(String scenario, int i, long start, Histogram firstToken) {
+        // 多轮对话：请求轮流落到 concurrency 个会话上，会话历史会逐渐变长并触发摘要
+        String chatId = "perf-" + (i % options.concurrency());
+        String message = chatMessages.get(i % chatMessages.size());
+        switch (scenario) {
+            case CLASSIFY -> serviceApp.doClassifyWithRag(transcripts.get(i % transcripts.size()));
+            case ANALYZE -> serviceApp.doAnalyzeWithRag(transcripts.get(i % transcripts.size()));
+            case CHAT -> serviceApp.doChat(message, chatId);
+            case STREAM -> {
+                AtomicLong first = new AtomicLong();
+                serviceApp.doChatByStream(message, chatId)
+                        .doOnNext(chunk -> first.compareAndSet(0, System.nanoTime()))
+                        .blockLast();
+                if (first.get() > 0) {
+                    firstToken.recordValue((first.get() - start) / 1_000);
+                }
+            }
+            default -> throw new IllegalArgumentException("未知的压测场景: " + scenario);
+        }
+    }
+
+    /**
+     * 各阶段耗时分位数（毫秒）与 token 用量
+     */
+    private static Map<String, String> stageSummary(SimpleMeterRegistry registry) {
+        Map<String, String> summary = new LinkedHashMap<>();
+        for (Timer timer : registry.find(PipelineMetrics.STAGE_TIMER).timers()) {
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "count=%d mean=%.2fms",
+                    snapshot.count(), snapshot.mean(TimeUnit.MILLISECONDS)));
+            for (ValueAtPercentile p : snapshot.percentileValues()) {
+                line.append(String.format(Locale.ROOT, " p%d=%.2fms",
+                        Math.round(p.percentile() * 100), p.value(TimeUnit.MILLISECONDS)));
+            }
+            summary.put("stage " + timer.getId().getTag("stage"), line.toString());
+        }
+        for (Counter counter : registry.find(PipelineMetrics.TOKEN_COUNTER).counters()) {
+            summary.put("tokens " + counter.getId().getTag("stage") + "/" + counter.getId().getTag("type"),
+                    String.format(Locale.ROOT, "%.0f", counter.count()));
+        }
+        return summary;
+    }
+
+    @Override
+    public void close() throws Exception {
+        context.close();
+        FileSystemUtils.deleteRecursively(memoryDir);
+        if (mockOllama != null) {
+            mockOllama.close();
+        }
+    }
+
+    /**
+     * 压测报告
+     */
+    record Report(Options options, List<ScenarioResult> scenarios, Map<String, String> stages) {
+
+        String format() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT,
+                    "模型后端 %s，并发 %d，每场景 %d 次请求；模型延迟 %s，embedding 延迟 %s，流式分片间隔 %s%n",
+                    options.backend(), options.concurrency(), options.requests(), options.chatLatency(),
+                    options.embedLatency(), options.tokenInterval()));
+            sb.append(String.format(Locale.ROOT, "%-10s %8s %7s %10s %10s %10s %10s %10s %12s%n",
+                    "scenario", "requests", "errors", "req/s", "p50(ms)", "p90(ms)", "p99(ms)", "max(ms)", "ttft p50(ms)"));
+            for (ScenarioResult r : scenarios) {
+                sb.append(String.format(Locale.ROOT, "%-10s %8d %7d %10.1f %10.2f %10.2f %10.2f %10.2f %12s%n",
+                        r.scenario(), r.requests(), r.errors(), r.throughput(),
+                        millis(r.latency(), 50), millis(r.latency(), 90), millis(r.latency(), 99),
+                        r.latency().getMaxValue() / 1000.0,
+                        r.firstToken() == null ? "-" : String.format(Locale.ROOT, "%.2f", millis(r.firstToken(), 50))));
+            }
+            stages.forEach((name, value) -> sb.append(String.format("%-40s %s%n", name, value)));
+            return sb.toString();
+        }
+
+        private static double millis(Histogram histogram, double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+
+    /**
+     * 用分类 CSV 模拟分类表（含向量），供内存分类索引和分类字典加载；数据库只在刷新时读两次，用 Mockito 模拟
+     */
+    private static JdbcTemplate categoryTable(EmbeddingModel embeddingModel, String pattern) {
+        List<Map<String, String>> rows = new ArrayList<>();
+        try {
+            for (Resource resource : new PathMatchingResourcePatternResolver().getResources(pattern)) {
+                rows.addAll(readCategoryCsv(resource.getInputStream(), resource.getFilename()));
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("读取分类 CSV 失败: " + pattern, e);
+        }
+        List<float[]> vectors = embeddingModel.embed(rows.stream().map(row -> row.get("small_title")).toList());
+        for (int i = 0; i < rows.size(); i++) {
+            rows.get(i).put("embedding", PgVectorCodec.toPgVectorLiteral(vectors.get(i)));
+        }
+
+        JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        Mockito.when(jdbcTemplate.queryForObject(anyString(), eq(String.class))).thenReturn(rows.size() + ":perf");
+        Mockito.when(jdbcTemplate.query(anyString(), ArgumentMatchers.<RowMapper<Object>>any())).thenAnswer(invocation -> {
+            RowMapper<?> mapper = invocation.getArgument(1);
+            Map<String, String> current = new HashMap<>();
+            ResultSet rs = Mockito.mock(ResultSet.class);
+            Mockito.when(rs.getString(anyString())).thenAnswer(call -> current.get(call.<String>getArgument(0)));
+            List<Object> mapped = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                current.clear();
+                current.putAll(rows.get(i));
+                mapped.add(mapper.mapRow(rs, i));
+            }
+            return mapped;
+        });
+        return jdbcTemplate;
+    }
+
+    /**
+     * 生产默认使用的内存分类索引
+     */
+    private static VectorStore categoryIndex(EmbeddingModel embeddingModel, JdbcTemplate jdbcTemplate, String table) {
+        InMemoryObjectionCategoryVectorStore store =
+                new InMemoryObjectionCategoryVectorStore(embeddingModel, jdbcTemplate, null, table);
+        store.start(Duration.ZERO);
+        return store;
+    }
+
+    private static List<Map<String, String>> readCategoryCsv(InputStream in, String fileName) throws Exception {
+        List<Map<String, String>> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            if (header == null) {
+                return rows;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] cols = line.split(",", -1);
+                if (cols.length < 5 || clean(cols[0]).isEmpty() || clean(cols[4]).isEmpty()) {
+                    continue;
+                }
+                Map<String, String> row = new HashMap<>();
+                row.put("code", clean(cols[0]));
+                row.put("big_code", clean(cols[1]));
+                row.put("big_name", clean(cols[2]));
+                row.put("small_code", clean(cols[3]));
+                row.put("small_title", clean(cols[4]));
+                row.put("source_file", fileName);
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 去掉 Excel 导出的 ="..." 包裹和中英文引号
+     */
+    private static String clean(String value) {
+        return value.replace("\uFEFF", "").replaceAll("[\"“”=]", "").trim();
+    }
+
+    private static List<String> loadCorpus(String location) throws Exception {
+        String text = new DefaultResourceLoader().getResource(location).getContentAsString(StandardCharsets.UTF_8);
+        List<String> transcripts = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : text.split("\\R")) {
+            if (line.startsWith("#")) {
+                continue;
+            }
+            if (line.trim().equals("---")) {
+                addIfNotBlank(transcripts, current);
+                continue;
+            }
+            current.append(line).append('\n');
+        }
+        addIfNotBlank(transcripts, current);
+        if (transcripts.isEmpty()) {
+            throw new IllegalStateException("压测语料为空: " + location);
+        }
+        return transcripts;
+    }
+
+    private static void addIfNotBlank(List<String> transcripts, StringBuilder current) {
+        if (!current.isEmpty() && !current.toString().isBlank()) {
+            transcripts.add(current.toString().trim());
+        }
+        current.setLength(0);
+    }
+
+    /**
+     * 多轮对话场景的用户消息取语料里的客户发言
+     */
+    private static List<String> customerLines(List<String> transcripts) {
+        List<String> lines = new ArrayList<>();
+        for (String transcript : transcripts) {
+            for (String line : transcript.split("\n")) {
+                if (line.startsWith("客户")) {
+                    lines.add(line.substring(3).trim());
+                }
+            }
+        }
+        return lines.isEmpty() ? transcripts : lines;
+    }
+}
@@ -0,0 +1,272 @@
+package com.tao.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tao.generation.JsonStreamScanner;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 本地 Ollama 兼容的模拟 HTTP 服务，用于在没有 GPU 的机器上测 Spring AI Ollama 客户端一侧的开销
+ * （HTTP 连接复用、JSON 编解码、NDJSON 流式解析等）。实现的接口：
+ * - POST /api/chat：stream=false 返回单个 JSON，stream=true 按 NDJSON 逐行输出分片，最后一行 done=true 带用量；
+ *   请求带 format 时只输出 JSON 本身（去掉 think 块与代码块包裹）；
+ * - POST /api/embed：返回确定性的归一化向量（同 {@link StubEmbeddingModel}）；
+ * - GET /api/tags、/api/version：探活用。
+ * 输出内容按提示词由 responder 生成（默认 {@link StubChatModel#respond}）；生成耗时 = 首 token 延迟 + 分片数 × 分片间隔，
+ * 非流式请求同样等完整生成时间后再返回；按 failureRate 概率直接返回 failureStatus 模拟服务端故障。
+ * 单独启动（供 perf profile 下的应用连接）：
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.tao.perf.MockOllamaServer -Dperf.mock-ollama.port=11435
+ */
+@Slf4j
+public final class MockOllamaServer implements AutoCloseable {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    // 每个流式分片的字符数，按一个 token 计
+    private static final int CHUNK_CHARS = 2;
+
+    /**
+     * @param ttft          首 token 延迟分布
+     * @param tokenInterval 分片间隔（≈ 1 / 每秒 token 数）
+     * @param embedLatency  每次 /api/embed 的延迟分布
+     * @param dimensions    向量维度，默认 4096 与线上 Qwen3-Embedding-8B 一致（分类表向量维度要对得上）
+     * @param failureRate   请求直接失败的概率（0~1）
+     * @param failureStatus 失败时返回的 HTTP 状态码
+     * @param responder     提示词 -> 模型输出
+     */
+    record Options(LatencyDistribution ttft, Duration tokenInterval, LatencyDistribution embedLatency,
+                   int dimensions, double failureRate, int failureStatus, Function<String, String> responder) {
+
+        static Options fromSystemProperties() {
+            return new Options(
+                    LatencyDistribution.parse(System.getProperty("perf.chat-latency", "lognormal:300ms,0.4")),
+                    DurationStyle.detectAndParse(System.getProperty("perf.token-interval", "20ms")),
+                    LatencyDistribution.parse(System.getProperty("perf.embed-latency", "fixed:20ms")),
+                    Integer.getInteger("perf.mock-ollama.dimensions", 4096),
+                    Double.parseDouble(System.getProperty("perf.failure-rate", "0")),
+                    Integer.getInteger("perf.failure-status", 503),
+                    StubChatModel::respond);
+        }
+    }
+
+    private final Options options;
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final StubEmbeddingModel embeddings;
+
+    private final AtomicLong chatRequests = new AtomicLong();
+
+    private final AtomicLong embedRequests = new AtomicLong();
+
+    private final AtomicLong injectedFailures = new AtomicLong();
+
+    /**
+     * @param port 监听端口，0 表示随机端口
+     */
+    MockOllamaServer(Options options, int port) throws IOException {
+        this.options = options;
+        this.embeddings = new StubEmbeddingModel(LatencyDistribution.NONE, options.dimensions());
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.setExecutor(executor);
+        server.createContext("/api/chat", exchange -> handle(exchange, this::chat));
+        server.createContext("/api/embed", exchange -> handle(exchange, this::embed));
+        server.createContext("/api/tags", exchange -> handle(exchange, e -> writeJson(e, 200, "{\"models\":[]}")));
+        server.createContext("/api/version", exchange -> handle(exchange, e -> writeJson(e, 200, "{\"version\":\"mock\"}")));
+    }
+
+    MockOllamaServer start() {
+        server.start();
+        log.info("模拟 Ollama 已启动：{}", baseUrl());
+        return this;
+    }
+
+    String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    long chatRequests() {
+        return chatRequests.get();
+    }
+
+    long embedRequests() {
+        return embedRequests.get();
+    }
+
+    long injectedFailures() {
+        return injectedFailures.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) {
+        try (exchange) {
+            if (options.failureRate() > 0 && ThreadLocalRandom.current().nextDouble() < options.failureRate()) {
+                injectedFailures.incrementAndGet();
+                writeJson(exchange, options.failureStatus(), "{\"error\":\"injected failure\"}");
+                return;
+            }
+            handler.handle(exchange);
+        } catch (IOException e) {
+            // 客户端取消流式请求时会走到这里
+            log.debug("模拟 Ollama 写响应失败: {}", e.getMessage());
+        } catch (Exception e) {
+            log.warn("模拟 Ollama 处理请求失败", e);
+        }
+    }
+
+    private void chat(HttpExchange exchange) throws IOException {
+        chatRequests.incrementAndGet();
+        JsonNode request = OBJECT_MAPPER.readTree(exchange.getRequestBody());
+        String model = request.path("model").asText("mock");
+        StringBuilder prompt = new StringBuilder();
+        for (JsonNode message : request.path("messages")) {
+            prompt.append(message.path("content").asText("")).append('\n');
+        }
+        String output = options.responder().apply(prompt.toString());
+        if (request.hasNonNull("format")) {
+            // 结构化输出：Ollama 按 format 约束解码，只有 JSON 本身
+            JsonStreamScanner scanner = new JsonStreamScanner();
+            if (scanner.append(output)) {
+                output = scanner.json();
+            }
+        }
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < output.length(); i += CHUNK_CHARS) {
+            chunks.add(output.substring(i, Math.min(output.length(), i + CHUNK_CHARS)));
+        }
+        int promptTokens = prompt.length() / CHUNK_CHARS;
+        long start = System.nanoTime();
+
+        if (!request.path("stream").asBoolean(true)) {
+            sleep(options.ttft().sampleNanos() + options.tokenInterval().toNanos() * chunks.size());
+            writeJson(exchange, 200, OBJECT_MAPPER.writeValueAsString(
+                    chatChunk(model, output, true, promptTokens, chunks.size(), System.nanoTime() - start)));
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        sleep(options.ttft().sampleNanos());
+        for (int i = 0; i < chunks.size(); i++) {
+            if (i > 0) {
+                sleep(options.tokenInterval().toNanos());
+            }
+            writeLine(out, chatChunk(model, chunks.get(i), false, 0, 0, 0));
+        }
+        writeLine(out, chatChunk(model, "", true, promptTokens, chunks.size(), System.nanoTime() - start));
+    }
+
+    private void embed(HttpExchange exchange) throws IOException {
+        embedRequests.incrementAndGet();
+        JsonNode request = OBJECT_MAPPER.readTree(exchange.getRequestBody());
+        JsonNode input = request.path("input");
+        List<String> texts = new ArrayList<>();
+        if (input.isArray()) {
+            input.forEach(node -> texts.add(node.asText("")));
+        } else {
+            texts.add(input.asText(""));
+        }
+        options.embedLatency().sleep();
+
+        ObjectNode response = OBJECT_MAPPER.createObjectNode();
+        response.put("model", request.path("model").asText("mock"));
+        ArrayNode vectors = response.putArray("embeddings");
+        int promptTokens = 0;
+        for (String text : texts) {
+            ArrayNode vector = vectors.addArray();
+            for (float v : embeddings.vector(text)) {
+                vector.add(v);
+            }
+            promptTokens += text.length() / CHUNK_CHARS;
+        }
+        response.put("prompt_eval_count", promptTokens);
+        writeJson(exchange, 200, OBJECT_MAPPER.writeValueAsString(response));
+    }
+
+    private static ObjectNode chatChunk(String model, String content, boolean done,
+                                        int promptTokens, int evalTokens, long totalNanos) {
+        ObjectNode node = OBJECT_MAPPER.createObjectNode();
+        node.put("model", model);
+        node.put("created_at", Instant.now().toString());
+        ObjectNode message = node.putObject("message");
+        message.put("role", "assistant");
+        message.put("content", content);
+        node.put("done", done);
+        if (done) {
+            node.put("done_reason", "stop");
+            node.put("total_duration", totalNanos);
+            node.put("load_duration", 0);
+            node.put("prompt_eval_count", promptTokens);
+            node.put("prompt_eval_duration", 0);
+            node.put("eval_count", evalTokens);
+            node.put("eval_duration", totalNanos);
+        }
+        return node;
+    }
+
+    private static void writeLine(OutputStream out, ObjectNode node) throws IOException {
+        out.write(OBJECT_MAPPER.writeValueAsBytes(node));
+        out.write('\n');
+        out.flush();
+    }
+
+    private static void writeJson(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleep(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(Duration.ofNanos(nanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 单独运行，端口取 -Dperf.mock-ollama.port（默认 11435，与 application-perf.yml 一致），其余参数同压测
+     */
+    public static void main(String[] args) throws Exception {
+        MockOllamaServer server = new MockOllamaServer(Options.fromSystemProperties(),
+                Integer.getInteger("perf.mock-ollama.port", 11435)).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,94 @@
+package com.tao.perf;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.ai.ollama.OllamaEmbeddingModel;
+import org.springframework.ai.ollama.api.OllamaApi;
+import org.springframework.ai.ollama.api.OllamaOptions;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * MockOllamaServer 协议测试：用真实的 Spring AI Ollama 客户端访问
+ */
+class MockOllamaServerTest {
+
+    private static MockOllamaServer.Options options(double failureRate) {
+        return new MockOllamaServer.Options(LatencyDistribution.NONE, Duration.ZERO, LatencyDistribution.NONE,
+                64, failureRate, 503, prompt -> "<think></think>[{\"问题\": \"询问资费\"}]");
+    }
+
+    private static OllamaApi api(MockOllamaServer server) {
+        return OllamaApi.builder().baseUrl(server.baseUrl()).build();
+    }
+
+    /**
+     * 非流式与 NDJSON 流式返回同样的内容，最后一个分片带用量
+     */
+    @Test
+    void servesChatAndStreamingChat() throws Exception {
+        try (MockOllamaServer server = new MockOllamaServer(options(0), 0).start()) {
+            OllamaChatModel model = OllamaChatModel.builder()
+                    .ollamaApi(api(server))
+                    .defaultOptions(OllamaOptions.builder().model("qwen3:8b").build())
+                    .build();
+
+            ChatResponse response = model.call(new Prompt("你好"));
+            Assertions.assertEquals("<think></think>[{\"问题\": \"询问资费\"}]", response.getResult().getOutput().getText());
+            Assertions.assertTrue(response.getMetadata().getUsage().getCompletionTokens() > 0);
+
+            List<ChatResponse> chunks = model.stream(new Prompt("你好")).collectList().block();
+            Assertions.assertNotNull(chunks);
+            Assertions.assertTrue(chunks.size() > 2, "应按分片流式返回");
+            String streamed = chunks.stream()
+                    .map(chunk -> chunk.getResult() == null ? null : chunk.getResult().getOutput().getText())
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.joining());
+            Assertions.assertEquals(response.getResult().getOutput().getText(), streamed);
+            Assertions.assertEquals(2, server.chatRequests());
+        }
+    }
+
+    /**
+     * embedding 返回确定性的归一化向量
+     */
+    @Test
+    void servesEmbeddings() throws Exception {
+        try (MockOllamaServer server = new MockOllamaServer(options(0), 0).start()) {
+            OllamaEmbeddingModel model = OllamaEmbeddingModel.builder()
+                    .ollamaApi(api(server))
+                    .defaultOptions(OllamaOptions.builder().model("qwen3-embedding").build())
+                    .build();
+            List<float[]> vectors = model.embed(List.of("询问套餐资费", "询问套餐资费", "宽带提速"));
+            Assertions.assertEquals(3, vectors.size());
+            Assertions.assertEquals(64, vectors.get(0).length);
+            Assertions.assertArrayEquals(vectors.get(0), vectors.get(1));
+            double norm = 0;
+            for (float v : vectors.get(2)) {
+                norm += v * v;
+            }
+            Assertions.assertEquals(1.0, norm, 1e-4);
+        }
+    }
+
+    /**
+     * 注入的故障以 5xx 返回给客户端
+     */
+    @Test
+    void injectsFailures() throws Exception {
+        try (MockOllamaServer server = new MockOllamaServer(options(1.0), 0).start()) {
+            OllamaChatModel model = OllamaChatModel.builder()
+                    .ollamaApi(api(server))
+                    .defaultOptions(OllamaOptions.builder().model("qwen3:8b").build())
+                    .build();
+            Assertions.assertThrows(RuntimeException.class, () -> model.call(new Prompt("你好")));
+            Assertions.assertEquals(1, server.injectedFailures());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.tao.perf;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * ServiceApp 离线压测入口，见 {@link LoadTestHarness}
+ * 完整压测：mvn test -Dtest=ServiceAppLoadTest -Dperf=true [-Dperf.concurrency=32 -Dperf.chat-latency=lognormal:1s,0.5 ...]
+ */
+class ServiceAppLoadTest {
+
+    /**
+     * 冒烟：模型零延迟、少量请求，保证压测链路本身可用，随普通单测一起跑
+     */
+    @Test
+    void smoke() throws Exception {
+        LoadTestHarness.Options options = new LoadTestHarness.Options(
+                List.of(LoadTestHarness.CLASSIFY, LoadTestHarness.CHAT, LoadTestHarness.STREAM),
+                4, 16, 4, LatencyDistribution.NONE, LatencyDistribution.NONE, Duration.ZERO,
+                "classpath:perf/transcripts.txt", true, LoadTestHarness.STUB, 0);
+        try (LoadTestHarness harness = new LoadTestHarness(options)) {
+            LoadTestHarness.Report report = harness.run();
+            System.out.println(report.format());
+            for (LoadTestHarness.ScenarioResult result : report.scenarios()) {
+                Assertions.assertEquals(0, result.errors(), result.scenario());
+                Assertions.assertEquals(16, result.latency().getTotalCount(), result.scenario());
+            }
+            Assertions.assertTrue(report.stages().containsKey("stage classify_single"), report.stages().toString());
+            Assertions.assertTrue(report.stages().containsKey("stage vector_search"), report.stages().toString());
+        }
+    }
+
+    /**
+     * 完整压测，参数取 -Dperf.xxx，见 {@link LoadTestHarness.Options}
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "perf", matches = "true")
+    void loadTest() throws Exception {
+        try (LoadTestHarness harness = new LoadTestHarness(LoadTestHarness.Options.fromSystemProperties())) {
+            System.out.println(harness.run().format());
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.tao.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tao.generation.JsonStreamScanner;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.ollama.api.OllamaOptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 确定性的桩 ChatModel，按提示词内容识别调用方并返回固定格式的输出：
+ * 异议抽取、单问题分类、失败原因分类、滚动摘要、普通对话
+ * 输出与 qwen3 一样带 <think> 块，走完整的清洗与解析路径；延迟按配置的分布采样，
+ * 流式时首个分片等待 TTFT，之后每个分片间隔 tokenInterval
+ */
+class StubChatModel implements ChatModel {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final Pattern CUSTOMER_LINE = Pattern.compile("(?m)^客户[:：]\\s*(.+)$");
+
+    private static final Pattern KNOWLEDGE_CODE = Pattern.compile("(?m)^code: (\\S+)");
+
+    private static final Pattern PROBLEM_BLOCK = Pattern.compile("(?s)<problem>\\s*(.*?)\\s*</problem>");
+
+    // 流式输出每个分片的字符数（中文大约一个 token 1~2 个字）
+    private static final int CHUNK_CHARS = 2;
+
+    private final LatencyDistribution latency;
+
+    private final Duration tokenInterval;
+
+    StubChatModel(LatencyDistribution latency, Duration tokenInterval) {
+        this.latency = latency;
+        this.tokenInterval = tokenInterval;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        String input = prompt.getContents();
+        String output = respond(input, structured(prompt));
+        latency.sleep();
+        return response(output, input.length(), output.length());
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        String input = prompt.getContents();
+        String output = respond(input, structured(prompt));
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < output.length(); i += CHUNK_CHARS) {
+            chunks.add(output.substring(i, Math.min(output.length(), i + CHUNK_CHARS)));
+        }
+        Flux<String> tokens = Flux.fromIterable(chunks);
+        if (!tokenInterval.isZero()) {
+            tokens = tokens.delayElements(tokenInterval);
+        }
+        Flux<ChatResponse> body = tokens.map(chunk -> new ChatResponse(List.of(new Generation(new AssistantMessage(chunk)))))
+                // 最后一个分片带用量信息，与 Ollama 的 done 分片一致
+                .concatWith(Mono.fromSupplier(() -> response("", input.length(), output.length())));
+        Duration ttft = latency.sample();
+        return ttft.isZero() ? body : Mono.delay(ttft).thenMany(body);
+    }
+
+    private static ChatResponse response(String text, int inputChars, int outputChars) {
+        // 按中文约 1.5 字/token 估算用量，供 token 计数指标使用
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))),
+                ChatResponseMetadata.builder()
+                        .usage(new DefaultUsage((int) (inputChars / 1.5), (int) (outputChars / 1.5)))
+                        .build());
+    }
+
+    private static boolean structured(Prompt prompt) {
+        return prompt.getOptions() instanceof OllamaOptions options && options.getFormat() != null;
+    }
+
+    /**
+     * 同 {@link #respond(String)}；请求带 format（结构化输出）时与 Ollama 一样只输出 JSON 本身
+     */
+    static String respond(String input, boolean structured) {
+        String output = respond(input);
+        if (!structured) {
+            return output;
+        }
+        JsonStreamScanner scanner = new JsonStreamScanner();
+        scanner.append(output);
+        return scanner.isComplete() ? scanner.json() : output;
+    }
+
+    /**
+     * 按提示词特征区分调用方
+     */
+    static String respond(String input) {
+        if (input.contains("外呼失败原因分类")) {
+            return """
+                    <think>
+                    客户明确表示不需要，属于无需求。
+                    </think>
+                    [{"失败原因大类编号": "01", "失败原因大类名称": "客户无需求", "失败原因小类编号": "001",
+                      "失败原因小类名称": "明确拒绝", "原文摘要": "%s", "解释": "客户直接拒绝办理"}]"""
+                    .formatted(firstCustomerLine(input));
+        }
+        if (input.contains("对话摘要助手")) {
+            return "<think></think>用户咨询了套餐资费与合约期，助手说明了价格和退订方式。";
+        }
+        if (input.contains("异议列表")) {
+            return extraction(input);
+        }
+        if (input.contains("选出最匹配的一个分类编号")) {
+            return compactClassification(input);
+        }
+        if (input.contains("客户异议分类")) {
+            return classification(input);
+        }
+        return "<think></think>您好，关于您说的“" + abbreviate(lastLine(input), 40)
+                + "”，这边帮您查询了一下：当前套餐每月 39 元，包含 30G 流量，合约期 12 个月，如需变更可以随时联系我们。";
+    }
+
+    private static String extraction(String input) {
+        Matcher matcher = CUSTOMER_LINE.matcher(input);
+        StringBuilder items = new StringBuilder();
+        int count = 0;
+        while (matcher.find() && count < 3) {
+            String line = abbreviate(matcher.group(1).trim(), 40);
+            if (count++ > 0) {
+                items.append(",\n");
+            }
+            items.append("""
+                    {"问题": "客户异议：%s", "原文摘要": "客户:%s", "解释": "客户对推荐业务提出疑问"}"""
+                    .formatted(escape(line), escape(line)));
+        }
+        return "<think>\n分析客户发言，找出异议。\n</think>\n```json\n{\"异议列表\": [" + items + "]}\n```";
+    }
+
+    private static String classification(String input) {
+        String question = "";
+        // 提示词说明里也出现了空的 <problem></problem>，取最后一个
+        Matcher matcher = PROBLEM_BLOCK.matcher(input);
+        String block = null;
+        while (matcher.find()) {
+            block = matcher.group(1);
+        }
+        if (block != null && !block.isEmpty()) {
+            try {
+                JsonNode problem = OBJECT_MAPPER.readTree(block);
+                question = problem.path("问题").asText("");
+            } catch (Exception e) {
+                question = "";
+            }
+        }
+        return """
+                <think>
+                根据知识库匹配最接近的分类。
+                </think>
+                [{"针对的问题": "%s", "问题大类编号": "01", "问题大类名称": "其他异议", "问题小类编号": "002",
+                  "问题小类名称": "套餐基础疑问类：针对套餐本身的存在、价格、状态等基础问题提出疑问",
+                  "客服回答": "这个套餐每月 39 元", "原文摘要": "", "解释": "客户询问套餐价格"}]"""
+                .formatted(escape(question));
+    }
+
+    /**
+     * 紧凑输出：编号取召回知识里的第一个 code
+     */
+    private static String compactClassification(String input) {
+        Matcher code = KNOWLEDGE_CODE.matcher(input);
+        return """
+                <think>
+                根据知识库匹配最接近的分类。
+                </think>
+                {"编号": "%s"}"""
+                .formatted(code.find() ? code.group(1) : "00");
+    }
+
+    private static String firstCustomerLine(String input) {
+        Matcher matcher = CUSTOMER_LINE.matcher(input);
+        return matcher.find() ? escape(abbreviate(matcher.group(1).trim(), 40)) : "";
+    }
+
+    private static String lastLine(String input) {
+        String trimmed = input.strip();
+        int newline = trimmed.lastIndexOf('\n');
+        return newline < 0 ? trimmed : trimmed.substring(newline + 1);
+    }
+
+    private static String abbreviate(String text, int max) {
+        return text.length() <= max ? text : text.substring(0, max);
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
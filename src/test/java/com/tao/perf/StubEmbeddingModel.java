@@ -0,0 +1,76 @@
+package com.tao.perf;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 确定性的桩 EmbeddingModel：把相邻两个字符的哈希散列到固定维度后做 L2 归一化
+ * 字面相近的文本向量也相近，检索能召回到有意义的分类；每次批量调用按配置的分布等待一次
+ * 另外所有向量叠加一个等长的公共分量，字面毫无重合的文本余弦相似度也有 0.5 左右（真实 embedding 模型同样如此），
+ * 否则检索阈值 0.4 下大多召回为空，RAG 会把提示词替换成兜底话术，压不到分类路径
+ */
+class StubEmbeddingModel implements EmbeddingModel {
+
+    private final LatencyDistribution latency;
+
+    private final int dimensions;
+
+    StubEmbeddingModel(LatencyDistribution latency, int dimensions) {
+        this.latency = latency;
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        latency.sleep();
+        List<Embedding> embeddings = new ArrayList<>(request.getInstructions().size());
+        for (String text : request.getInstructions()) {
+            embeddings.add(new Embedding(vector(text), embeddings.size()));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    float[] vector(String text) {
+        float[] vec = new float[dimensions];
+        for (int i = 0; i + 1 < text.length(); i++) {
+            int hash = text.charAt(i) * 31 + text.charAt(i + 1);
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            vec[Math.floorMod(hash, dimensions)] += 1f;
+        }
+        normalize(vec);
+        vec[0] += 1f;
+        normalize(vec);
+        return vec;
+    }
+
+    private static void normalize(float[] vec) {
+        double norm = 0;
+        for (float v : vec) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float inv = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < vec.length; i++) {
+                vec[i] *= inv;
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.tao.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * pgvector 模式下独立加载的分类字典，数据库用 Mockito 模拟
+ */
+class CategoryDictionaryLoaderTest {
+
+    /**
+     * 只查编号和名称列，不读向量；表版本不变时不重复加载
+     */
+    @Test
+    void loadsNamesWithoutEmbeddingsAndSkipsUnchangedTable() throws Exception {
+        JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        Mockito.when(jdbcTemplate.queryForObject(anyString(), eq(String.class))).thenReturn("1:");
+        Mockito.when(jdbcTemplate.query(anyString(), ArgumentMatchers.<RowMapper<Object>>any())).thenAnswer(invocation -> {
+            ResultSet rs = Mockito.mock(ResultSet.class);
+            Mockito.when(rs.getString(anyString())).thenAnswer(call -> switch (call.<String>getArgument(0)) {
+                case "code" -> "01002";
+                case "big_code" -> "01";
+                case "big_name" -> "资费";
+                case "small_code" -> "002";
+                default -> "套餐太贵";
+            });
+            RowMapper<Object> mapper = invocation.getArgument(1);
+            return List.of(mapper.mapRow(rs, 0));
+        });
+
+        try (CategoryDictionaryLoader loader = new CategoryDictionaryLoader(jdbcTemplate, "objection_category_embedding")) {
+            Assertions.assertTrue(loader.refresh());
+            Assertions.assertFalse(loader.refresh());
+            Assertions.assertEquals(new CategoryDictionary.Category("01002", "01", "资费", "002", "套餐太贵"),
+                    loader.dictionary().find("01002").orElseThrow());
+        }
+        Mockito.verify(jdbcTemplate, Mockito.times(1)).query(
+                eq("SELECT code, big_code, big_name, small_code, small_title FROM objection_category_embedding"),
+                ArgumentMatchers.<RowMapper<Object>>any());
+        Mockito.verify(jdbcTemplate, Mockito.never()).query(contains("embedding::text"), ArgumentMatchers.<RowMapper<Object>>any());
+    }
+}
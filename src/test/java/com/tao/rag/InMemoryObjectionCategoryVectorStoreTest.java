@@ -0,0 +1,175 @@
+package com.tao.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * 内存分类索引的请求路径测试，数据库与 embedding 用 Mockito 模拟
+ */
+class InMemoryObjectionCategoryVectorStoreTest {
+
+    /**
+     * 索引为空（后台导入尚未完成）时直接返回空结果，不在请求线程上查库，也不生成 query 向量
+     */
+    @Test
+    void emptyIndexDoesNotLoadOnRequestThread() {
+        JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        EmbeddingModel embeddingModel = Mockito.mock(EmbeddingModel.class);
+        try (InMemoryObjectionCategoryVectorStore store = new InMemoryObjectionCategoryVectorStore(
+                embeddingModel, jdbcTemplate, Mockito.mock(VectorStore.class), "objection_category_embedding")) {
+
+            Assertions.assertTrue(store.similaritySearch(SearchRequest.builder().query("套餐多少钱").build()).isEmpty());
+            Mockito.verifyNoInteractions(jdbcTemplate, embeddingModel);
+        }
+    }
+
+    /**
+     * 编号字典随索引快照一起更新：一次整表加载同时得到向量矩阵和字典，查字典不再访问数据库
+     */
+    @Test
+    void refreshUpdatesDictionaryFromSameLoad() throws Exception {
+        JdbcTemplate jdbcTemplate = table(row("01002", "01", "[0.1,0.2,0.3]"));
+        try (InMemoryObjectionCategoryVectorStore store = new InMemoryObjectionCategoryVectorStore(
+                Mockito.mock(EmbeddingModel.class), jdbcTemplate, Mockito.mock(VectorStore.class), "objection_category_embedding")) {
+            CategoryDictionary dictionary = store.dictionary();
+            Assertions.assertTrue(dictionary.find("01002").isEmpty());
+
+            Assertions.assertTrue(store.refresh());
+            Mockito.clearInvocations(jdbcTemplate);
+            Assertions.assertEquals(1, store.size());
+            Assertions.assertEquals(new CategoryDictionary.Category("01002", "01", "大类01", "002", "小类01002"),
+                    dictionary.find(" 01002 ").orElseThrow());
+            Assertions.assertTrue(dictionary.find("99001").isEmpty());
+            Mockito.verifyNoInteractions(jdbcTemplate);
+        }
+    }
+
+    /**
+     * 结果按距离升序；topK 小于行数时只保留最近的 K 行，大于行数时返回全部
+     */
+    @Test
+    void returnsNearestRowsInOrder() throws Exception {
+        try (InMemoryObjectionCategoryVectorStore store = fixedIndex()) {
+            Assertions.assertEquals(List.of("01001", "02001"), codes(store.similaritySearch(request(2).build())));
+            Assertions.assertEquals(List.of("01001", "02001", "01002", "02002"),
+                    codes(store.similaritySearch(request(10).build())));
+            Assertions.assertEquals(List.of("01001"), codes(store.similaritySearch(request(1).build())));
+        }
+    }
+
+    /**
+     * 相似度阈值换算成距离上界：恰好落在上界上的行保留，阈值再高一点就被截掉
+     */
+    @Test
+    void similarityThresholdIsInclusiveAtBoundary() throws Exception {
+        try (InMemoryObjectionCategoryVectorStore store = fixedIndex()) {
+            // 02002 距离平方 0.5，对应相似度 1 - 0.5 / 2 = 0.75
+            Assertions.assertEquals(List.of("01001", "02001", "01002", "02002"),
+                    codes(store.similaritySearch(request(10).similarityThreshold(0.75).build())));
+            Assertions.assertEquals(List.of("01001", "02001", "01002"),
+                    codes(store.similaritySearch(request(10).similarityThreshold(0.76).build())));
+        }
+    }
+
+    /**
+     * 过滤表达式在扫描时生效，topK 在过滤之后计算
+     */
+    @Test
+    void filterExpressionRestrictsRows() throws Exception {
+        try (InMemoryObjectionCategoryVectorStore store = fixedIndex()) {
+            Assertions.assertEquals(List.of("02001", "02002"),
+                    codes(store.similaritySearch(request(10).filterExpression("big_code == '02'").build())));
+            Assertions.assertEquals(List.of("02001"),
+                    codes(store.similaritySearch(request(1).filterExpression("big_code == '02'").build())));
+        }
+    }
+
+    /**
+     * 索引维度取多数行的向量长度：第一行向量损坏时只跳过这一行
+     */
+    @Test
+    void malformedFirstRowDoesNotDropTable() throws Exception {
+        JdbcTemplate jdbcTemplate = table(
+                row("09001", "09", "[0.1]"),
+                row("01001", "01", "[0.1,0]"),
+                row("01002", "01", "[0.3,0]"));
+        try (InMemoryObjectionCategoryVectorStore store = new InMemoryObjectionCategoryVectorStore(
+                queryAtOrigin(), jdbcTemplate, Mockito.mock(VectorStore.class), "objection_category_embedding")) {
+            store.refresh();
+            Assertions.assertEquals(2, store.size());
+            Assertions.assertEquals(List.of("01001", "01002"), codes(store.similaritySearch(request(10).build())));
+            Assertions.assertTrue(store.dictionary().find("09001").isPresent());
+        }
+    }
+
+    /**
+     * 4 行 2 维的固定矩阵，query 向量为原点，距离平方依次为 0.01、0.09、0.04、0.5
+     */
+    private static InMemoryObjectionCategoryVectorStore fixedIndex() throws Exception {
+        InMemoryObjectionCategoryVectorStore store = new InMemoryObjectionCategoryVectorStore(
+                queryAtOrigin(),
+                table(row("01001", "01", "[0.1,0]"),
+                        row("01002", "01", "[0.3,0]"),
+                        row("02001", "02", "[0.2,0]"),
+                        row("02002", "02", "[0.5,0.5]")),
+                Mockito.mock(VectorStore.class), "objection_category_embedding");
+        store.refresh();
+        return store;
+    }
+
+    private static EmbeddingModel queryAtOrigin() {
+        EmbeddingModel embeddingModel = Mockito.mock(EmbeddingModel.class);
+        Mockito.when(embeddingModel.embed(anyString())).thenReturn(new float[]{0f, 0f});
+        return embeddingModel;
+    }
+
+    private static SearchRequest.Builder request(int topK) {
+        return SearchRequest.builder().query("套餐多少钱").topK(topK);
+    }
+
+    private static Map<String, String> row(String code, String bigCode, String embedding) {
+        return Map.of("code", code, "big_code", bigCode, "big_name", "大类" + bigCode,
+                "small_code", code.substring(2), "small_title", "小类" + code, "source_file", "objection.csv",
+                "embedding", embedding);
+    }
+
+    /**
+     * 模拟分类表：版本查询固定，整表查询逐行交给 RowMapper
+     */
+    @SafeVarargs
+    private static JdbcTemplate table(Map<String, String>... rows) throws Exception {
+        JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        Mockito.when(jdbcTemplate.queryForObject(anyString(), eq(String.class))).thenReturn(rows.length + ":");
+        Mockito.when(jdbcTemplate.query(anyString(), ArgumentMatchers.<RowMapper<Object>>any())).thenAnswer(invocation -> {
+            RowMapper<Object> mapper = invocation.getArgument(1);
+            List<Object> mapped = new ArrayList<>();
+            for (Map<String, String> row : rows) {
+                ResultSet rs = Mockito.mock(ResultSet.class);
+                Mockito.when(rs.getString(anyString())).thenAnswer(call -> row.get(call.<String>getArgument(0)));
+                mapped.add(mapper.mapRow(rs, mapped.size()));
+            }
+            return mapped;
+        });
+        return jdbcTemplate;
+    }
+
+    private static List<String> codes(List<Document> documents) {
+        return documents.stream().map(document -> (String) document.getMetadata().get("code")).toList();
+    }
+}
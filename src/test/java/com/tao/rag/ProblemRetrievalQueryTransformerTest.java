@@ -0,0 +1,54 @@
+package com.tao.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.rag.Query;
+
+import java.util.Map;
+
+/**
+ * ProblemRetrievalQueryTransformer 检索 query 构造测试
+ */
+class ProblemRetrievalQueryTransformerTest {
+
+    /**
+     * 按“问题/原文摘要/解释”顺序拼接，去掉首尾空白，忽略空字段和其他字段
+     */
+    @Test
+    void buildsQueryFromProblemFields() {
+        Assertions.assertEquals("询问资费\n客户：一个月多少钱？\n客户关心价格",
+                ProblemRetrievalQueryTransformer.buildRetrievalQuery("""
+                        {"解释": "客户关心价格", "问题": " 询问资费 ", "原文摘要": "客户：一个月多少钱？", "客服回答": "39 元"}
+                        """));
+        Assertions.assertEquals("询问资费",
+                ProblemRetrievalQueryTransformer.buildRetrievalQuery("{\"问题\": \"询问资费\", \"原文摘要\": \"\"}"));
+    }
+
+    /**
+     * 非 JSON、数组、缺少全部字段或为空时返回 null，由调用方回退到完整提示词检索
+     */
+    @Test
+    void malformedOrEmptyReturnsNull() {
+        Assertions.assertNull(ProblemRetrievalQueryTransformer.buildRetrievalQuery(null));
+        Assertions.assertNull(ProblemRetrievalQueryTransformer.buildRetrievalQuery("  "));
+        Assertions.assertNull(ProblemRetrievalQueryTransformer.buildRetrievalQuery("{\"问题\": \"没说完"));
+        Assertions.assertNull(ProblemRetrievalQueryTransformer.buildRetrievalQuery("[{\"问题\": \"询问资费\"}]"));
+        Assertions.assertNull(ProblemRetrievalQueryTransformer.buildRetrievalQuery("{\"其他\": \"x\", \"问题\": \" \"}"));
+    }
+
+    /**
+     * 有检索文本参数时替换 query，没有时原样返回
+     */
+    @Test
+    void transformUsesContextParam() {
+        ProblemRetrievalQueryTransformer transformer = new ProblemRetrievalQueryTransformer();
+        Query query = Query.builder()
+                .text("整段提示词")
+                .context(Map.of(ProblemRetrievalQueryTransformer.RETRIEVAL_QUERY, "询问资费"))
+                .build();
+        Assertions.assertEquals("询问资费", transformer.transform(query).text());
+
+        Query plain = new Query("整段提示词");
+        Assertions.assertSame(plain, transformer.transform(plain));
+    }
+}
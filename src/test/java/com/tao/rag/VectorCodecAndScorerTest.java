@@ -0,0 +1,124 @@
+package com.tao.rag;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+
+/**
+ * 内存向量检索 / pgvector 编解码相关的纯计算测试
+ */
+class VectorCodecAndScorerTest {
+
+    /**
+     * Vector API 实现与标量实现结果一致（含非整倍数维度的尾部处理）
+     */
+    @Test
+    void bestScorerMatchesScalar() {
+        Random random = new Random(42);
+        int dim = 4096 + 3;
+        float[] query = new float[dim];
+        float[] matrix = new float[dim * 2];
+        for (int i = 0; i < dim; i++) {
+            query[i] = random.nextFloat() - 0.5f;
+        }
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = random.nextFloat() - 0.5f;
+        }
+
+        VectorScorer scalar = new ScalarVectorScorer();
+        VectorScorer best = VectorScorer.best();
+        for (int row = 0; row < 2; row++) {
+            float expected = scalar.squaredL2(query, matrix, row * dim, dim);
+            float actual = best.squaredL2(query, matrix, row * dim, dim);
+            Assertions.assertEquals(expected, actual, expected * 1e-4f);
+        }
+    }
+
+    @Test
+    void pgVectorTextRoundTrip() {
+        float[] vec = PgVectorCodec.parsePgVectorLiteral("[0.5,-1.25,3e-2]");
+        Assertions.assertArrayEquals(new float[]{0.5f, -1.25f, 0.03f}, vec, 1e-6f);
+        Assertions.assertEquals(0, PgVectorCodec.parsePgVectorLiteral("[]").length);
+
+        float[] original = {0.123456789f, -7.5e-8f, 1234.5f};
+        Assertions.assertArrayEquals(original, PgVectorCodec.parsePgVectorLiteral(PgVectorCodec.toPgVectorLiteral(original)));
+    }
+
+    /**
+     * 二进制格式：int16 维度 + int16 保留位 + 大端 float4
+     */
+    @Test
+    void pgVectorBinaryRoundTrip() {
+        float[] original = {1.0f, -2.5f, 3.25f};
+        PgVectorCodec.VectorParameter param = new PgVectorCodec.VectorParameter(original);
+        byte[] bytes = new byte[param.lengthInBytes()];
+        param.toBytes(bytes, 0);
+        Assertions.assertEquals(16, bytes.length);
+        Assertions.assertEquals(3, bytes[1]);
+        // 1.0f = 0x3F800000
+        Assertions.assertEquals((byte) 0x3F, bytes[4]);
+        Assertions.assertEquals((byte) 0x80, bytes[5]);
+
+        PgVectorCodec.VectorParameter decoded = new PgVectorCodec.VectorParameter(new float[0]);
+        decoded.setByteValue(bytes, 0);
+        Assertions.assertArrayEquals(original, decoded.vector());
+    }
+
+    /**
+     * 过滤表达式下推：参数化 SQL 与内存谓词语义一致，非法字段直接拒绝
+     */
+    @Test
+    void filterExpressionTranslation() {
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        Filter.Expression expression = b.and(
+                b.eq("big_code", "01"),
+                b.nin("small_code", List.of("001", "002"))
+        ).build();
+
+        CategoryFilterExpressions.SqlFilter sql = CategoryFilterExpressions.toSql(expression);
+        Assertions.assertEquals("(big_code = ? AND small_code NOT IN (?, ?))", sql.where());
+        Assertions.assertEquals(List.of("01", "001", "002"), sql.params());
+
+        var predicate = CategoryFilterExpressions.toPredicate(expression);
+        Map<String, Object> hit = Map.of("big_code", "01", "small_code", "003");
+        Map<String, Object> miss = Map.of("big_code", "01", "small_code", "002");
+        Assertions.assertTrue(predicate.test(hit::get));
+        Assertions.assertFalse(predicate.test(miss::get));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> CategoryFilterExpressions.toSql(b.eq("1=1; DROP TABLE x; --", "a").build()));
+    }
+
+    /**
+     * NULL 字段按 SQL 三值逻辑处理：比较结果为 UNKNOWN，取反后仍不命中，与 pgvector 的 WHERE 结果一致
+     */
+    @Test
+    void notOverNullColumnDoesNotMatch() {
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        Map<String, Object> nullSource = new HashMap<>();
+        nullSource.put("big_code", "01");
+        nullSource.put("source_file", null);
+        Map<String, Object> otherSource = Map.of("big_code", "01", "source_file", "b.csv");
+
+        var notEq = CategoryFilterExpressions.toPredicate(b.not(b.eq("source_file", "a.csv")).build());
+        Assertions.assertFalse(notEq.test(nullSource::get));
+        Assertions.assertTrue(notEq.test(otherSource::get));
+
+        var notIn = CategoryFilterExpressions.toPredicate(b.not(b.in("source_file", List.of("a.csv"))).build());
+        Assertions.assertFalse(notIn.test(nullSource::get));
+        Assertions.assertTrue(notIn.test(otherSource::get));
+
+        // UNKNOWN OR TRUE 为 TRUE；NOT (UNKNOWN AND FALSE) 即 NOT FALSE 为 TRUE
+        Assertions.assertTrue(CategoryFilterExpressions.toPredicate(
+                b.or(b.eq("source_file", "a.csv"), b.eq("big_code", "01")).build()).test(nullSource::get));
+        Assertions.assertTrue(CategoryFilterExpressions.toPredicate(
+                b.not(b.and(b.eq("source_file", "a.csv"), b.eq("big_code", "02"))).build()).test(nullSource::get));
+    }
+}
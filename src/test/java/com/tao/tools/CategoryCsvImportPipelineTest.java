@@ -0,0 +1,181 @@
+package com.tao.tools;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+
+/**
+ * 分类 CSV 增量导入测试：哈希比对、分批 embedding、按文件统计失败；数据库与 embedding 用 Mockito 模拟
+ */
+class CategoryCsvImportPipelineTest {
+
+    private static final String HEADER = "编号,大类编号,大类,小类编号,小类标题\n";
+
+    @TempDir
+    Path dir;
+
+    private final JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+
+    private final EmbeddingModel embeddingModel = Mockito.mock(EmbeddingModel.class);
+
+    // 每次 embed(List) 的入参
+    private final List<List<String>> embedCalls = new CopyOnWriteArrayList<>();
+
+    // 每次带向量 upsert 的批大小
+    private final List<Integer> upsertBatches = new CopyOnWriteArrayList<>();
+
+    // 仅更新字段的行
+    private final List<String> updatedCodes = new CopyOnWriteArrayList<>();
+
+    // 被删除的编号
+    private final List<String> deletedCodes = new CopyOnWriteArrayList<>();
+
+    /**
+     * 未变化的行跳过；只有名称变了的行只更新字段；标题变了或新增的行按批重新 embedding
+     */
+    @Test
+    void diffsByContentHashAndBatchesEmbeddings() throws Exception {
+        write("a.csv", HEADER
+                + "01001,01,其他异议,001,不需要\n"
+                + "01002,01,其他异议（新）,002,价格太贵\n"
+                + "01003,01,其他异议,003,没有时间（改）\n"
+                + "01004,01,其他异议,004,已有宽带\n"
+                + "01005,01,其他异议,005,信号不好\n");
+        mockDatabase(Map.of(
+                "01001", row("01001", "01", "其他异议", "001", "不需要"),
+                "01002", row("01002", "01", "其他异议", "002", "价格太贵"),
+                "01003", row("01003", "01", "其他异议", "003", "没有时间")));
+
+        CategoryCsvImportPipeline.ImportStats stats = pipeline(2).importAll("t", pattern());
+
+        Assertions.assertEquals(new CategoryCsvImportPipeline.ImportStats(1, 5, 3, 1, 1, 0, List.of()), stats);
+        Assertions.assertTrue(stats.complete());
+        Assertions.assertEquals(List.of(List.of("没有时间（改）", "已有宽带"), List.of("信号不好")), embedCalls);
+        Assertions.assertEquals(List.of(2, 1), upsertBatches);
+        Assertions.assertEquals(List.of("01002"), updatedCodes);
+    }
+
+    /**
+     * 表头不对、embedding 失败的文件记为失败，不影响其他文件，其行数不计入统计
+     */
+    @Test
+    void countsFailedFilesSeparately() throws Exception {
+        write("a.csv", HEADER + "01001,01,其他异议,001,不需要\n");
+        write("b.csv", "code,title\n01002,价格太贵\n");
+        write("c.csv", HEADER + "01003,01,其他异议,003,BOOM\n");
+        mockDatabase(Map.of());
+
+        CategoryCsvImportPipeline.ImportStats stats = pipeline(32).importAll("t", pattern());
+
+        Assertions.assertFalse(stats.complete());
+        Assertions.assertEquals(List.of("b.csv", "c.csv"), stats.failedFiles().stream().sorted().toList());
+        Assertions.assertEquals(1, stats.files());
+        Assertions.assertEquals(1, stats.rows());
+        Assertions.assertEquals(1, stats.embedded());
+        Assertions.assertEquals(List.of(1), upsertBatches);
+        Assertions.assertTrue(deletedCodes.isEmpty(), "有文件失败时不删除任何编号");
+    }
+
+    /**
+     * CSV 中删掉的编号在同一次导入中从表里删除
+     */
+    @Test
+    void deletesCodesRemovedFromCsv() throws Exception {
+        write("a.csv", HEADER + "01001,01,其他异议,001,不需要\n");
+        write("b.csv", HEADER + "02001,02,失败原因,001,无人接听\n");
+        mockDatabase(Map.of(
+                "01001", row("01001", "01", "其他异议", "001", "不需要"),
+                "01009", row("01009", "01", "其他异议", "009", "已下线的分类"),
+                "02001", row("02001", "02", "失败原因", "001", "无人接听")));
+
+        CategoryCsvImportPipeline.ImportStats stats = pipeline(32).importAll("t", pattern());
+
+        Assertions.assertTrue(stats.complete());
+        Assertions.assertEquals(2, stats.unchanged());
+        Assertions.assertEquals(1, stats.deleted());
+        Assertions.assertEquals(List.of("01009"), deletedCodes);
+    }
+
+    private CategoryCsvImportPipeline pipeline(int embedBatchSize) {
+        return new CategoryCsvImportPipeline(embeddingModel, jdbcTemplate, embedBatchSize, 2);
+    }
+
+    private String pattern() {
+        return dir.toUri() + "*.csv";
+    }
+
+    private void write(String name, String content) throws Exception {
+        Files.writeString(dir.resolve(name), content, StandardCharsets.UTF_8);
+    }
+
+    private static CategoryCsvImportPipeline.CategoryRow row(String code, String bigCode, String bigName,
+                                                            String smallCode, String smallTitle) {
+        return new CategoryCsvImportPipeline.CategoryRow(code, bigCode, bigName, smallCode, smallTitle, "a.csv", 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockDatabase(Map<String, CategoryCsvImportPipeline.CategoryRow> existing) throws Exception {
+        Mockito.doAnswer(inv -> {
+            RowCallbackHandler handler = inv.getArgument(1);
+            for (CategoryCsvImportPipeline.CategoryRow row : existing.values()) {
+                ResultSet rs = Mockito.mock(ResultSet.class);
+                Mockito.when(rs.getString("code")).thenReturn(row.code());
+                Mockito.when(rs.getString("small_title")).thenReturn(row.smallTitle());
+                Mockito.when(rs.getString("content_hash")).thenReturn(row.contentHash());
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+
+        Mockito.when(jdbcTemplate.batchUpdate(anyString(), any(BatchPreparedStatementSetter.class))).thenAnswer(inv -> {
+            BatchPreparedStatementSetter setter = inv.getArgument(1);
+            upsertBatches.add(setter.getBatchSize());
+            return new int[setter.getBatchSize()];
+        });
+        Mockito.when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class))).thenAnswer(inv -> {
+            Collection<CategoryCsvImportPipeline.CategoryRow> rows = inv.getArgument(1);
+            rows.forEach(row -> updatedCodes.add(row.code()));
+            return new int[0][];
+        });
+
+        Mockito.when(jdbcTemplate.batchUpdate(anyString(), ArgumentMatchers.<List<Object[]>>any())).thenAnswer(inv -> {
+            List<Object[]> args = inv.getArgument(1);
+            args.forEach(arg -> deletedCodes.add((String) arg[0]));
+            return new int[args.size()];
+        });
+
+        Mockito.when(embeddingModel.embed(anyList())).thenAnswer(inv -> {
+            List<String> titles = inv.getArgument(0);
+            if (titles.contains("BOOM")) {
+                throw new IllegalStateException("mock embedding failure");
+            }
+            embedCalls.add(titles);
+            List<float[]> vectors = new ArrayList<>();
+            titles.forEach(title -> vectors.add(new float[]{title.length()}));
+            return vectors;
+        });
+    }
+}
@@ -0,0 +1,50 @@
+package com.tao.tools;
+
+import com.tao.rag.CategoryDictionary;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * 紧凑输出回填测试
+ */
+class ClassificationHydratorTest {
+
+    private static final ObjectionItem PROBLEM = new ObjectionItem("询问套餐资费", "客户：这个套餐一个月多少钱？", "客户询问价格");
+
+    /**
+     * 编号从字典回填大类/小类，其余字段取自问题和传入的客服回答
+     */
+    @Test
+    void hydratesFromDictionary() {
+        CompactClassification compact = ClassificationHydrator.parse("{\"编号\": \"01002\"}");
+        ClassificationResult result = ClassificationHydrator.hydrate(PROBLEM, compact, dictionary(), "每月 39 元");
+
+        Assertions.assertEquals(new ClassificationResult("询问套餐资费", "01", "其他异议", "002",
+                "套餐基础疑问类：针对套餐本身的存在、价格、状态等基础问题提出疑问",
+                "每月 39 元", "客户：这个套餐一个月多少钱？", "客户询问价格"), result);
+    }
+
+    /**
+     * 无匹配（00）或字典中不存在的编号按新分类处理；带 think 块的文本输出也能解析
+     */
+    @Test
+    void unknownCodeBecomesNewCategory() {
+        CompactClassification compact = ClassificationHydrator.parse(
+                "<think></think>\n```json\n{\"编号\": \"99001\"}\n```");
+        ClassificationResult result = ClassificationHydrator.hydrate(PROBLEM, compact, dictionary(), "");
+
+        Assertions.assertEquals(ClassificationHydrator.NEW_CATEGORY_CODE, result.bigCode());
+        Assertions.assertEquals(ClassificationHydrator.NEW_CATEGORY_NAME, result.bigName());
+        Assertions.assertEquals("", result.smallCode());
+        Assertions.assertNull(ClassificationHydrator.parse("不是 JSON"));
+    }
+
+    private static CategoryDictionary dictionary() {
+        CategoryDictionary dictionary = new CategoryDictionary("objection_category_embedding");
+        dictionary.replace(List.of(new CategoryDictionary.Category("01002", "01", "其他异议", "002",
+                "套餐基础疑问类：针对套餐本身的存在、价格、状态等基础问题提出疑问")));
+        return dictionary;
+    }
+}
@@ -0,0 +1,38 @@
+package com.tao.tools;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * ObjectionExtractTool 输出解析测试，不依赖 Ollama
+ */
+class ObjectionExtractToolTest {
+
+    /**
+     * 结构化输出一次反序列化为记录类，多余字段忽略
+     */
+    @Test
+    void bindsStructuredOutput() {
+        List<ObjectionItem> items = ObjectionExtractTool.bindProblems("""
+                {"异议列表": [{"问题": "询问资费", "原文摘要": "客户:多少钱", "解释": "问价格", "置信度": 0.9}]}""");
+        Assertions.assertEquals(List.of(new ObjectionItem("询问资费", "客户:多少钱", "问价格")), items);
+    }
+
+    /**
+     * 非结构化输出（带 think 块和代码块包裹）回退到文本清洗，截断的输出返回空列表
+     */
+    @Test
+    void fallsBackToTextCleanup() {
+        List<ObjectionItem> items = ObjectionExtractTool.bindProblems("""
+                <think>分析</think>
+                ```json
+                {"异议列表": [{"问题": "不需要", "原文摘要": "客户:不用了", "解释": "拒绝"}]}
+                ```""");
+        Assertions.assertEquals(1, items.size());
+        Assertions.assertEquals("不需要", items.get(0).problem());
+
+        Assertions.assertEquals(List.of(), ObjectionExtractTool.bindProblems("{\"异议列表\": [{\"问题\": \"没说"));
+    }
+}
@@ -0,0 +1,140 @@
+package com.tao.tools;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * ProblemClassifyTool 纯逻辑测试，不依赖 Ollama / Postgres
+ */
+class ProblemClassifyToolTest {
+
+    private static final String INFO = "客服：您好。\n客户：这不是要扣费，是不是？";
+
+    private static final String PROBLEMS = """
+            [
+              {"问题": "A", "原文摘要": "a", "解释": "a"},
+              {"问题": "B", "原文摘要": "b", "解释": "b"},
+              {"问题": "C", "原文摘要": "c", "解释": "c"},
+              {"问题": "D", "原文摘要": "d", "解释": "d"}
+            ]
+            """;
+
+    /**
+     * 并发模式下，模型返回快慢不一，输出仍需按输入顺序排列
+     */
+    @Test
+    void concurrentKeepsInputOrder() {
+        ProblemClassifyTool tool = new ProblemClassifyTool(true, 4, 8);
+        String result = tool.doClassify(INFO, PROBLEMS, (info, one) -> {
+            sleepQuietly(ThreadLocalRandom.current().nextInt(5, 50));
+            return "[{\"针对的问题\": \"" + questionOf(one) + "\"}]";
+        });
+
+        int a = result.indexOf("\"A\"");
+        int b = result.indexOf("\"B\"");
+        int c = result.indexOf("\"C\"");
+        int d = result.indexOf("\"D\"");
+        Assertions.assertTrue(a >= 0 && a < b && b < c && c < d, result);
+    }
+
+    /**
+     * 单个问题抛异常或返回非 JSON，只跳过该问题
+     */
+    @Test
+    void failureIsIsolatedPerProblem() {
+        for (boolean parallel : new boolean[]{true, false}) {
+            ProblemClassifyTool tool = new ProblemClassifyTool(parallel, 2, 2);
+            String result = tool.doClassify(INFO, PROBLEMS, (info, one) -> {
+                String q = questionOf(one);
+                if ("B".equals(q)) {
+                    throw new IllegalStateException("mock failure");
+                }
+                if ("C".equals(q)) {
+                    return "<think>不是 JSON</think>";
+                }
+                return "```json\n[{\"针对的问题\": \"" + q + "\"}]\n```";
+            });
+
+            Assertions.assertTrue(result.contains("\"A\""), result);
+            Assertions.assertFalse(result.contains("\"B\""), result);
+            Assertions.assertFalse(result.contains("\"C\""), result);
+            Assertions.assertTrue(result.contains("\"D\""), result);
+        }
+    }
+
+    /**
+     * 结构化输出模式：合法 JSON 直接绑定为 ClassificationResult，按记录字段顺序输出；非法输出回退到文本清洗
+     */
+    @Test
+    void structuredOutputBindsAndFallsBack() {
+        ProblemClassifyTool tool = new ProblemClassifyTool(false, 1, 1, true);
+        String result = tool.doClassify(INFO, List.of(
+                new ObjectionItem("A", "a", "a"),
+                new ObjectionItem("B", "b", "b")), (info, one) -> {
+            if ("A".equals(questionOf(one))) {
+                return "[{\"解释\": \"e\", \"针对的问题\": \"A\", \"问题大类编号\": \"01\", \"问题大类名称\": \"其他异议\","
+                        + " \"问题小类编号\": \"002\", \"问题小类名称\": \"n\", \"客服回答\": \"\", \"原文摘要\": \"a\"}]";
+            }
+            return "<think></think>```json\n[{\"针对的问题\": \"B\"}]\n```";
+        });
+
+        int a = result.indexOf("\"A\"");
+        Assertions.assertTrue(a >= 0 && a < result.indexOf("\"B\""), result);
+        // 按 ClassificationResult 字段顺序序列化，“解释”在最后
+        Assertions.assertTrue(result.indexOf("\"针对的问题\" : \"A\"") < result.indexOf("\"解释\" : \"e\""), result);
+    }
+
+    /**
+     * 等待结果时被中断：抛出 CancellationException 并取消仍在运行的分类，不返回部分结果
+     */
+    @Test
+    void interruptCancelsOutstandingProblems() throws Exception {
+        ProblemClassifyTool tool = new ProblemClassifyTool(true, 4, 8);
+        CountDownLatch started = new CountDownLatch(4);
+        CountDownLatch cancelled = new CountDownLatch(4);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread caller = Thread.ofVirtual().start(() -> {
+            try {
+                tool.doClassify(INFO, PROBLEMS, (info, one) -> {
+                    started.countDown();
+                    try {
+                        Thread.sleep(60_000);
+                    } catch (InterruptedException e) {
+                        cancelled.countDown();
+                        Thread.currentThread().interrupt();
+                    }
+                    return "[]";
+                });
+            } catch (Throwable t) {
+                thrown.set(t);
+            }
+        });
+
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        caller.interrupt();
+        caller.join(5_000);
+        Assertions.assertInstanceOf(CancellationException.class, thrown.get());
+        Assertions.assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+    }
+
+    private static String questionOf(String oneProblemJson) {
+        int start = oneProblemJson.indexOf("\"问题\":\"") + "\"问题\":\"".length();
+        return oneProblemJson.substring(start, oneProblemJson.indexOf('"', start));
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
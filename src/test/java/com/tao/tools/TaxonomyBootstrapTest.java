@@ -0,0 +1,177 @@
+package com.tao.tools;
+
+import com.tao.rag.CategoryDictionaryLoader;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.AvailabilityState;
+import org.springframework.boot.availability.LivenessState;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * TaxonomyBootstrap 状态流转测试：PENDING -> IMPORTING -> READY / FAILED，失败重试与存活/就绪状态
+ */
+class TaxonomyBootstrapTest {
+
+    // 导入在后台线程中发布事件，用线程安全的列表记录
+    private final List<Object> events = new CopyOnWriteArrayList<>();
+
+    private final ApplicationEventPublisher publisher = events::add;
+
+    /**
+     * 后台导入：导入进行中为 IMPORTING，全部完成后才 READY
+     */
+    @Test
+    void backgroundImportGoesThroughImportingToReady() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TaxonomyBootstrap bootstrap = bootstrap("background", 3, importer(() -> {
+            entered.countDown();
+            release.await();
+        }));
+        Assertions.assertEquals(TaxonomyBootstrap.State.PENDING, bootstrap.state());
+
+        bootstrap.onApplicationReady();
+        Assertions.assertTrue(entered.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(TaxonomyBootstrap.State.IMPORTING, bootstrap.state());
+        Assertions.assertFalse(bootstrap.isReady());
+
+        release.countDown();
+        awaitTrue(bootstrap::isReady);
+        Assertions.assertFalse(published().contains(LivenessState.BROKEN));
+    }
+
+    /**
+     * 就绪状态随导入发布：Spring Boot 启动完成时发布的 ACCEPTING_TRAFFIC 在导入完成前被改回 REFUSING_TRAFFIC，
+     * 导入完成后再发布 ACCEPTING_TRAFFIC，Actuator 就绪探针与 /health/readiness 一致
+     */
+    @Test
+    void readinessStateFollowsImport() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TaxonomyBootstrap bootstrap = bootstrap("background", 3, importer(release::await));
+
+        bootstrap.onApplicationReady();
+        bootstrap.onReadinessChange(new AvailabilityChangeEvent<>(this, ReadinessState.ACCEPTING_TRAFFIC));
+        Assertions.assertEquals(ReadinessState.REFUSING_TRAFFIC, published().get(published().size() - 1));
+
+        release.countDown();
+        awaitTrue(() -> published().get(published().size() - 1) == ReadinessState.ACCEPTING_TRAFFIC);
+        Assertions.assertTrue(bootstrap.isReady());
+
+        // 已就绪时 Spring Boot 的 ACCEPTING_TRAFFIC 不再被改回
+        int before = published().size();
+        bootstrap.onReadinessChange(new AvailabilityChangeEvent<>(this, ReadinessState.ACCEPTING_TRAFFIC));
+        Assertions.assertEquals(before, published().size());
+    }
+
+    /**
+     * pgvector 模式的分类字典在进入 READY 前刷新，刷新失败算导入失败
+     */
+    @Test
+    void dictionaryIsRefreshedBeforeReady() {
+        CategoryDictionaryLoader loader = Mockito.mock(CategoryDictionaryLoader.class);
+        TaxonomyBootstrap bootstrap = new TaxonomyBootstrap(List.of(importer(() -> {
+        })), List.of(), List.of(loader), publisher, "blocking", 1, Duration.ofMillis(10), Duration.ofMillis(20));
+
+        Mockito.when(loader.refresh()).thenThrow(new IllegalStateException("mock failure"));
+        Assertions.assertFalse(bootstrap.runImports());
+        Assertions.assertEquals(TaxonomyBootstrap.State.FAILED, bootstrap.state());
+
+        Mockito.reset(loader);
+        Assertions.assertTrue(bootstrap.runImports());
+        Mockito.verify(loader).refresh();
+        Assertions.assertTrue(bootstrap.isReady());
+    }
+
+    /**
+     * 部分文件失败（导入器抛异常）记为 FAILED，退避后重试成功进入 READY
+     */
+    @Test
+    void failedImportIsRetried() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        TaxonomyBootstrap bootstrap = new TaxonomyBootstrap(List.of(importer(() -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("表 t 有文件导入失败: [b.csv]");
+            }
+        })), List.of(), List.of(), publisher, "blocking", 3, Duration.ofMillis(300), Duration.ofSeconds(1));
+
+        bootstrap.run();
+        Assertions.assertEquals(1, calls.get());
+        // 重试在后台等待退避，此时仍未就绪
+        Assertions.assertEquals(TaxonomyBootstrap.State.FAILED, bootstrap.state());
+
+        awaitTrue(bootstrap::isReady);
+        Assertions.assertEquals(2, calls.get());
+        Assertions.assertFalse(published().contains(LivenessState.BROKEN));
+    }
+
+    /**
+     * 重试次数用完仍失败：停在 FAILED，并把存活状态置为 BROKEN
+     */
+    @Test
+    void exhaustedRetriesMarkLivenessBroken() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        TaxonomyBootstrap bootstrap = bootstrap("blocking", 3, importer(() -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("mock failure");
+        }));
+
+        bootstrap.run();
+
+        awaitTrue(() -> published().contains(LivenessState.BROKEN));
+        Assertions.assertEquals(3, calls.get());
+        Assertions.assertEquals(TaxonomyBootstrap.State.FAILED, bootstrap.state());
+    }
+
+    private TaxonomyBootstrap bootstrap(String mode, int maxAttempts, TaxonomyImporter importer) {
+        return new TaxonomyBootstrap(List.of(importer), List.of(), List.of(), publisher, mode, maxAttempts,
+                Duration.ofMillis(10), Duration.ofMillis(20));
+    }
+
+    /**
+     * 已发布的可用性状态，按发布顺序
+     */
+    private List<AvailabilityState> published() {
+        return events.stream()
+                .map(event -> ((AvailabilityChangeEvent<?>) event).getState())
+                .map(AvailabilityState.class::cast)
+                .toList();
+    }
+
+    private static TaxonomyImporter importer(ImportAction action) {
+        return new TaxonomyImporter() {
+            @Override
+            public String tableName() {
+                return "t";
+            }
+
+            @Override
+            public void importTaxonomy() throws Exception {
+                action.run();
+            }
+        };
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(5);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ImportAction {
+        void run() throws Exception;
+    }
+}
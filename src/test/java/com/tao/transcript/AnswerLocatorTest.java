@@ -0,0 +1,48 @@
+package com.tao.transcript;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * AnswerLocator 模糊定位测试
+ */
+class AnswerLocatorTest {
+
+    private static final List<Turn> TURNS = TranscriptParser.parse("""
+            客服：您好，这里是联通客服，给您推荐一个 39 元的新套餐。
+            客户：39 元包含多少流量啊？
+            客服：包含 30G 通用流量，
+            客服：还有 500 分钟通话。
+            客户：换了以后是不是要签合约，中途不能退？
+            客服：合约期是 12 个月，到期前可以办理退订。
+            客户：那我考虑一下吧。
+            """);
+
+    /**
+     * 摘要与原话标点、个别字不同仍能定位，取其后连续的客服发言
+     */
+    @Test
+    void locatesFollowingAgentTurns() {
+        Assertions.assertEquals(1, AnswerLocator.findCustomerTurn(TURNS, "客户:39元包含多少流量"));
+        Assertions.assertEquals("包含 30G 通用流量， 还有 500 分钟通话。",
+                AnswerLocator.locateAnswer(TURNS, "客户:39元包含多少流量"));
+
+        // 改写过的摘要按二元组相似度匹配
+        Assertions.assertEquals("合约期是 12 个月，到期前可以办理退订。",
+                AnswerLocator.locateAnswer(TURNS, "客户：换了之后要不要签合约，中途能不能退"));
+    }
+
+    /**
+     * 摘要跨多轮时取最后一段客户发言；找不到或其后没有客服发言时为空
+     */
+    @Test
+    void lastSegmentAndMisses() {
+        Assertions.assertEquals(4, AnswerLocator.findCustomerTurn(TURNS,
+                "客户：39 元包含多少流量啊？客服：包含 30G。客户：是不是要签合约"));
+        Assertions.assertEquals("", AnswerLocator.locateAnswer(TURNS, "客户：我家里已经有宽带了"));
+        Assertions.assertEquals("", AnswerLocator.locateAnswer(TURNS, "客户：那我考虑一下吧"));
+        Assertions.assertEquals("", AnswerLocator.locateAnswer(TURNS, null));
+    }
+}
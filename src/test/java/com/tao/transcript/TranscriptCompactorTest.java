@@ -0,0 +1,56 @@
+package com.tao.transcript;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+
+import java.util.List;
+
+/**
+ * TranscriptCompactor 压缩测试
+ */
+class TranscriptCompactorTest {
+
+    private static final JTokkitTokenCountEstimator ESTIMATOR = new JTokkitTokenCountEstimator();
+
+    /**
+     * 丢弃附和与空轮次、合并同一说话人、去掉重复分句和重复标点；“好的”保留，合并后重复的只留一次
+     */
+    @Test
+    void dropsFillerAndMergesTurns() {
+        String info = """
+                客服：喂，喂，您好，这边是联通客服。。
+                客户：嗯。
+                客服：给您推荐一个   39 元的套餐，
+                客户：啊？
+                客服：每月 9.9 元加 5.5G 流量。
+                客户：……
+                客户：哦哦，好的。
+                客户：好的。
+                """;
+        String compacted = new TranscriptCompactor(true, 0, ESTIMATOR).compact(info);
+
+        Assertions.assertEquals("""
+                客服：喂，您好，这边是联通客服。 给您推荐一个 39 元的套餐， 每月 9.9 元加 5.5G 流量。
+                客户：哦哦，好的。""", compacted);
+        Assertions.assertEquals(info, new TranscriptCompactor(false, 0, ESTIMATOR).compact(info));
+    }
+
+    /**
+     * 超出 token 预算时保留首尾轮次，中间替换为省略说明
+     */
+    @Test
+    void keepsHeadAndTailWithinBudget() {
+        StringBuilder info = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            info.append(i % 2 == 0 ? "客服：" : "客户：").append("第 ").append(i).append(" 轮，说了一些和套餐有关的内容。\n");
+        }
+        String compacted = new TranscriptCompactor(true, 200, ESTIMATOR).compact(info.toString());
+        List<Turn> turns = TranscriptParser.parse(compacted);
+
+        Assertions.assertTrue(ESTIMATOR.estimate(compacted) <= 200);
+        Assertions.assertEquals("第 0 轮，说了一些和套餐有关的内容。", turns.get(0).text());
+        Assertions.assertEquals("第 39 轮，说了一些和套餐有关的内容。", turns.get(turns.size() - 1).text());
+        Assertions.assertTrue(compacted.contains("轮对话）\n客"));
+    }
+}
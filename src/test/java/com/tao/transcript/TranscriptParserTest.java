@@ -0,0 +1,53 @@
+package com.tao.transcript;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * TranscriptParser 切分测试
+ */
+class TranscriptParserTest {
+
+    /**
+     * 全角/半角冒号、同一行多个说话人、无前缀续行、抬头内容
+     */
+    @Test
+    void splitsTurns() {
+        List<Turn> turns = TranscriptParser.parse("""
+                录音 20240501
+                客服：您好，这边是联通客服。
+                客户:嗯。客服：给您推荐一个套餐，
+                每月 39 元。
+
+                客户 ： 不需要。
+                客服：""");
+
+        Assertions.assertEquals(List.of(
+                new Turn(0, Speaker.UNKNOWN, "录音 20240501"),
+                new Turn(1, Speaker.AGENT, "您好，这边是联通客服。"),
+                new Turn(2, Speaker.CUSTOMER, "嗯。"),
+                new Turn(3, Speaker.AGENT, "给您推荐一个套餐， 每月 39 元。"),
+                new Turn(4, Speaker.CUSTOMER, "不需要。")), turns);
+        Assertions.assertEquals("客服：您好，这边是联通客服。\n客户：嗯。",
+                TranscriptParser.format(turns.subList(1, 3)));
+    }
+
+    /**
+     * 压缩/截取插入的省略说明单独成为一轮，不接到上一轮后面；format 后再 parse 轮次不变
+     */
+    @Test
+    void omissionMarkerIsItsOwnTurn() {
+        List<Turn> turns = List.of(
+                new Turn(0, Speaker.AGENT, "您好，这边是联通客服。"),
+                new Turn(1, Speaker.UNKNOWN, "……（中间省略 12 轮对话）"),
+                new Turn(2, Speaker.CUSTOMER, "不需要。"),
+                new Turn(3, Speaker.UNKNOWN, "……（后面省略 3 轮对话）"));
+
+        Assertions.assertEquals(turns, TranscriptParser.parse(TranscriptParser.format(turns)));
+        // 只是句中提到省略，不是独占一行的说明，仍属于该轮
+        Assertions.assertEquals(List.of(new Turn(0, Speaker.CUSTOMER, "你说……（中间省略 2 轮对话）是什么意思")),
+                TranscriptParser.parse("客户：你说……（中间省略 2 轮对话）是什么意思"));
+    }
+}
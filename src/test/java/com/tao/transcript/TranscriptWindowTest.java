@@ -0,0 +1,55 @@
+package com.tao.transcript;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * TranscriptWindow 截取测试
+ */
+class TranscriptWindowTest {
+
+    private static final List<Turn> TURNS = TranscriptParser.parse("""
+            客服：您好，这里是联通客服，给您推荐一个 39 元的新套餐。
+            客户：39 元包含多少流量啊？
+            客服：包含 30G 通用流量和 500 分钟通话。
+            客户：那我现在这个套餐是多少钱？
+            客服：您现在每月是 58 元。
+            客户：换了以后是不是要签合约，中途不能退？
+            客服：合约期是 12 个月，到期前可以办理退订。
+            客户：那我考虑一下吧。
+            """);
+
+    /**
+     * 只保留客户轮次前后各若干轮，两端用省略说明代替
+     */
+    @Test
+    void keepsTurnsAroundExcerpt() {
+        Assertions.assertEquals("""
+                ……（前面省略 3 轮对话）
+                客户：那我现在这个套餐是多少钱？
+                客服：您现在每月是 58 元。
+                ……（后面省略 3 轮对话）""",
+                TranscriptWindow.around(TURNS, "客户：现在这个套餐多少钱", 0, 1));
+        Assertions.assertEquals("""
+                客服：您好，这里是联通客服，给您推荐一个 39 元的新套餐。
+                客户：39 元包含多少流量啊？
+                客服：包含 30G 通用流量和 500 分钟通话。
+                ……（后面省略 5 轮对话）""",
+                TranscriptWindow.around(TURNS, "39元包含多少流量", 2, 1));
+    }
+
+    /**
+     * 窗口到达末尾不加省略说明；定位不到返回 null
+     */
+    @Test
+    void edgesAndMisses() {
+        Assertions.assertEquals("""
+                ……（前面省略 6 轮对话）
+                客服：合约期是 12 个月，到期前可以办理退订。
+                客户：那我考虑一下吧。""",
+                TranscriptWindow.around(TURNS, "客户：考虑一下", 1, 2));
+        Assertions.assertNull(TranscriptWindow.around(TURNS, "客户：我家里已经有宽带了", 2, 2));
+    }
+}